@@ -0,0 +1,88 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.interceptor;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks for {@link RuleBasedTransactionAttribute#rollbackOn}, with
+ * rules that get compiled into a classifier and with custom rules that
+ * are evaluated one by one for every exception.
+ *
+ * @since 5.2
+ */
+@BenchmarkMode(Mode.Throughput)
+public class RollbackRuleBenchmark {
+
+	@Benchmark
+	public boolean matchingRule(BenchmarkState state) {
+		return state.attribute.rollbackOn(state.matchingException);
+	}
+
+	@Benchmark
+	public boolean defaultRule(BenchmarkState state) {
+		return state.attribute.rollbackOn(state.unmatchedException);
+	}
+
+
+	@State(Scope.Thread)
+	public static class BenchmarkState {
+
+		@Param({"1", "10", "50"})
+		public int ruleCount;
+
+		@Param({"false", "true"})
+		public boolean customRules;
+
+		public RuleBasedTransactionAttribute attribute;
+
+		public Throwable matchingException = new FileNotFoundException();
+
+		public Throwable unmatchedException = new IllegalArgumentException();
+
+		@Setup
+		public void setup() {
+			List<RollbackRuleAttribute> rules = new ArrayList<>(this.ruleCount);
+			for (int i = 1; i < this.ruleCount; i++) {
+				rules.add(createRule("com.example.UnknownException" + i));
+			}
+			rules.add(createRule(IOException.class.getName()));
+			this.attribute = new RuleBasedTransactionAttribute();
+			this.attribute.setRollbackRules(rules);
+		}
+
+		@SuppressWarnings("serial")
+		private RollbackRuleAttribute createRule(String exceptionName) {
+			if (this.customRules) {
+				return new RollbackRuleAttribute(exceptionName) {};
+			}
+			return new RollbackRuleAttribute(exceptionName);
+		}
+	}
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.interceptor;
+
+import java.util.Properties;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.ResourcelessTransactionManager;
+
+/**
+ * Benchmarks for the overhead of a {@link TransactionInterceptor} around
+ * a proxied method, compared to calling the target directly.
+ * Run with {@code -prof gc} for the allocations per invocation.
+ *
+ * @since 5.2
+ */
+@BenchmarkMode(Mode.Throughput)
+public class TransactionInterceptorBenchmark {
+
+	@Benchmark
+	public int direct(BenchmarkState state) {
+		return state.target.transactional(1);
+	}
+
+	@Benchmark
+	public int transactional(BenchmarkState state) {
+		return state.proxy.transactional(1);
+	}
+
+	@Benchmark
+	public int nonTransactional(BenchmarkState state) {
+		return state.proxy.nonTransactional(1);
+	}
+
+	@Benchmark
+	public int rollback(BenchmarkState state) {
+		try {
+			return state.proxy.failing(1);
+		}
+		catch (IllegalStateException ex) {
+			return -1;
+		}
+	}
+
+
+	@State(Scope.Thread)
+	public static class BenchmarkState {
+
+		@Param({"annotation", "nameMatch"})
+		public String attributeSource;
+
+		@Param({"false", "true"})
+		public boolean recycling;
+
+		public Service target;
+
+		public Service proxy;
+
+		@Setup
+		public void setup() {
+			ResourcelessTransactionManager transactionManager = new ResourcelessTransactionManager();
+			transactionManager.setTransactionStatusRecycling(this.recycling);
+			TransactionInterceptor interceptor = new TransactionInterceptor();
+			interceptor.setTransactionManager(transactionManager);
+			interceptor.setTransactionInfoRecycling(this.recycling);
+			if ("annotation".equals(this.attributeSource)) {
+				interceptor.setTransactionAttributeSource(new AnnotationTransactionAttributeSource());
+			}
+			else {
+				Properties attributes = new Properties();
+				attributes.setProperty("transactional", "PROPAGATION_REQUIRED");
+				attributes.setProperty("failing", "PROPAGATION_REQUIRED");
+				interceptor.setTransactionAttributes(attributes);
+			}
+			this.target = new ServiceImpl();
+			ProxyFactory proxyFactory = new ProxyFactory(this.target);
+			proxyFactory.addInterface(Service.class);
+			proxyFactory.addAdvice(interceptor);
+			this.proxy = (Service) proxyFactory.getProxy();
+		}
+	}
+
+
+	public interface Service {
+
+		int transactional(int value);
+
+		int nonTransactional(int value);
+
+		int failing(int value);
+	}
+
+
+	public static class ServiceImpl implements Service {
+
+		@Override
+		@Transactional
+		public int transactional(int value) {
+			return value + 1;
+		}
+
+		@Override
+		public int nonTransactional(int value) {
+			return value + 1;
+		}
+
+		@Override
+		@Transactional
+		public int failing(int value) {
+			throw new IllegalStateException("Failure " + value);
+		}
+	}
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import org.springframework.transaction.SavepointManager;
+import org.springframework.transaction.TransactionDefinition;
+
+/**
+ * Transaction manager without an actual resource, binding a marker holder
+ * to the thread like a resource-based transaction manager would, so that
+ * benchmarks measure the overhead of the transaction infrastructure itself.
+ * Supports suspension and savepoints.
+ *
+ * @since 5.2
+ */
+@SuppressWarnings("serial")
+public class ResourcelessTransactionManager extends AbstractPlatformTransactionManager {
+
+	public ResourcelessTransactionManager() {
+		setNestedTransactionAllowed(true);
+	}
+
+
+	@Override
+	protected Object doGetTransaction() {
+		ResourcelessTransaction transaction = new ResourcelessTransaction();
+		transaction.holder = (ResourceHolderSupport) TransactionSynchronizationManager.getResource(this);
+		return transaction;
+	}
+
+	@Override
+	protected boolean isExistingTransaction(Object transaction) {
+		ResourceHolderSupport holder = ((ResourcelessTransaction) transaction).holder;
+		return (holder != null && holder.isSynchronizedWithTransaction());
+	}
+
+	@Override
+	protected void doBegin(Object transaction, TransactionDefinition definition) {
+		ResourceHolderSupport holder = new ResourceHolderSupport() {};
+		holder.setSynchronizedWithTransaction(true);
+		((ResourcelessTransaction) transaction).holder = holder;
+		TransactionSynchronizationManager.bindResource(this, holder);
+	}
+
+	@Override
+	protected Object doSuspend(Object transaction) {
+		((ResourcelessTransaction) transaction).holder = null;
+		return TransactionSynchronizationManager.unbindResource(this);
+	}
+
+	@Override
+	protected void doResume(Object transaction, Object suspendedResources) {
+		TransactionSynchronizationManager.bindResource(this, suspendedResources);
+	}
+
+	@Override
+	protected void doCommit(DefaultTransactionStatus status) {
+	}
+
+	@Override
+	protected void doRollback(DefaultTransactionStatus status) {
+	}
+
+	@Override
+	protected void doSetRollbackOnly(DefaultTransactionStatus status) {
+		ResourceHolderSupport holder = ((ResourcelessTransaction) status.getTransaction()).holder;
+		if (holder != null) {
+			holder.setRollbackOnly();
+		}
+	}
+
+	@Override
+	protected void doCleanupAfterCompletion(Object transaction) {
+		TransactionSynchronizationManager.unbindResource(this);
+	}
+
+
+	private static class ResourcelessTransaction implements SavepointManager, SmartTransactionObject {
+
+		ResourceHolderSupport holder;
+
+		@Override
+		public Object createSavepoint() {
+			return new Object();
+		}
+
+		@Override
+		public void rollbackToSavepoint(Object savepoint) {
+		}
+
+		@Override
+		public void releaseSavepoint(Object savepoint) {
+		}
+
+		@Override
+		public boolean isRollbackOnly() {
+			return (this.holder != null && this.holder.isRollbackOnly());
+		}
+
+		@Override
+		public void flush() {
+		}
+	}
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+/**
+ * Benchmarks for {@link AbstractPlatformTransactionManager}: a transaction
+ * scope per propagation behavior, with and without an existing transaction,
+ * and the dispatch of synchronization callbacks on commit.
+ * Run with {@code -prof gc} for the allocations per scope.
+ *
+ * @since 5.2
+ */
+@BenchmarkMode(Mode.Throughput)
+public class TransactionManagerBenchmark {
+
+	@Benchmark
+	public void newScope(NewScopeState state, Blackhole bh) {
+		TransactionStatus status = state.transactionManager.getTransaction(state.definition);
+		bh.consume(status.isNewTransaction());
+		state.transactionManager.commit(status);
+	}
+
+	@Benchmark
+	public void scopeWithinExistingTransaction(ExistingTransactionState state, Blackhole bh) {
+		TransactionStatus status = state.transactionManager.getTransaction(state.definition);
+		bh.consume(status.isNewTransaction());
+		state.transactionManager.commit(status);
+	}
+
+	@Benchmark
+	public void rollbackWithinExistingTransaction(ExistingTransactionState state, Blackhole bh) {
+		TransactionStatus status = state.transactionManager.getTransaction(state.definition);
+		bh.consume(status.isNewTransaction());
+		state.transactionManager.rollback(status);
+	}
+
+	@Benchmark
+	public void synchronizationDispatch(SynchronizationState state) {
+		TransactionStatus status = state.transactionManager.getTransaction(state.definition);
+		for (TransactionSynchronization synchronization : state.synchronizations) {
+			TransactionSynchronizationManager.registerSynchronization(synchronization);
+		}
+		state.transactionManager.commit(status);
+	}
+
+
+	@State(Scope.Thread)
+	public static class NewScopeState {
+
+		@Param({"REQUIRED", "SUPPORTS", "REQUIRES_NEW", "NOT_SUPPORTED", "NEVER", "NESTED"})
+		public String propagation;
+
+		@Param({"false", "true"})
+		public boolean recycling;
+
+		public ResourcelessTransactionManager transactionManager;
+
+		public DefaultTransactionDefinition definition;
+
+		@Setup
+		public void setup() {
+			this.transactionManager = new ResourcelessTransactionManager();
+			this.transactionManager.setTransactionStatusRecycling(this.recycling);
+			this.definition = new DefaultTransactionDefinition();
+			this.definition.setPropagationBehaviorName(DefaultTransactionDefinition.PREFIX_PROPAGATION + this.propagation);
+		}
+	}
+
+
+	@State(Scope.Thread)
+	public static class ExistingTransactionState {
+
+		@Param({"REQUIRED", "SUPPORTS", "MANDATORY", "REQUIRES_NEW", "NOT_SUPPORTED", "NESTED"})
+		public String propagation;
+
+		@Param({"false", "true"})
+		public boolean recycling;
+
+		@Param({"true", "false"})
+		public boolean globalRollbackOnParticipationFailure;
+
+		public ResourcelessTransactionManager transactionManager;
+
+		public DefaultTransactionDefinition definition;
+
+		private TransactionStatus outer;
+
+		@Setup(Level.Iteration)
+		public void setup() {
+			this.transactionManager = new ResourcelessTransactionManager();
+			this.transactionManager.setTransactionStatusRecycling(this.recycling);
+			this.transactionManager.setGlobalRollbackOnParticipationFailure(this.globalRollbackOnParticipationFailure);
+			this.definition = new DefaultTransactionDefinition();
+			this.definition.setPropagationBehaviorName(DefaultTransactionDefinition.PREFIX_PROPAGATION + this.propagation);
+			this.outer = this.transactionManager.getTransaction(new DefaultTransactionDefinition());
+		}
+
+		@TearDown(Level.Iteration)
+		public void tearDown() {
+			this.transactionManager.rollback(this.outer);
+		}
+	}
+
+
+	@State(Scope.Thread)
+	public static class SynchronizationState {
+
+		@Param({"0", "1", "10", "100"})
+		public int synchronizationCount;
+
+		public ResourcelessTransactionManager transactionManager;
+
+		public TransactionDefinition definition = new DefaultTransactionDefinition();
+
+		public TransactionSynchronization[] synchronizations;
+
+		@Setup
+		public void setup(Blackhole bh) {
+			this.transactionManager = new ResourcelessTransactionManager();
+			this.synchronizations = new TransactionSynchronization[this.synchronizationCount];
+			for (int i = 0; i < this.synchronizationCount; i++) {
+				int order = i;
+				this.synchronizations[i] = new TransactionSynchronizationAdapter() {
+					@Override
+					public int getOrder() {
+						return order;
+					}
+					@Override
+					public void afterCommit() {
+						bh.consume(order);
+					}
+				};
+			}
+		}
+	}
+
+}
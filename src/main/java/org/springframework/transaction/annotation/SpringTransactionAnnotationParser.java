@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2018 the original author or authors.
+ * Copyright 2002-2019 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,6 +18,7 @@ package org.springframework.transaction.annotation;
 
 import java.io.Serializable;
 import java.lang.reflect.AnnotatedElement;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -29,6 +30,8 @@ import org.springframework.transaction.interceptor.NoRollbackRuleAttribute;
 import org.springframework.transaction.interceptor.RollbackRuleAttribute;
 import org.springframework.transaction.interceptor.RuleBasedTransactionAttribute;
 import org.springframework.transaction.interceptor.TransactionAttribute;
+import org.springframework.transaction.support.RetryBudget;
+import org.springframework.transaction.support.TransactionRetryPolicy;
 
 /**
  * Strategy implementation for parsing Spring's {@link Transactional} annotation.
@@ -82,6 +85,15 @@ public class SpringTransactionAnnotationParser implements TransactionAnnotationP
 		}
 		rbta.setRollbackRules(rollbackRules);
 
+		int retryMaxAttempts = attributes.getNumber("retryMaxAttempts").intValue();
+		if (retryMaxAttempts > 1) {
+			double retryBudget = attributes.getNumber("retryBudget").doubleValue();
+			rbta.setRetryPolicy(new TransactionRetryPolicy(retryMaxAttempts,
+					Duration.ofMillis(attributes.getNumber("retryBackoff").longValue()),
+					Duration.ofMillis(attributes.getNumber("retryMaxBackoff").longValue()),
+					(retryBudget >= 0 ? new RetryBudget(retryBudget) : null)));
+		}
+
 		return rbta;
 	}
 
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2018 the original author or authors.
+ * Copyright 2002-2019 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -187,4 +187,45 @@ public @interface Transactional {
 	 */
 	String[] noRollbackForClassName() default {};
 
+	/**
+	 * The maximum number of executions of the transaction, including the first
+	 * one, in case of transient failures such as deadlocks or serialization
+	 * failures.
+	 * <p>Defaults to 1, i.e. no retries. Retries only apply when the method starts
+	 * the outermost transaction, with {@link Propagation#REQUIRED},
+	 * {@link Propagation#REQUIRES_NEW} or {@link Propagation#NESTED}.
+	 * @since 5.2
+	 * @see org.springframework.transaction.support.TransactionRetryPolicy
+	 */
+	int retryMaxAttempts() default 1;
+
+	/**
+	 * The maximum delay before the first retry (in milliseconds), doubling with
+	 * every further retry. The actual delay is chosen at random up to that value.
+	 * <p>Defaults to 10.
+	 * @since 5.2
+	 * @see #retryMaxAttempts
+	 */
+	long retryBackoff() default 10;
+
+	/**
+	 * The upper bound for the maximum delay before a retry (in milliseconds).
+	 * <p>Defaults to 1000.
+	 * @since 5.2
+	 * @see #retryMaxAttempts
+	 */
+	long retryMaxBackoff() default 1000;
+
+	/**
+	 * The number of retries permitted per invocation of the method, limiting
+	 * the retries while most invocations fail, e.g. 0.2 for one retry per five
+	 * invocations, plus a reserve of 10 retries. A negative value disables the
+	 * budget, limiting retries only through {@link #retryMaxAttempts}.
+	 * <p>Defaults to 0.2.
+	 * @since 5.2
+	 * @see #retryMaxAttempts
+	 * @see org.springframework.transaction.support.RetryBudget
+	 */
+	double retryBudget() default 0.2;
+
 }
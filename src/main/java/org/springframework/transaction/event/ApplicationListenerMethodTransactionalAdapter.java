@@ -17,15 +17,29 @@
 package org.springframework.transaction.event;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.springframework.context.ApplicationEvent;
+import org.springframework.context.PayloadApplicationEvent;
 import org.springframework.context.event.ApplicationListenerMethodAdapter;
 import org.springframework.context.event.EventListener;
 import org.springframework.context.event.GenericApplicationListener;
 import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.lang.Nullable;
 import org.springframework.transaction.support.TransactionSynchronization;
 import org.springframework.transaction.support.TransactionSynchronizationAdapter;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
 
 /**
  * {@link GenericApplicationListener} adapter that delegates the processing of
@@ -37,6 +51,14 @@ import org.springframework.transaction.support.TransactionSynchronizationManager
  * when Spring's transaction management is enabled. For other cases, registering
  * a bean of type {@link TransactionalEventListenerFactory} is required.
  *
+ * <p>For {@link TransactionalEventListener#batch() batching} listeners, the events
+ * of a transaction get collected into a single synchronization per listener, bound
+ * as a transactional resource, and get delivered in publication order. With a
+ * {@link TransactionalEventListener#coalesceKey() coalescing key}, only the last
+ * event per key gets delivered. For {@link TransactionalEventListener#outbox() outbox}
+ * listeners, the batch gets appended to an {@link EventJournal} before commit, and
+ * each entry gets completed once its event has been processed.
+ *
  * @author Stephane Nicoll
  * @author Juergen Hoeller
  * @since 4.2
@@ -47,22 +69,89 @@ class ApplicationListenerMethodTransactionalAdapter extends ApplicationListenerM
 
 	private final TransactionalEventListener annotation;
 
+	@Nullable
+	private final Executor batchExecutor;
+
+	@Nullable
+	private final Expression coalesceKeyExpression;
+
+	@Nullable
+	private final EventJournal outboxJournal;
+
+	private final String outboxListenerId;
+
+	private final boolean batch;
+
 
 	public ApplicationListenerMethodTransactionalAdapter(String beanName, Class<?> targetClass, Method method) {
+		this(beanName, targetClass, method, null, null);
+	}
+
+	ApplicationListenerMethodTransactionalAdapter(String beanName, Class<?> targetClass, Method method,
+			@Nullable Executor batchExecutor, @Nullable EventJournal outboxJournal) {
+
 		super(beanName, targetClass, method);
 		TransactionalEventListener ann = AnnotatedElementUtils.findMergedAnnotation(method, TransactionalEventListener.class);
 		if (ann == null) {
 			throw new IllegalStateException("No TransactionalEventListener annotation found on method: " + method);
 		}
 		this.annotation = ann;
+		this.batchExecutor = batchExecutor;
+		this.coalesceKeyExpression = (StringUtils.hasText(ann.coalesceKey()) ?
+				new SpelExpressionParser().parseExpression(ann.coalesceKey()) : null);
+		if (ann.outbox()) {
+			if (ann.phase() != TransactionPhase.AFTER_COMMIT) {
+				throw new IllegalStateException("Outbox only supported for AFTER_COMMIT phase: " + method);
+			}
+			if (outboxJournal == null) {
+				throw new IllegalStateException("Outbox requires an EventJournal on the " +
+						"TransactionalEventListenerFactory: " + method);
+			}
+		}
+		this.outboxJournal = (ann.outbox() ? outboxJournal : null);
+		this.outboxListenerId = createOutboxListenerId(beanName, method);
+		this.batch = (ann.batch() || this.coalesceKeyExpression != null || this.outboxJournal != null);
+	}
+
+
+	private static String createOutboxListenerId(String beanName, Method method) {
+		StringBuilder sb = new StringBuilder(beanName).append('#').append(method.getName()).append('(');
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		for (int i = 0; i < parameterTypes.length; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(parameterTypes[i].getName());
+		}
+		return sb.append(')').toString();
+	}
+
+	/**
+	 * Return whether this listener appends its events to an {@link EventJournal}.
+	 */
+	boolean isOutbox() {
+		return (this.outboxJournal != null);
+	}
+
+	/**
+	 * Return the id under which this listener's events get journaled,
+	 * stable across restarts.
+	 */
+	String getOutboxListenerId() {
+		return this.outboxListenerId;
 	}
 
 
 	@Override
 	public void onApplicationEvent(ApplicationEvent event) {
 		if (TransactionSynchronizationManager.isSynchronizationActive()) {
-			TransactionSynchronization transactionSynchronization = createTransactionSynchronization(event);
-			TransactionSynchronizationManager.registerSynchronization(transactionSynchronization);
+			if (this.batch) {
+				addToBatch(event);
+			}
+			else {
+				TransactionSynchronization transactionSynchronization = createTransactionSynchronization(event);
+				TransactionSynchronizationManager.registerSynchronization(transactionSynchronization);
+			}
 		}
 		else if (this.annotation.fallbackExecution()) {
 			if (this.annotation.phase() == TransactionPhase.AFTER_ROLLBACK && logger.isWarnEnabled()) {
@@ -82,6 +171,42 @@ class ApplicationListenerMethodTransactionalAdapter extends ApplicationListenerM
 		return new TransactionSynchronizationEventAdapter(this, event, this.annotation.phase());
 	}
 
+	private void addToBatch(ApplicationEvent event) {
+		TransactionSynchronizationEventBatch batch =
+				(TransactionSynchronizationEventBatch) TransactionSynchronizationManager.getResource(this);
+		if (batch == null) {
+			batch = new TransactionSynchronizationEventBatch(
+					this, this.annotation.phase(), this.batchExecutor, this.outboxJournal);
+			TransactionSynchronizationManager.bindResource(this, batch);
+			TransactionSynchronizationManager.registerSynchronization(batch);
+		}
+		if (this.coalesceKeyExpression != null) {
+			batch.add(event, getCoalesceKey(this.coalesceKeyExpression, event));
+		}
+		else {
+			batch.add(event);
+		}
+	}
+
+	/**
+	 * Evaluate the coalescing key expression against the payload of the given
+	 * event, exposing the event itself as {@code #event}.
+	 */
+	@Nullable
+	private Object getCoalesceKey(Expression expression, ApplicationEvent event) {
+		StandardEvaluationContext context = new StandardEvaluationContext(getPayload(event));
+		context.setVariable("event", event);
+		return expression.getValue(context);
+	}
+
+	/**
+	 * Return the payload of the given event, or the event itself if not a
+	 * {@link PayloadApplicationEvent}.
+	 */
+	static Object getPayload(ApplicationEvent event) {
+		return (event instanceof PayloadApplicationEvent ? ((PayloadApplicationEvent<?>) event).getPayload() : event);
+	}
+
 
 	private static class TransactionSynchronizationEventAdapter extends TransactionSynchronizationAdapter {
 
@@ -129,4 +254,197 @@ class ApplicationListenerMethodTransactionalAdapter extends ApplicationListenerM
 		}
 	}
 
+
+	/**
+	 * Per-transaction buffer of the events for a batching listener.
+	 */
+	private static class TransactionSynchronizationEventBatch extends TransactionSynchronizationAdapter {
+
+		private final ApplicationListenerMethodTransactionalAdapter listener;
+
+		private final TransactionPhase phase;
+
+		@Nullable
+		private final Executor executor;
+
+		@Nullable
+		private final EventJournal journal;
+
+		private List<ApplicationEvent> events = new ArrayList<>();
+
+		@Nullable
+		private Map<Object, ApplicationEvent> coalescedEvents;
+
+		private List<ApplicationEvent> journaledEvents = Collections.emptyList();
+
+		private long[] journalEntryIds = new long[0];
+
+		public TransactionSynchronizationEventBatch(ApplicationListenerMethodTransactionalAdapter listener,
+				TransactionPhase phase, @Nullable Executor executor, @Nullable EventJournal journal) {
+
+			this.listener = listener;
+			this.phase = phase;
+			this.executor = executor;
+			this.journal = journal;
+		}
+
+		public void add(ApplicationEvent event) {
+			this.events.add(event);
+		}
+
+		/**
+		 * Add the given event, replacing any earlier event with the same key.
+		 * Events without key never get replaced.
+		 */
+		public void add(ApplicationEvent event, @Nullable Object key) {
+			if (this.coalescedEvents == null) {
+				this.coalescedEvents = new LinkedHashMap<>();
+			}
+			Object keyToUse = (key != null ? key : new Object());
+			// Re-insert to deliver in the order of the last publication per key
+			this.coalescedEvents.remove(keyToUse);
+			this.coalescedEvents.put(keyToUse, event);
+		}
+
+		/**
+		 * Return the events collected so far, in delivery order, and start a new buffer.
+		 */
+		private List<ApplicationEvent> takeEvents() {
+			List<ApplicationEvent> events;
+			if (this.coalescedEvents != null) {
+				events = new ArrayList<>(this.coalescedEvents.values());
+				this.coalescedEvents = null;
+			}
+			else if (!this.events.isEmpty()) {
+				events = this.events;
+				this.events = new ArrayList<>();
+			}
+			else {
+				events = Collections.emptyList();
+			}
+			return events;
+		}
+
+		@Override
+		public int getOrder() {
+			return this.listener.getOrder();
+		}
+
+		@Override
+		public void suspend() {
+			TransactionSynchronizationManager.unbindResource(this.listener);
+		}
+
+		@Override
+		public void resume() {
+			TransactionSynchronizationManager.bindResource(this.listener, this);
+		}
+
+		@Override
+		public void beforeCommit(boolean readOnly) {
+			if (this.phase == TransactionPhase.BEFORE_COMMIT) {
+				// Events published by the listener itself form a further batch
+				List<ApplicationEvent> events = takeEvents();
+				while (!events.isEmpty()) {
+					for (ApplicationEvent event : events) {
+						this.listener.processEvent(event);
+					}
+					events = takeEvents();
+				}
+			}
+			else if (this.journal != null) {
+				appendToJournal(this.journal);
+			}
+		}
+
+		/**
+		 * Append the events collected so far to the journal, durably.
+		 * Events published later on get delivered without journaling.
+		 */
+		private void appendToJournal(EventJournal journal) {
+			List<ApplicationEvent> events = takeEvents();
+			this.journaledEvents = new ArrayList<>(events.size());
+			this.journalEntryIds = new long[events.size()];
+			for (ApplicationEvent event : events) {
+				// Keep track of every entry appended, for discarding them on rollback
+				this.journalEntryIds[this.journaledEvents.size()] =
+						journal.append(this.listener.getOutboxListenerId(), getPayload(event));
+				this.journaledEvents.add(event);
+			}
+			journal.sync();
+		}
+
+		@Override
+		public void afterCompletion(int status) {
+			TransactionSynchronizationManager.unbindResourceIfPossible(this.listener);
+			List<ApplicationEvent> journaledEvents = this.journaledEvents;
+			long[] journalEntryIds = this.journalEntryIds;
+			if (this.journal != null && status != STATUS_COMMITTED) {
+				if (status == STATUS_ROLLED_BACK) {
+					for (int i = 0; i < journaledEvents.size(); i++) {
+						this.journal.complete(journalEntryIds[i]);
+					}
+				}
+				// Outcome unknown: keep the entries for replay after restart
+				return;
+			}
+			if ((this.phase == TransactionPhase.AFTER_COMMIT && status == STATUS_COMMITTED) ||
+					(this.phase == TransactionPhase.AFTER_ROLLBACK && status == STATUS_ROLLED_BACK) ||
+					this.phase == TransactionPhase.AFTER_COMPLETION) {
+				List<ApplicationEvent> events = takeEvents();
+				if (events.isEmpty() && journaledEvents.isEmpty()) {
+					return;
+				}
+				Runnable task = () -> {
+					processJournaledEvents(journaledEvents, journalEntryIds);
+					processEvents(events);
+				};
+				if (this.executor != null) {
+					try {
+						this.executor.execute(task);
+						return;
+					}
+					catch (RejectedExecutionException ex) {
+						if (this.listener.logger.isDebugEnabled()) {
+							this.listener.logger.debug("Batch executor rejected " +
+									(journaledEvents.size() + events.size()) +
+									" events - processing them in the current thread");
+						}
+					}
+				}
+				task.run();
+			}
+		}
+
+		private void processJournaledEvents(List<ApplicationEvent> events, long[] entryIds) {
+			if (events.isEmpty()) {
+				return;
+			}
+			EventJournal journal = this.journal;
+			Assert.state(journal != null, "No EventJournal");
+			for (int i = 0; i < events.size(); i++) {
+				ApplicationEvent event = events.get(i);
+				try {
+					this.listener.processEvent(event);
+					journal.complete(entryIds[i]);
+				}
+				catch (Throwable ex) {
+					// Left pending in the journal, to be replayed after restart
+					this.listener.logger.error("Listener threw exception while processing journaled " + event, ex);
+				}
+			}
+		}
+
+		private void processEvents(List<ApplicationEvent> events) {
+			for (ApplicationEvent event : events) {
+				try {
+					this.listener.processEvent(event);
+				}
+				catch (Throwable ex) {
+					this.listener.logger.error("Listener threw exception while processing " + event, ex);
+				}
+			}
+		}
+	}
+
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.event;
+
+import java.util.List;
+
+/**
+ * Durable store for the events of {@link TransactionalEventListener#outbox() outbox}
+ * listeners: events get appended before the transaction commits and completed
+ * once delivered, so that events still pending after a restart can be replayed.
+ *
+ * <p>Implementations need to be thread-safe.
+ *
+ * @since 5.2
+ * @see MappedFileEventJournal
+ * @see TransactionalEventListenerFactory#setOutboxJournal
+ */
+public interface EventJournal {
+
+	/**
+	 * Append a pending entry, not necessarily durable before {@link #sync()}.
+	 * @param listenerId the id of the listener to deliver the payload to
+	 * @param payload the event payload, to be serializable
+	 * @return the id of the entry
+	 * @throws IllegalArgumentException if the payload cannot be serialized
+	 * @throws IllegalStateException if the journal has no space left
+	 */
+	long append(String listenerId, Object payload);
+
+	/**
+	 * Make all entries appended so far durable.
+	 */
+	void sync();
+
+	/**
+	 * Mark the given entry as completed, i.e. delivered or discarded,
+	 * excluding it from replay. To be called once per entry.
+	 * @param entryId the id returned from {@link #append}
+	 */
+	void complete(long entryId);
+
+	/**
+	 * Return all pending entries, in the order of their appending.
+	 */
+	List<Entry> getPendingEntries();
+
+
+	/**
+	 * A pending entry of the journal.
+	 */
+	final class Entry {
+
+		private final long id;
+
+		private final String listenerId;
+
+		private final Object payload;
+
+		public Entry(long id, String listenerId, Object payload) {
+			this.id = id;
+			this.listenerId = listenerId;
+			this.payload = payload;
+		}
+
+		public long getId() {
+			return this.id;
+		}
+
+		public String getListenerId() {
+			return this.listenerId;
+		}
+
+		public Object getPayload() {
+			return this.payload;
+		}
+
+		@Override
+		public String toString() {
+			return "EventJournal.Entry [" + this.id + "] for " + this.listenerId + ": " + this.payload;
+		}
+	}
+
+}
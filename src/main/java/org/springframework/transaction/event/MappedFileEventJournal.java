@@ -0,0 +1,292 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.event;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.springframework.util.Assert;
+import org.springframework.util.SerializationUtils;
+
+/**
+ * {@link EventJournal} backed by an append-only file of fixed capacity,
+ * memory-mapped so that appending an entry does not involve a system call
+ * until {@link #sync()} forces the appended entries to the storage device.
+ *
+ * <p>Each entry consists of its length, its state, a CRC32 checksum, its
+ * sequence number (serving as its id) and its content: the listener id and the
+ * serialized payload. Entries get completed in place by updating their state.
+ * Once no entry is pending anymore, the journal starts over at the beginning of
+ * the file. Otherwise, once the end of the file is reached, the journal gets
+ * compacted: the pending entries are copied to a new file which then atomically
+ * replaces the journal file. The capacity therefore needs to accommodate the
+ * entries of all transactions whose events have not been delivered yet, or else
+ * appending fails with an {@link IllegalStateException} (rolling back the transaction).
+ *
+ * <p>On opening an existing file, entries get read up to the first one that is
+ * incomplete or corrupt, e.g. written partially before the process died.
+ *
+ * @since 5.2
+ */
+public class MappedFileEventJournal implements EventJournal, Closeable {
+
+	/** Default capacity of the journal file: 16 MB. */
+	public static final int DEFAULT_CAPACITY = 16 * 1024 * 1024;
+
+	private static final byte STATE_PENDING = 1;
+
+	private static final byte STATE_COMPLETED = 2;
+
+	/** Length (int), state (byte), checksum (int) and sequence number (long). */
+	private static final int HEADER_SIZE = 17;
+
+	/** Offset of the part covered by the checksum: sequence number and content. */
+	private static final int CHECKED_OFFSET = 9;
+
+
+	private final File file;
+
+	private MappedByteBuffer buffer;
+
+	/** Offset of the next entry to append. */
+	private int position;
+
+	private long nextSequence;
+
+	/** Offsets of the pending entries by sequence number, in the order of their appending. */
+	private final Map<Long, Integer> pendingOffsets = new LinkedHashMap<>();
+
+
+	/**
+	 * Open or create a journal with the {@link #DEFAULT_CAPACITY default capacity}.
+	 * @param file the journal file
+	 */
+	public MappedFileEventJournal(File file) throws IOException {
+		this(file, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Open or create a journal.
+	 * @param file the journal file
+	 * @param capacity the capacity of a newly created file in bytes;
+	 * an existing file keeps its size
+	 */
+	public MappedFileEventJournal(File file, int capacity) throws IOException {
+		Assert.isTrue(capacity > HEADER_SIZE, "Capacity too small");
+		this.file = file;
+		this.buffer = map(file, capacity);
+		recover();
+	}
+
+
+	private static MappedByteBuffer map(File file, int capacity) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			long size = raf.length();
+			// The mapping stays valid after closing the file
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, (size > 0 ? size : capacity));
+		}
+	}
+
+	private void recover() {
+		int offset = 0;
+		while (isValidEntry(offset)) {
+			long sequence = this.buffer.getLong(offset + CHECKED_OFFSET);
+			if (this.buffer.get(offset + 4) == STATE_PENDING) {
+				this.pendingOffsets.put(sequence, offset);
+			}
+			this.nextSequence = Math.max(this.nextSequence, sequence + 1);
+			offset += HEADER_SIZE + this.buffer.getInt(offset);
+		}
+		this.position = offset;
+	}
+
+	private boolean isValidEntry(int offset) {
+		if (offset + HEADER_SIZE > this.buffer.capacity()) {
+			return false;
+		}
+		int length = this.buffer.getInt(offset);
+		if (length <= 0 || length > this.buffer.capacity() - offset - HEADER_SIZE) {
+			return false;
+		}
+		byte state = this.buffer.get(offset + 4);
+		if (state != STATE_PENDING && state != STATE_COMPLETED) {
+			return false;
+		}
+		ByteBuffer checked = this.buffer.duplicate();
+		checked.limit(offset + HEADER_SIZE + length).position(offset + CHECKED_OFFSET);
+		CRC32 crc = new CRC32();
+		crc.update(checked);
+		return (this.buffer.getInt(offset + 5) == (int) crc.getValue());
+	}
+
+	/**
+	 * Return the journal file.
+	 */
+	public File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * Return the number of pending entries.
+	 */
+	public synchronized int getPendingCount() {
+		return this.pendingOffsets.size();
+	}
+
+
+	@Override
+	public synchronized long append(String listenerId, Object payload) {
+		byte[] id = listenerId.getBytes(StandardCharsets.UTF_8);
+		Assert.isTrue(id.length <= Short.MAX_VALUE, "Listener id too long");
+		byte[] data = SerializationUtils.serialize(payload);
+		Assert.state(data != null, "Null payload");
+		int length = 2 + id.length + data.length;
+		if (this.position + HEADER_SIZE + length > this.buffer.capacity()) {
+			compact();
+			if (this.position + HEADER_SIZE + length > this.buffer.capacity()) {
+				throw new IllegalStateException("Event journal " + this.file + " full: " + getPendingCount() +
+						" pending entries, " + (HEADER_SIZE + length) + " bytes requested");
+			}
+		}
+		int offset = this.position;
+		long sequence = this.nextSequence++;
+		ByteBuffer checked = this.buffer.duplicate();
+		checked.position(offset + CHECKED_OFFSET);
+		checked.putLong(sequence).putShort((short) id.length).put(id).put(data);
+		checked.limit(offset + HEADER_SIZE + length).position(offset + CHECKED_OFFSET);
+		CRC32 crc = new CRC32();
+		crc.update(checked);
+		this.buffer.putInt(offset + 5, (int) crc.getValue());
+		this.buffer.put(offset + 4, STATE_PENDING);
+		this.buffer.putInt(offset, length);
+		this.position = offset + HEADER_SIZE + length;
+		// Terminate the journal, hiding entries left over from before starting over
+		if (this.position + 4 <= this.buffer.capacity()) {
+			this.buffer.putInt(this.position, 0);
+		}
+		this.pendingOffsets.put(sequence, offset);
+		return sequence;
+	}
+
+	/**
+	 * Reclaim the space of completed entries: copy the pending entries to
+	 * a new file, replacing the journal file once durable. A crash during
+	 * compaction therefore leaves either the old or the new file in place.
+	 */
+	private void compact() {
+		int liveSize = 0;
+		for (int offset : this.pendingOffsets.values()) {
+			liveSize += HEADER_SIZE + this.buffer.getInt(offset);
+		}
+		if (liveSize >= this.position) {
+			return;
+		}
+		File compacted = new File(this.file.getPath() + ".compact");
+		try {
+			Files.deleteIfExists(compacted.toPath());
+			MappedByteBuffer target = map(compacted, this.buffer.capacity());
+			int targetPosition = 0;
+			for (Map.Entry<Long, Integer> pending : this.pendingOffsets.entrySet()) {
+				int offset = pending.getValue();
+				ByteBuffer entry = this.buffer.duplicate();
+				entry.limit(offset + HEADER_SIZE + this.buffer.getInt(offset)).position(offset);
+				target.position(targetPosition);
+				target.put(entry);
+				pending.setValue(targetPosition);
+				targetPosition = target.position();
+			}
+			if (targetPosition + 4 <= target.capacity()) {
+				target.putInt(targetPosition, 0);
+			}
+			target.force();
+			Files.move(compacted.toPath(), this.file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			this.buffer = target;
+			this.position = targetPosition;
+		}
+		catch (IOException ex) {
+			// Offsets may have been updated already: restore them from the unchanged journal
+			this.pendingOffsets.clear();
+			this.nextSequence = 0;
+			recover();
+			throw new IllegalStateException("Failed to compact event journal " + this.file, ex);
+		}
+	}
+
+	@Override
+	public synchronized void sync() {
+		this.buffer.force();
+	}
+
+	@Override
+	public synchronized void complete(long entryId) {
+		Integer offset = this.pendingOffsets.remove(entryId);
+		if (offset != null) {
+			this.buffer.put(offset + 4, STATE_COMPLETED);
+			if (this.pendingOffsets.isEmpty()) {
+				// Nothing left to replay: start over at the beginning
+				this.buffer.putInt(0, 0);
+				this.position = 0;
+			}
+		}
+	}
+
+	@Override
+	public synchronized List<Entry> getPendingEntries() {
+		List<Entry> entries = new ArrayList<>(this.pendingOffsets.size());
+		for (Map.Entry<Long, Integer> pending : this.pendingOffsets.entrySet()) {
+			int offset = pending.getValue();
+			int length = this.buffer.getInt(offset);
+			ByteBuffer content = this.buffer.duplicate();
+			content.position(offset + HEADER_SIZE);
+			byte[] id = new byte[content.getShort()];
+			content.get(id);
+			byte[] data = new byte[length - 2 - id.length];
+			content.get(data);
+			entries.add(new Entry(pending.getKey(), new String(id, StandardCharsets.UTF_8),
+					SerializationUtils.deserialize(data)));
+		}
+		return entries;
+	}
+
+	/**
+	 * Force all entries to the storage device.
+	 */
+	@Override
+	public synchronized void close() {
+		this.buffer.force();
+	}
+
+	@Override
+	public String toString() {
+		return "MappedFileEventJournal [" + this.file + "]";
+	}
+
+}
@@ -59,6 +59,48 @@ public @interface TransactionalEventListener {
 	 */
 	boolean fallbackExecution() default false;
 
+	/**
+	 * Whether the events published within a transaction should be collected
+	 * into a single buffer per transaction and delivered as a batch in the
+	 * chosen {@link #phase}, rather than registering a transaction
+	 * synchronization per event.
+	 * <p>Recommended for listeners receiving many events per transaction.
+	 * Batches of the after-completion phases get delivered asynchronously if
+	 * the {@link TransactionalEventListenerFactory} has a
+	 * {@link TransactionalEventListenerFactory#setBatchExecutor batch executor}.
+	 * @since 5.2
+	 */
+	boolean batch() default false;
+
+	/**
+	 * Spring Expression Language (SpEL) expression computing a key per event,
+	 * such that of all events with the same key published within a transaction,
+	 * only the last one gets delivered. Implies {@link #batch}.
+	 * <p>The expression gets evaluated against the event payload (or the
+	 * {@code ApplicationEvent} itself), exposing the event as {@code #event},
+	 * before the {@link #condition} is applied. Events with a {@code null} key
+	 * do not get coalesced.
+	 * <p>The default is {@code ""}, meaning every event is delivered.
+	 * @since 5.2
+	 */
+	String coalesceKey() default "";
+
+	/**
+	 * Whether the events should be appended to a durable {@link EventJournal}
+	 * before commit, for at-least-once delivery: events still pending after a
+	 * restart, e.g. since the process died between commit and delivery, get
+	 * replayed once the application context has been refreshed. Implies
+	 * {@link #batch}, and requires the {@link #phase} to be
+	 * {@link TransactionPhase#AFTER_COMMIT} and the
+	 * {@link TransactionalEventListenerFactory} to have an
+	 * {@link TransactionalEventListenerFactory#setOutboxJournal outbox journal}.
+	 * <p>Event payloads need to be serializable. Since the journal is not part
+	 * of the transaction, the listener needs to be idempotent and to tolerate
+	 * the replay of events whose transaction did not complete before a crash.
+	 * @since 5.2
+	 */
+	boolean outbox() default false;
+
 	/**
 	 * Alias for {@link #classes}.
 	 */
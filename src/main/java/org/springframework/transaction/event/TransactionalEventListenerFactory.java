@@ -17,23 +17,52 @@
 package org.springframework.transaction.event;
 
 import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.context.ApplicationEvent;
 import org.springframework.context.ApplicationListener;
+import org.springframework.context.PayloadApplicationEvent;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.event.EventListenerFactory;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.lang.Nullable;
 
 /**
  * {@link EventListenerFactory} implementation that handles {@link TransactionalEventListener}
  * annotated methods.
  *
+ * <p>Replays the pending entries of the {@link #setOutboxJournal outbox journal},
+ * if any, once the application context has been refreshed.
+ *
  * @author Stephane Nicoll
  * @since 4.2
  */
-public class TransactionalEventListenerFactory implements EventListenerFactory, Ordered {
+public class TransactionalEventListenerFactory
+		implements EventListenerFactory, ApplicationListener<ContextRefreshedEvent>, Ordered {
+
+	private static final Log logger = LogFactory.getLog(TransactionalEventListenerFactory.class);
 
 	private int order = 50;
 
+	@Nullable
+	private Executor batchExecutor;
+
+	@Nullable
+	private EventJournal outboxJournal;
+
+	private final Map<String, ApplicationListenerMethodTransactionalAdapter> outboxListeners =
+			new ConcurrentHashMap<>();
+
+	private final AtomicBoolean replayed = new AtomicBoolean();
+
 
 	public void setOrder(int order) {
 		this.order = order;
@@ -44,6 +73,47 @@ public class TransactionalEventListenerFactory implements EventListenerFactory,
 		return this.order;
 	}
 
+	/**
+	 * Set the executor for delivering the event batches of
+	 * {@link TransactionalEventListener#batch() batching} listeners
+	 * bound to an after-completion phase.
+	 * <p>Each batch gets submitted as a single task, preserving the order of
+	 * its events; a rejected batch gets delivered in the completing thread.
+	 * Default is none, delivering all batches synchronously.
+	 * @since 5.2
+	 */
+	public void setBatchExecutor(@Nullable Executor batchExecutor) {
+		this.batchExecutor = batchExecutor;
+	}
+
+	/**
+	 * Return the executor for delivering event batches, if any.
+	 * @since 5.2
+	 */
+	@Nullable
+	public Executor getBatchExecutor() {
+		return this.batchExecutor;
+	}
+
+	/**
+	 * Set the journal for the events of {@link TransactionalEventListener#outbox() outbox}
+	 * listeners. Delivery happens on the {@link #setBatchExecutor batch executor}, if any.
+	 * @since 5.2
+	 * @see MappedFileEventJournal
+	 */
+	public void setOutboxJournal(@Nullable EventJournal outboxJournal) {
+		this.outboxJournal = outboxJournal;
+	}
+
+	/**
+	 * Return the journal for the events of outbox listeners, if any.
+	 * @since 5.2
+	 */
+	@Nullable
+	public EventJournal getOutboxJournal() {
+		return this.outboxJournal;
+	}
+
 
 	@Override
 	public boolean supportsMethod(Method method) {
@@ -52,7 +122,58 @@ public class TransactionalEventListenerFactory implements EventListenerFactory,
 
 	@Override
 	public ApplicationListener<?> createApplicationListener(String beanName, Class<?> type, Method method) {
-		return new ApplicationListenerMethodTransactionalAdapter(beanName, type, method);
+		ApplicationListenerMethodTransactionalAdapter listener = new ApplicationListenerMethodTransactionalAdapter(
+				beanName, type, method, this.batchExecutor, this.outboxJournal);
+		if (listener.isOutbox()) {
+			this.outboxListeners.put(listener.getOutboxListenerId(), listener);
+		}
+		return listener;
+	}
+
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		if (this.outboxJournal != null && this.replayed.compareAndSet(false, true)) {
+			replayOutbox(this.outboxJournal);
+		}
+	}
+
+	/**
+	 * Deliver the pending entries of the given journal to their listeners,
+	 * completing each entry once processed by its listener. Entries for
+	 * unknown listeners, or whose processing fails, remain pending.
+	 */
+	private void replayOutbox(EventJournal journal) {
+		for (EventJournal.Entry entry : journal.getPendingEntries()) {
+			ApplicationListenerMethodTransactionalAdapter listener = this.outboxListeners.get(entry.getListenerId());
+			if (listener == null) {
+				if (logger.isWarnEnabled()) {
+					logger.warn("No outbox listener found for " + entry + " - keeping it for a later replay");
+				}
+				continue;
+			}
+			Object payload = entry.getPayload();
+			ApplicationEvent event = (payload instanceof ApplicationEvent ?
+					(ApplicationEvent) payload : new PayloadApplicationEvent<>(this, payload));
+			Runnable task = () -> {
+				try {
+					listener.processEvent(event);
+					journal.complete(entry.getId());
+				}
+				catch (Throwable ex) {
+					logger.error("Listener threw exception while replaying " + entry, ex);
+				}
+			};
+			if (this.batchExecutor != null) {
+				try {
+					this.batchExecutor.execute(task);
+					continue;
+				}
+				catch (RejectedExecutionException ex) {
+					// Fall back to replaying in the current thread
+				}
+			}
+			task.run();
+		}
 	}
 
 }
@@ -18,8 +18,6 @@ package org.springframework.transaction.interceptor;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -27,6 +25,7 @@ import org.apache.commons.logging.LogFactory;
 import org.springframework.aop.support.AopUtils;
 import org.springframework.core.MethodClassKey;
 import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
 
 /**
@@ -59,7 +58,59 @@ public abstract class AbstractFallbackTransactionAttributeSource implements Tran
 	 * <p>As this base class is not marked Serializable, the cache will be recreated
 	 * after serialization - provided that the concrete subclass is Serializable.
 	 */
-	private final Map<Object, TransactionAttribute> attributeCache = new ConcurrentHashMap<>(1024);
+	private TransactionAttributeCache attributeCache = new BoundedTransactionAttributeCache();
+
+	/**
+	 * Precomputed attributes to consult before the cache, if any.
+	 */
+	@Nullable
+	private volatile TransactionAttributeIndex attributeIndex;
+
+
+	/**
+	 * Set the cache to hold resolved transaction attributes in, including
+	 * markers for non-transactional methods.
+	 * <p>Default is an unbounded {@link BoundedTransactionAttributeCache}; pass one
+	 * with a maximum size for bounding the memory used by cached attributes, at
+	 * the expense of resolving evicted attributes again (including fresh state
+	 * such as retry budgets). Note that a custom cache will not survive serialization.
+	 * @since 5.2
+	 */
+	public void setAttributeCache(TransactionAttributeCache attributeCache) {
+		Assert.notNull(attributeCache, "TransactionAttributeCache must not be null");
+		this.attributeCache = attributeCache;
+	}
+
+	/**
+	 * Return the cache holding resolved transaction attributes,
+	 * e.g. for exposing its hit, miss and eviction counts.
+	 * @since 5.2
+	 */
+	public TransactionAttributeCache getAttributeCache() {
+		return this.attributeCache;
+	}
+
+	/**
+	 * Set an index of precomputed attributes, to be consulted before the cache
+	 * and before resolving attributes on demand. Methods not contained in the
+	 * index get resolved and cached as usual.
+	 * <p>The index is expected to have been built from this attribute source,
+	 * e.g. at application context startup.
+	 * @since 5.2
+	 * @see TransactionAttributeIndex#build
+	 */
+	public void setAttributeIndex(@Nullable TransactionAttributeIndex attributeIndex) {
+		this.attributeIndex = attributeIndex;
+	}
+
+	/**
+	 * Return the index of precomputed attributes, if any.
+	 * @since 5.2
+	 */
+	@Nullable
+	public TransactionAttributeIndex getAttributeIndex() {
+		return this.attributeIndex;
+	}
 
 
 	/**
@@ -75,10 +126,19 @@ public abstract class AbstractFallbackTransactionAttributeSource implements Tran
 		if (method.getDeclaringClass() == Object.class) {
 			return null;
 		}
+		//优先查找预先计算好的索引。
+		TransactionAttributeIndex index = this.attributeIndex;
+		if (index != null && targetClass != null) {
+			TransactionAttribute indexed = index.lookup(method, targetClass);
+			if (indexed != null) {
+				return (indexed != TransactionAttributeIndex.NOT_TRANSACTIONAL ? indexed : null);
+			}
+		}
 		//由method和class获取缓存的键。
 		Object cacheKey = getCacheKey(method, targetClass);
+		Class<?> cacheScope = (targetClass != null ? targetClass : method.getDeclaringClass());
 		// 从缓存中获取事务属性。
-		TransactionAttribute cached = this.attributeCache.get(cacheKey);
+		TransactionAttribute cached = this.attributeCache.get(cacheScope, cacheKey);
 		if (cached != null) {
 			if (cached == NULL_TRANSACTION_ATTRIBUTE) {
 				return null;
@@ -89,28 +149,47 @@ public abstract class AbstractFallbackTransactionAttributeSource implements Tran
 		}
 		else {
 			//没缓存，只能手动加载事务属性。
-			TransactionAttribute txAttr = computeTransactionAttribute(method, targetClass);
+			TransactionAttribute txAttr = resolveTransactionAttribute(method, targetClass);
 			// 当上一层手动加载事务属性，即事务声明的查找，找不到的时候，就会
 			if (txAttr == null) {
 				//添加空缓存
-				this.attributeCache.put(cacheKey, NULL_TRANSACTION_ATTRIBUTE);
+				this.attributeCache.put(cacheScope, cacheKey, NULL_TRANSACTION_ATTRIBUTE);
 			}
 			else {
-				//加载成功，则对默认事务属性对象设置一个识别描述符。
-				String methodIdentification = ClassUtils.getQualifiedMethodName(method, targetClass);
-				if (txAttr instanceof DefaultTransactionAttribute) {
-					((DefaultTransactionAttribute) txAttr).setDescriptor(methodIdentification);
-				}
-				if (logger.isTraceEnabled()) {
-					logger.trace("Adding transactional method '" + methodIdentification + "' with attribute: " + txAttr);
-				}
 				//添加缓存
-				this.attributeCache.put(cacheKey, txAttr);
+				this.attributeCache.put(cacheScope, cacheKey, txAttr);
 			}
 			return txAttr;
 		}
 	}
 
+	/**
+	 * Resolve the transaction attribute for the given method without consulting
+	 * or populating the cache, e.g. for building a {@link TransactionAttributeIndex}.
+	 * @param method the method for the current invocation (never {@code null})
+	 * @param targetClass the target class for this invocation (may be {@code null})
+	 * @return the attribute with its descriptor set, or {@code null} if the method is not transactional
+	 * @since 5.2
+	 */
+	@Nullable
+	TransactionAttribute resolveTransactionAttribute(Method method, @Nullable Class<?> targetClass) {
+		if (method.getDeclaringClass() == Object.class) {
+			return null;
+		}
+		TransactionAttribute txAttr = computeTransactionAttribute(method, targetClass);
+		if (txAttr != null) {
+			//加载成功，则对默认事务属性对象设置一个识别描述符。
+			String methodIdentification = ClassUtils.getQualifiedMethodName(method, targetClass);
+			if (txAttr instanceof DefaultTransactionAttribute) {
+				((DefaultTransactionAttribute) txAttr).setDescriptor(methodIdentification);
+			}
+			if (logger.isTraceEnabled()) {
+				logger.trace("Adding transactional method '" + methodIdentification + "' with attribute: " + txAttr);
+			}
+		}
+		return txAttr;
+	}
+
 	/**
 	 * Determine a cache key for the given method and target class.
 	 * <p>Must not produce same key for overloaded methods.
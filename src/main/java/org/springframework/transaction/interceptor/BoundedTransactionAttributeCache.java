@@ -0,0 +1,205 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.interceptor;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+/**
+ * Default {@link TransactionAttributeCache}, keeping its entries with their
+ * scope class, so that classes and their class loaders (e.g. after a hot
+ * redeployment) remain collectable, and optionally bounded in size.
+ *
+ * <p>Entries are stored per scope class through a {@link ClassValue}, which
+ * does not keep the class reachable even though the cached keys refer to it.
+ * By default, the cache is unbounded: like a plain cache, it holds the
+ * attributes of all methods looked up, which get resolved only once.
+ * With a maximum size, the oldest entries get evicted first once it is
+ * exceeded; evicted attributes get resolved again on their next lookup.
+ * The size includes entries of collected classes, until their turn for
+ * eviction comes if bounded, so it is an upper bound of the live entries.
+ *
+ * @since 5.2
+ * @see AbstractFallbackTransactionAttributeSource#setAttributeCache
+ */
+public class BoundedTransactionAttributeCache implements TransactionAttributeCache {
+
+	/** Maximum size of an unbounded cache. */
+	public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+
+	private final int maxSize;
+
+	private volatile ScopedEntries entries = new ScopedEntries();
+
+	/** Insertion order of all entries, for evicting the oldest ones. */
+	private final Queue<Registration> registrations = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger size = new AtomicInteger();
+
+	private final LongAdder hitCount = new LongAdder();
+
+	private final LongAdder missCount = new LongAdder();
+
+	private final LongAdder evictionCount = new LongAdder();
+
+
+	/**
+	 * Create a new unbounded cache.
+	 */
+	public BoundedTransactionAttributeCache() {
+		this(UNBOUNDED);
+	}
+
+	/**
+	 * Create a new cache with the given maximum size.
+	 *
+	 * @param maxSize the maximum number of entries to keep,
+	 * or {@link #UNBOUNDED} for no eviction
+	 */
+	public BoundedTransactionAttributeCache(int maxSize) {
+		Assert.isTrue(maxSize > 0, "Maximum size must be greater than 0");
+		this.maxSize = maxSize;
+	}
+
+
+	/**
+	 * Return the maximum number of entries to keep, or {@link #UNBOUNDED}.
+	 */
+	public int getMaxSize() {
+		return this.maxSize;
+	}
+
+	@Override
+	@Nullable
+	public TransactionAttribute get(Class<?> scope, Object key) {
+		TransactionAttribute attribute = this.entries.get(scope).get(key);
+		if (attribute != null) {
+			this.hitCount.increment();
+		}
+		else {
+			this.missCount.increment();
+		}
+		return attribute;
+	}
+
+	@Override
+	public void put(Class<?> scope, Object key, TransactionAttribute attribute) {
+		Map<Object, TransactionAttribute> scopedEntries = this.entries.get(scope);
+		if (scopedEntries.put(key, attribute) == null) {
+			if (this.maxSize == UNBOUNDED) {
+				// No eviction: no need to track the order of entries
+				this.size.incrementAndGet();
+				return;
+			}
+			this.registrations.add(new Registration(scopedEntries, key));
+			if (this.size.incrementAndGet() > this.maxSize) {
+				evict();
+			}
+		}
+	}
+
+	private void evict() {
+		while (this.size.get() > this.maxSize) {
+			Registration oldest = this.registrations.poll();
+			if (oldest == null) {
+				break;
+			}
+			this.size.decrementAndGet();
+			if (oldest.remove()) {
+				this.evictionCount.increment();
+			}
+		}
+	}
+
+	@Override
+	public void clear() {
+		this.entries = new ScopedEntries();
+		this.registrations.clear();
+		this.size.set(0);
+	}
+
+	@Override
+	public int size() {
+		return this.size.get();
+	}
+
+	@Override
+	public long getHitCount() {
+		return this.hitCount.sum();
+	}
+
+	@Override
+	public long getMissCount() {
+		return this.missCount.sum();
+	}
+
+	@Override
+	public long getEvictionCount() {
+		return this.evictionCount.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "BoundedTransactionAttributeCache: size=" + size() +
+				", maxSize=" + (this.maxSize != UNBOUNDED ? this.maxSize : "unbounded") +
+				", hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount();
+	}
+
+
+	/**
+	 * Per-class entry maps, held by the classes themselves.
+	 */
+	private static final class ScopedEntries extends ClassValue<Map<Object, TransactionAttribute>> {
+
+		@Override
+		protected Map<Object, TransactionAttribute> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<>(8);
+		}
+	}
+
+
+	/**
+	 * Weak record of an entry, not keeping its scope class reachable.
+	 */
+	private static final class Registration {
+
+		private final WeakReference<Map<Object, TransactionAttribute>> scopedEntries;
+
+		private final WeakReference<Object> key;
+
+		Registration(Map<Object, TransactionAttribute> scopedEntries, Object key) {
+			this.scopedEntries = new WeakReference<>(scopedEntries);
+			this.key = new WeakReference<>(key);
+		}
+
+		boolean remove() {
+			Map<Object, TransactionAttribute> scopedEntries = this.scopedEntries.get();
+			Object key = this.key.get();
+			return (scopedEntries != null && key != null && scopedEntries.remove(key) != null);
+		}
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2018 the original author or authors.
+ * Copyright 2002-2019 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,6 +18,7 @@ package org.springframework.transaction.interceptor;
 
 import org.springframework.lang.Nullable;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionRetryPolicy;
 import org.springframework.util.StringUtils;
 
 /**
@@ -37,6 +38,9 @@ public class DefaultTransactionAttribute extends DefaultTransactionDefinition im
 	@Nullable
 	private String descriptor;
 
+	@Nullable
+	private TransactionRetryPolicy retryPolicy;
+
 
 	/**
 	 * Create a new DefaultTransactionAttribute, with default settings.
@@ -61,6 +65,7 @@ public class DefaultTransactionAttribute extends DefaultTransactionDefinition im
 	 */
 	public DefaultTransactionAttribute(TransactionAttribute other) {
 		super(other);
+		this.retryPolicy = other.getRetryPolicy();
 	}
 
 	/**
@@ -116,6 +121,24 @@ public class DefaultTransactionAttribute extends DefaultTransactionDefinition im
 		return this.descriptor;
 	}
 
+	/**
+	 * Set the policy for retrying the transaction after a transient failure.
+	 * @since 5.2
+	 */
+	public void setRetryPolicy(@Nullable TransactionRetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	/**
+	 * Return the policy for retrying the transaction after a transient failure, if any.
+	 * @since 5.2
+	 */
+	@Override
+	@Nullable
+	public TransactionRetryPolicy getRetryPolicy() {
+		return this.retryPolicy;
+	}
+
 	/**
 	 * The default behavior is as with EJB: rollback on unchecked exception
 	 * ({@link RuntimeException}), assuming an unexpected outcome outside of any
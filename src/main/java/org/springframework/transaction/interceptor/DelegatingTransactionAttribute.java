@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2019 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -20,6 +20,7 @@ import java.io.Serializable;
 
 import org.springframework.lang.Nullable;
 import org.springframework.transaction.support.DelegatingTransactionDefinition;
+import org.springframework.transaction.support.TransactionRetryPolicy;
 
 /**
  * {@link TransactionAttribute} implementation that delegates all calls to a given target
@@ -58,4 +59,10 @@ public abstract class DelegatingTransactionAttribute extends DelegatingTransacti
 		return this.targetAttribute.rollbackOn(ex);
 	}
 
+	@Override
+	@Nullable
+	public TransactionRetryPolicy getRetryPolicy() {
+		return this.targetAttribute.getRetryPolicy();
+	}
+
 }
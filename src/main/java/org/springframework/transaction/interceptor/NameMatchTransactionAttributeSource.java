@@ -21,7 +21,9 @@ import java.lang.reflect.Method;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -30,11 +32,16 @@ import org.springframework.lang.Nullable;
 import org.springframework.util.ClassUtils;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.PatternMatchUtils;
+import org.springframework.util.ReflectionUtils;
 
 /**
  * Simple {@link TransactionAttributeSource} implementation that
  * allows attributes to be matched by registered name.
  *
+ * <p>Unless {@link #isMatch} is overridden, mapped name patterns are compiled
+ * into an index on first lookup, and the resolved attribute is cached per
+ * method name.
+ *
  * @author Juergen Hoeller
  * @since 21.08.2003
  * @see #isMatch
@@ -52,6 +59,13 @@ public class NameMatchTransactionAttributeSource implements TransactionAttribute
 	/** Keys are method names; values are TransactionAttributes. */
 	private Map<String, TransactionAttribute> nameMap = new HashMap<>();
 
+	/** Whether {@link #isMatch} has not been overridden, allowing for an index. */
+	private final boolean defaultPatternMatching = isDefaultPatternMatching(getClass());
+
+	/** Compiled name map, built on first lookup. */
+	@Nullable
+	private transient volatile CompiledNameMap compiledNameMap;
+
 
 	/**
 	 * Set a name/attribute map, consisting of method names
@@ -95,6 +109,7 @@ public class NameMatchTransactionAttributeSource implements TransactionAttribute
 			logger.debug("Adding transactional method [" + methodName + "] with attribute [" + attr + "]");
 		}
 		this.nameMap.put(methodName, attr);
+		this.compiledNameMap = null;
 	}
 
 
@@ -105,8 +120,12 @@ public class NameMatchTransactionAttributeSource implements TransactionAttribute
 			return null;
 		}
 
-		// Look for direct name match.
 		String methodName = method.getName();
+		if (this.defaultPatternMatching) {
+			return getCompiledNameMap().getTransactionAttribute(methodName);
+		}
+
+		// Look for direct name match.
 		TransactionAttribute attr = this.nameMap.get(methodName);
 
 		if (attr == null) {
@@ -137,6 +156,20 @@ public class NameMatchTransactionAttributeSource implements TransactionAttribute
 		return PatternMatchUtils.simpleMatch(mappedName, methodName);
 	}
 
+	private CompiledNameMap getCompiledNameMap() {
+		CompiledNameMap compiled = this.compiledNameMap;
+		if (compiled == null) {
+			compiled = new CompiledNameMap(this.nameMap);
+			this.compiledNameMap = compiled;
+		}
+		return compiled;
+	}
+
+	private static boolean isDefaultPatternMatching(Class<?> sourceClass) {
+		Method method = ReflectionUtils.findMethod(sourceClass, "isMatch", String.class, String.class);
+		return (method == null || method.getDeclaringClass() == NameMatchTransactionAttributeSource.class);
+	}
+
 
 	@Override
 	public boolean equals(Object other) {
@@ -160,4 +193,43 @@ public class NameMatchTransactionAttributeSource implements TransactionAttribute
 		return getClass().getName() + ": " + this.nameMap;
 	}
 
+
+	/**
+	 * Name map compiled into a pattern index, plus the attributes resolved
+	 * so far per method name.
+	 */
+	private static final class CompiledNameMap {
+
+		/** Maximum number of method names to cache resolved attributes for. */
+		private static final int CACHE_LIMIT = 4096;
+
+		private final Map<String, TransactionAttribute> nameMap;
+
+		private final NamePatternIndex<TransactionAttribute> patternIndex;
+
+		private final Map<String, Optional<TransactionAttribute>> attributeCache = new ConcurrentHashMap<>(64);
+
+		CompiledNameMap(Map<String, TransactionAttribute> nameMap) {
+			this.nameMap = new HashMap<>(nameMap);
+			this.patternIndex = new NamePatternIndex<>(nameMap);
+		}
+
+		@Nullable
+		TransactionAttribute getTransactionAttribute(String methodName) {
+			Optional<TransactionAttribute> cached = this.attributeCache.get(methodName);
+			if (cached != null) {
+				return cached.orElse(null);
+			}
+			// Look for direct name match, then for most specific name match.
+			TransactionAttribute attr = this.nameMap.get(methodName);
+			if (attr == null) {
+				attr = this.patternIndex.findBestMatch(methodName);
+			}
+			if (this.attributeCache.size() < CACHE_LIMIT) {
+				this.attributeCache.put(methodName, Optional.ofNullable(attr));
+			}
+			return attr;
+		}
+	}
+
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.interceptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.lang.Nullable;
+import org.springframework.util.PatternMatchUtils;
+
+/**
+ * Index over a set of name patterns in {@link PatternMatchUtils#simpleMatch}
+ * syntax, determining the most specific pattern for a given name without
+ * matching every single pattern against it.
+ *
+ * <p>"xxx*" patterns are kept in a prefix trie and "*xxx" patterns in a
+ * suffix trie, both walked once along the name. "*xxx*" patterns are checked
+ * through a substring search, and any other patterns containing wildcards
+ * through {@code simpleMatch}. Patterns without wildcards are not indexed:
+ * exact names are expected to be looked up directly.
+ *
+ * <p>The most specific pattern is the longest one; between patterns of the
+ * same length, the one registered last wins. Immutable once built.
+ *
+ * @since 5.2
+ * @param <T> the type of value associated with each pattern
+ * @see NameMatchTransactionAttributeSource
+ */
+final class NamePatternIndex<T> {
+
+	private final Node<T> prefixRoot = new Node<>();
+
+	private final Node<T> suffixRoot = new Node<>();
+
+	private final List<Pattern<T>> infixPatterns = new ArrayList<>();
+
+	private final List<Pattern<T>> otherPatterns = new ArrayList<>();
+
+
+	/**
+	 * Build an index for the given patterns, in the map's iteration order.
+	 */
+	NamePatternIndex(Map<String, T> patterns) {
+		int order = 0;
+		for (Map.Entry<String, T> entry : patterns.entrySet()) {
+			add(entry.getKey(), entry.getValue(), order++);
+		}
+	}
+
+
+	private void add(String mappedName, T value, int order) {
+		int firstIndex = mappedName.indexOf('*');
+		if (firstIndex == -1) {
+			return;
+		}
+		int lastIndex = mappedName.lastIndexOf('*');
+		int length = mappedName.length();
+		Pattern<T> pattern = new Pattern<>(mappedName, value, order);
+		if (firstIndex == length - 1) {
+			// "xxx*", including "*"
+			this.prefixRoot.obtainNode(mappedName, 0, length - 1, false).pattern = pattern;
+		}
+		else if (lastIndex == 0) {
+			// "*xxx"
+			this.suffixRoot.obtainNode(mappedName, 1, length, true).pattern = pattern;
+		}
+		else if (firstIndex == 0 && lastIndex == length - 1 && mappedName.indexOf('*', 1) == lastIndex) {
+			// "*xxx*"
+			this.infixPatterns.add(pattern);
+		}
+		else {
+			this.otherPatterns.add(pattern);
+		}
+	}
+
+	/**
+	 * Determine the value of the most specific pattern matching the given name.
+	 *
+	 * @param name the name to match
+	 * @return the value of the winning pattern, or {@code null} if none matches
+	 */
+	@Nullable
+	T findBestMatch(String name) {
+		int length = name.length();
+		Pattern<T> best = this.prefixRoot.pattern;
+		Node<T> node = this.prefixRoot;
+		for (int i = 0; i < length && node != null; i++) {
+			node = node.getChild(name.charAt(i));
+			if (node != null) {
+				best = moreSpecific(node.pattern, best);
+			}
+		}
+		node = this.suffixRoot;
+		for (int i = length - 1; i >= 0 && node != null; i--) {
+			node = node.getChild(name.charAt(i));
+			if (node != null) {
+				best = moreSpecific(node.pattern, best);
+			}
+		}
+		for (Pattern<T> pattern : this.infixPatterns) {
+			String mappedName = pattern.mappedName;
+			if (name.contains(mappedName.substring(1, mappedName.length() - 1))) {
+				best = moreSpecific(pattern, best);
+			}
+		}
+		for (Pattern<T> pattern : this.otherPatterns) {
+			if (PatternMatchUtils.simpleMatch(pattern.mappedName, name)) {
+				best = moreSpecific(pattern, best);
+			}
+		}
+		return (best != null ? best.value : null);
+	}
+
+	@Nullable
+	private static <T> Pattern<T> moreSpecific(@Nullable Pattern<T> candidate, @Nullable Pattern<T> best) {
+		if (candidate == null) {
+			return best;
+		}
+		if (best == null) {
+			return candidate;
+		}
+		int candidateLength = candidate.mappedName.length();
+		int bestLength = best.mappedName.length();
+		if (candidateLength > bestLength || (candidateLength == bestLength && candidate.order > best.order)) {
+			return candidate;
+		}
+		return best;
+	}
+
+
+	/**
+	 * A registered pattern with its value and registration order.
+	 */
+	private static final class Pattern<T> {
+
+		final String mappedName;
+
+		final T value;
+
+		final int order;
+
+		Pattern(String mappedName, T value, int order) {
+			this.mappedName = mappedName;
+			this.value = value;
+			this.order = order;
+		}
+	}
+
+
+	/**
+	 * Trie node, with children kept in small parallel arrays.
+	 */
+	private static final class Node<T> {
+
+		private char[] keys = new char[0];
+
+		@SuppressWarnings("unchecked")
+		private Node<T>[] children = new Node[0];
+
+		@Nullable
+		Pattern<T> pattern;
+
+		@Nullable
+		Node<T> getChild(char key) {
+			char[] keys = this.keys;
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] == key) {
+					return this.children[i];
+				}
+			}
+			return null;
+		}
+
+		Node<T> obtainNode(String mappedName, int start, int end, boolean reverse) {
+			Node<T> node = this;
+			for (int i = start; i < end; i++) {
+				char key = mappedName.charAt(reverse ? end - 1 - (i - start) : i);
+				Node<T> child = node.getChild(key);
+				if (child == null) {
+					child = new Node<>();
+					int size = node.keys.length;
+					node.keys = Arrays.copyOf(node.keys, size + 1);
+					node.children = Arrays.copyOf(node.children, size + 1);
+					node.keys[size] = key;
+					node.children[size] = child;
+				}
+				node = child;
+			}
+			return node;
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.interceptor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.lang.Nullable;
+import org.springframework.util.ConcurrentReferenceHashMap;
+
+/**
+ * Compiled form of the rollback rules of a {@link RuleBasedTransactionAttribute},
+ * caching the winning rule per concrete exception class, so that repeated
+ * rollback decisions for the same exception type cost a single lookup instead
+ * of matching every rule against the exception's superclass chain.
+ *
+ * <p>Only applicable to plain {@link RollbackRuleAttribute} and
+ * {@link NoRollbackRuleAttribute} instances, whose matching depends on the
+ * exception class alone; see {@link #isApplicable}.
+ *
+ * @since 5.2
+ * @see RuleBasedTransactionAttribute#rollbackOn(Throwable)
+ */
+final class RollbackRuleClassifier {
+
+	private final List<RollbackRuleAttribute> source;
+
+	private final RollbackRuleAttribute[] rules;
+
+	private final Map<Class<?>, Optional<RollbackRuleAttribute>> winningRuleCache =
+			new ConcurrentReferenceHashMap<>(16);
+
+
+	/**
+	 * Compile the given rules, which need to be {@link #isApplicable applicable}.
+	 */
+	RollbackRuleClassifier(List<RollbackRuleAttribute> rules) {
+		this.source = rules;
+		this.rules = rules.toArray(new RollbackRuleAttribute[0]);
+	}
+
+
+	/**
+	 * Return whether this classifier has been compiled from the given rules
+	 * list in its current state.
+	 */
+	boolean isCompiledFrom(List<RollbackRuleAttribute> rules) {
+		return (rules == this.source && rules.size() == this.rules.length);
+	}
+
+	/**
+	 * Determine the winning rule for the given exception,
+	 * consulting the cache for its class first.
+	 *
+	 * @param ex the exception to classify
+	 * @return the winning rule, or {@code null} if no rule applies
+	 */
+	@Nullable
+	RollbackRuleAttribute getWinningRule(Throwable ex) {
+		Class<?> exceptionClass = ex.getClass();
+		Optional<RollbackRuleAttribute> winner = this.winningRuleCache.get(exceptionClass);
+		if (winner == null) {
+			winner = Optional.ofNullable(findWinningRule(ex));
+			this.winningRuleCache.put(exceptionClass, winner);
+		}
+		return winner.orElse(null);
+	}
+
+	/**
+	 * Determine the shallowest rule matching the given exception, that is,
+	 * the rule closest in the inheritance hierarchy to the exception.
+	 */
+	@Nullable
+	private RollbackRuleAttribute findWinningRule(Throwable ex) {
+		RollbackRuleAttribute winner = null;
+		int deepest = Integer.MAX_VALUE;
+		for (RollbackRuleAttribute rule : this.rules) {
+			int depth = rule.getDepth(ex);
+			if (depth >= 0 && depth < deepest) {
+				deepest = depth;
+				winner = rule;
+			}
+		}
+		return winner;
+	}
+
+
+	/**
+	 * Determine whether the given rules can be compiled, i.e. consist of plain
+	 * {@link RollbackRuleAttribute} and {@link NoRollbackRuleAttribute} instances
+	 * only. Subclasses may match on more than the exception class.
+	 */
+	static boolean isApplicable(List<RollbackRuleAttribute> rules) {
+		for (RollbackRuleAttribute rule : rules) {
+			Class<?> ruleClass = rule.getClass();
+			if (ruleClass != RollbackRuleAttribute.class && ruleClass != NoRollbackRuleAttribute.class) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -32,6 +32,10 @@ import org.springframework.lang.Nullable;
  * both positive and negative. If no rules are relevant to the exception, it
  * behaves like DefaultTransactionAttribute (rolling back on runtime exceptions).
  *
+ * <p>The winning rule is cached per exception class. Rule lists get recompiled
+ * when replaced through {@link #setRollbackRules}, when obtained through
+ * {@link #getRollbackRules} for modification, or when their size changes.
+ *
  * <p>{@link TransactionAttributeEditor} creates objects of this class.
  *
  * @author Rod Johnson
@@ -55,6 +59,9 @@ public class RuleBasedTransactionAttribute extends DefaultTransactionAttribute i
 	@Nullable
 	private List<RollbackRuleAttribute> rollbackRules;
 
+	@Nullable
+	private transient volatile RollbackRuleClassifier classifier;
+
 
 	/**
 	 * Create a new RuleBasedTransactionAttribute, with default settings.
@@ -108,6 +115,7 @@ public class RuleBasedTransactionAttribute extends DefaultTransactionAttribute i
 	 */
 	public void setRollbackRules(List<RollbackRuleAttribute> rollbackRules) {
 		this.rollbackRules = rollbackRules;
+		this.classifier = null;
 	}
 
 	/**
@@ -118,6 +126,8 @@ public class RuleBasedTransactionAttribute extends DefaultTransactionAttribute i
 		if (this.rollbackRules == null) {
 			this.rollbackRules = new LinkedList<>();
 		}
+		// The caller may modify the returned list
+		this.classifier = null;
 		return this.rollbackRules;
 	}
 
@@ -135,9 +145,13 @@ public class RuleBasedTransactionAttribute extends DefaultTransactionAttribute i
 		}
 
 		RollbackRuleAttribute winner = null;
-		int deepest = Integer.MAX_VALUE;
+		RollbackRuleClassifier classifier = getClassifier();
 
-		if (this.rollbackRules != null) {
+		if (classifier != null) {
+			winner = classifier.getWinningRule(ex);
+		}
+		else if (this.rollbackRules != null) {
+			int deepest = Integer.MAX_VALUE;
 			for (RollbackRuleAttribute rule : this.rollbackRules) {
 				int depth = rule.getDepth(ex);
 				if (depth >= 0 && depth < deepest) {
@@ -160,6 +174,27 @@ public class RuleBasedTransactionAttribute extends DefaultTransactionAttribute i
 		return !(winner instanceof NoRollbackRuleAttribute);
 	}
 
+	/**
+	 * Return the compiled form of the current rollback rules,
+	 * or {@code null} if there are no rules or they cannot be compiled.
+	 */
+	@Nullable
+	private RollbackRuleClassifier getClassifier() {
+		List<RollbackRuleAttribute> rules = this.rollbackRules;
+		if (rules == null) {
+			return null;
+		}
+		RollbackRuleClassifier classifier = this.classifier;
+		if (classifier == null || !classifier.isCompiledFrom(rules)) {
+			if (!RollbackRuleClassifier.isApplicable(rules)) {
+				return null;
+			}
+			classifier = new RollbackRuleClassifier(rules);
+			this.classifier = classifier;
+		}
+		return classifier;
+	}
+
 
 	@Override
 	public String toString() {
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2018 the original author or authors.
+ * Copyright 2002-2019 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,6 +18,7 @@ package org.springframework.transaction.interceptor;
 
 import java.lang.reflect.Method;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
@@ -27,6 +28,7 @@ import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.BeanFactoryAnnotationUtils;
+import org.springframework.core.MethodClassKey;
 import org.springframework.core.NamedThreadLocal;
 import org.springframework.lang.Nullable;
 import org.springframework.transaction.NoTransactionException;
@@ -34,9 +36,13 @@ import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.TransactionSystemException;
 import org.springframework.transaction.support.CallbackPreferringPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionRetryPolicy;
+import org.springframework.transaction.support.TransactionTrace;
 import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
 import org.springframework.util.ConcurrentReferenceHashMap;
+import org.springframework.util.ReflectionUtils;
 import org.springframework.util.StringUtils;
 
 /**
@@ -88,6 +94,15 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 	private static final ThreadLocal<TransactionInfo> transactionInfoHolder =
 			new NamedThreadLocal<>("Current aspect-driven transaction");
 
+	/**
+	 * Per-thread free list of completed TransactionInfo objects, shared by all
+	 * aspects: the pooled instances hold no references to their aspect or to
+	 * their completed transaction, so a thread does not keep an aspect (and
+	 * its bean factory) reachable beyond its lifecycle.
+	 */
+	private static final ThreadLocal<TransactionInfoPool> transactionInfoPool =
+			new NamedThreadLocal<>("Recycled aspect-driven transaction infos");
+
 
 	/**
 	 * Subclasses can use this to return the current TransactionInfo.
@@ -144,12 +159,32 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 	private final ConcurrentMap<Object, PlatformTransactionManager> transactionManagerCache =
 			new ConcurrentReferenceHashMap<>(4);
 
+	/**
+	 * Invocation plans keyed by method, for the first target class seen per method.
+	 */
+	private final ConcurrentMap<Method, InvocationPlan> invocationPlanCache = new ConcurrentHashMap<>(256);
+
+	/**
+	 * Invocation plans for methods invoked on further target classes.
+	 */
+	private final ConcurrentMap<MethodClassKey, InvocationPlan> secondaryInvocationPlanCache =
+			new ConcurrentHashMap<>(16);
+
+	/**
+	 * Whether the transaction manager may be resolved once per method,
+	 * i.e. {@link #determineTransactionManager} has not been overridden.
+	 */
+	private final boolean transactionManagerCacheable = isDefaultTransactionManagerResolution(getClass());
+
+	private boolean transactionInfoRecycling = false;
+
 
 	/**
 	 * Specify the name of the default transaction manager bean.
 	 */
 	public void setTransactionManagerBeanName(@Nullable String transactionManagerBeanName) {
 		this.transactionManagerBeanName = transactionManagerBeanName;
+		clearInvocationPlanCache();
 	}
 
 	/**
@@ -169,6 +204,7 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 	 */
 	public void setTransactionManager(@Nullable PlatformTransactionManager transactionManager) {
 		this.transactionManager = transactionManager;
+		clearInvocationPlanCache();
 	}
 
 	/**
@@ -195,6 +231,7 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 		NameMatchTransactionAttributeSource tas = new NameMatchTransactionAttributeSource();
 		tas.setProperties(transactionAttributes);
 		this.transactionAttributeSource = tas;
+		clearInvocationPlanCache();
 	}
 
 	/**
@@ -207,6 +244,7 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 	 */
 	public void setTransactionAttributeSources(TransactionAttributeSource... transactionAttributeSources) {
 		this.transactionAttributeSource = new CompositeTransactionAttributeSource(transactionAttributeSources);
+		clearInvocationPlanCache();
 	}
 
 	/**
@@ -220,6 +258,7 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 	 */
 	public void setTransactionAttributeSource(@Nullable TransactionAttributeSource transactionAttributeSource) {
 		this.transactionAttributeSource = transactionAttributeSource;
+		clearInvocationPlanCache();
 	}
 
 	/**
@@ -230,12 +269,36 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 		return this.transactionAttributeSource;
 	}
 
+	/**
+	 * Set whether {@link TransactionInfo} objects should be recycled through a
+	 * per-thread free list once their transaction has completed within
+	 * {@link #invokeWithinTransaction}, instead of allocating one per invocation.
+	 * <p>Default is "false". Combine this with
+	 * {@link org.springframework.transaction.support.AbstractPlatformTransactionManager#setTransactionStatusRecycling}
+	 * for allocation-free participation in existing transactions. Subclasses
+	 * holding on to a TransactionInfo beyond the completion of its transaction
+	 * must not switch this on: a recycled TransactionInfo rejects further access.
+	 * @since 5.2
+	 */
+	public void setTransactionInfoRecycling(boolean transactionInfoRecycling) {
+		this.transactionInfoRecycling = transactionInfoRecycling;
+	}
+
+	/**
+	 * Return whether completed TransactionInfo objects get recycled.
+	 * @since 5.2
+	 */
+	public boolean isTransactionInfoRecycling() {
+		return this.transactionInfoRecycling;
+	}
+
 	/**
 	 * Set the BeanFactory to use for retrieving PlatformTransactionManager beans.
 	 */
 	@Override
 	public void setBeanFactory(@Nullable BeanFactory beanFactory) {
 		this.beanFactory = beanFactory;
+		clearInvocationPlanCache();
 	}
 
 	/**
@@ -268,6 +331,9 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 	 * General delegate for around-advice-based subclasses, delegating to several other template
 	 * methods on this class. Able to handle {@link CallbackPreferringPlatformTransactionManager}
 	 * as well as regular {@link PlatformTransactionManager} implementations.
+	 * <p>If the transaction attribute specifies a {@link TransactionRetryPolicy} and
+	 * the invocation starts the outermost transaction, the invocation is repeated
+	 * in a new transaction after transient failures, as permitted by the policy.
 	 * @param method the Method being invoked
 	 * @param targetClass the target class that we're invoking the method on
 	 * @param invocation the callback to use for proceeding with the target invocation
@@ -279,30 +345,67 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 			final InvocationCallback invocation) throws Throwable {
 
 		// If the transaction attribute is null, the method is non-transactional.
-		TransactionAttributeSource tas = getTransactionAttributeSource();
-		final TransactionAttribute txAttr = (tas != null ? tas.getTransactionAttribute(method, targetClass) : null);
-		final PlatformTransactionManager tm = determineTransactionManager(txAttr);
-		final String joinpointIdentification = methodIdentification(method, targetClass, txAttr);
+		InvocationPlan plan = getInvocationPlan(method, targetClass);
+		TransactionAttribute txAttr = plan.transactionAttribute;
+		TransactionRetryPolicy retryPolicy = (txAttr != null ? txAttr.getRetryPolicy() : null);
+		if (retryPolicy == null || !retryPolicy.appliesTo(txAttr)) {
+			return invokeWithinTransaction(plan, invocation);
+		}
 
-		if (txAttr == null || !(tm instanceof CallbackPreferringPlatformTransactionManager)) {
-			// Standard transaction demarcation with getTransaction and commit/rollback calls.
-			TransactionInfo txInfo = createTransactionIfNecessary(tm, txAttr, joinpointIdentification);
-			Object retVal = null;
+		// Outermost transaction with retry policy: re-execute after transient failures.
+		InvocationCallback repeatableInvocation = invocation.repeatable();
+		retryPolicy.recordExecution();
+		for (int attempt = 1; ; attempt++) {
 			try {
-				// This is an around advice: Invoke the next interceptor in the chain.
-				// This will normally result in a target object being invoked.
-				retVal = invocation.proceedWithInvocation();
+				return invokeWithinTransaction(plan, repeatableInvocation);
 			}
 			catch (Throwable ex) {
-				// target invocation exception
-				completeTransactionAfterThrowing(txInfo, ex);
-				throw ex;
+				// Only retry if the transaction has been rolled back
+				if (!txAttr.rollbackOn(ex) || !retryPolicy.awaitRetry(ex, attempt)) {
+					throw ex;
+				}
+				if (logger.isDebugEnabled()) {
+					logger.debug("Retrying [" + plan.joinpointIdentification + "] after transient failure " +
+							"in attempt " + attempt + ": " + ex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Invoke the given plan's method within a transaction, once.
+	 */
+	@Nullable
+	private Object invokeWithinTransaction(InvocationPlan plan, final InvocationCallback invocation) throws Throwable {
+		final TransactionAttribute txAttr = plan.transactionAttribute;
+		final PlatformTransactionManager tm = (this.transactionManagerCacheable ?
+				plan.transactionManager : determineTransactionManager(txAttr));
+		final String joinpointIdentification = plan.joinpointIdentification;
+
+		if (txAttr == null || !(tm instanceof CallbackPreferringPlatformTransactionManager)) {
+			// Standard transaction demarcation with getTransaction and commit/rollback calls.
+			TransactionInfo txInfo = createTransactionIfNecessary(tm, plan.namedTransactionAttribute, joinpointIdentification);
+			try {
+				Object retVal = null;
+				try {
+					// This is an around advice: Invoke the next interceptor in the chain.
+					// This will normally result in a target object being invoked.
+					retVal = invocation.proceedWithInvocation();
+				}
+				catch (Throwable ex) {
+					// target invocation exception
+					completeTransactionAfterThrowing(txInfo, ex);
+					throw ex;
+				}
+				finally {
+					cleanupTransactionInfo(txInfo);
+				}
+				commitTransactionAfterReturning(txInfo);
+				return retVal;
 			}
 			finally {
-				cleanupTransactionInfo(txInfo);
+				releaseTransactionInfo(txInfo);
 			}
-			commitTransactionAfterReturning(txInfo);
-			return retVal;
 		}
 
 		else {
@@ -367,6 +470,56 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 	protected void clearTransactionManagerCache() {
 		this.transactionManagerCache.clear();
 		this.beanFactory = null;
+		clearInvocationPlanCache();
+	}
+
+	/**
+	 * Return the invocation plan for the given method, building and caching it
+	 * on first invocation. The steady-state lookup is a single map access
+	 * without allocating a cache key.
+	 */
+	private InvocationPlan getInvocationPlan(Method method, @Nullable Class<?> targetClass) {
+		InvocationPlan plan = this.invocationPlanCache.get(method);
+		if (plan != null && plan.targetClass == targetClass) {
+			return plan;
+		}
+		if (plan == null) {
+			plan = buildInvocationPlan(method, targetClass);
+			InvocationPlan existing = this.invocationPlanCache.putIfAbsent(method, plan);
+			if (existing == null || existing.targetClass == targetClass) {
+				return (existing != null ? existing : plan);
+			}
+		}
+		// Same method invoked on a different target class than the first one seen.
+		MethodClassKey cacheKey = new MethodClassKey(method, targetClass);
+		plan = this.secondaryInvocationPlanCache.get(cacheKey);
+		if (plan == null) {
+			plan = buildInvocationPlan(method, targetClass);
+			this.secondaryInvocationPlanCache.putIfAbsent(cacheKey, plan);
+		}
+		return plan;
+	}
+
+	private InvocationPlan buildInvocationPlan(Method method, @Nullable Class<?> targetClass) {
+		TransactionAttributeSource tas = getTransactionAttributeSource();
+		TransactionAttribute txAttr = (tas != null ? tas.getTransactionAttribute(method, targetClass) : null);
+		PlatformTransactionManager tm = (this.transactionManagerCacheable ? determineTransactionManager(txAttr) : null);
+		String joinpointIdentification = methodIdentification(method, targetClass, txAttr);
+		return new InvocationPlan(targetClass, txAttr, tm, joinpointIdentification);
+	}
+
+	/**
+	 * Drop all invocation plans, e.g. after a configuration change.
+	 */
+	private void clearInvocationPlanCache() {
+		this.invocationPlanCache.clear();
+		this.secondaryInvocationPlanCache.clear();
+	}
+
+	private static boolean isDefaultTransactionManagerResolution(Class<?> aspectClass) {
+		Method method = ReflectionUtils.findMethod(
+				aspectClass, "determineTransactionManager", TransactionAttribute.class);
+		return (method == null || method.getDeclaringClass() == TransactionAspectSupport.class);
 	}
 
 	/**
@@ -495,7 +648,7 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 			@Nullable TransactionAttribute txAttr, String joinpointIdentification,
 			@Nullable TransactionStatus status) {
 
-		TransactionInfo txInfo = new TransactionInfo(tm, txAttr, joinpointIdentification);
+		TransactionInfo txInfo = obtainTransactionInfo(tm, txAttr, joinpointIdentification);
 		if (txAttr != null) {
 			// We need a transaction for this method...
 			if (logger.isTraceEnabled()) {
@@ -503,6 +656,10 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 			}
 			// The transaction manager will flag an error if an incompatible tx already exists.
 			txInfo.newTransactionStatus(status);
+			TransactionTrace trace = getTransactionTrace(status);
+			if (trace != null) {
+				trace.setJoinpointIdentification(joinpointIdentification);
+			}
 		}
 		else {
 			// The TransactionInfo.hasTransaction() method will return false. We created it only
@@ -520,6 +677,52 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 		return txInfo;
 	}
 
+	/**
+	 * Return the timing breakdown of the given transaction scope, if traced.
+	 * @see org.springframework.transaction.support.AbstractPlatformTransactionManager#setTransactionTracer
+	 */
+	@Nullable
+	private static TransactionTrace getTransactionTrace(@Nullable TransactionStatus status) {
+		return (status instanceof DefaultTransactionStatus ?
+				((DefaultTransactionStatus) status).getTransactionTrace() : null);
+	}
+
+	/**
+	 * Take a TransactionInfo from the free list of the current thread if
+	 * recycling is active, otherwise create a new one.
+	 */
+	private TransactionInfo obtainTransactionInfo(@Nullable PlatformTransactionManager tm,
+			@Nullable TransactionAttribute txAttr, String joinpointIdentification) {
+
+		if (this.transactionInfoRecycling) {
+			TransactionInfoPool pool = transactionInfoPool.get();
+			if (pool != null) {
+				TransactionInfo txInfo = pool.poll();
+				if (txInfo != null) {
+					txInfo.reinitialize(tm, txAttr, joinpointIdentification);
+					return txInfo;
+				}
+			}
+		}
+		return new TransactionInfo(tm, txAttr, joinpointIdentification);
+	}
+
+	/**
+	 * Return the given TransactionInfo to the free list of the current thread
+	 * once its transaction has completed, if recycling is active.
+	 * @param txInfo information about the completed transaction (may be {@code null})
+	 */
+	private void releaseTransactionInfo(@Nullable TransactionInfo txInfo) {
+		if (this.transactionInfoRecycling && txInfo != null) {
+			TransactionInfoPool pool = transactionInfoPool.get();
+			if (pool == null) {
+				pool = new TransactionInfoPool();
+				transactionInfoPool.set(pool);
+			}
+			pool.offer(txInfo);
+		}
+	}
+
 	/**
 	 * Execute after successful completion of call, but not after an exception was handled.
 	 * Do nothing if we didn't create a transaction.
@@ -546,6 +749,10 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 				logger.trace("Completing transaction for [" + txInfo.getJoinpointIdentification() +
 						"] after exception: " + ex);
 			}
+			TransactionTrace trace = getTransactionTrace(txInfo.getTransactionStatus());
+			if (trace != null) {
+				trace.setException(ex);
+			}
 			if (txInfo.transactionAttribute != null && txInfo.transactionAttribute.rollbackOn(ex)) {
 				try {
 					txInfo.getTransactionManager().rollback(txInfo.getTransactionStatus());
@@ -595,15 +802,15 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 	 * Opaque object used to hold Transaction information. Subclasses
 	 * must pass it back to methods on this class, but not see its internals.
 	 */
-	protected final class TransactionInfo {
+	protected static final class TransactionInfo {
 
 		@Nullable
-		private final PlatformTransactionManager transactionManager;
+		private PlatformTransactionManager transactionManager;
 
 		@Nullable
-		private final TransactionAttribute transactionAttribute;
+		private TransactionAttribute transactionAttribute;
 
-		private final String joinpointIdentification;
+		private String joinpointIdentification;
 
 		@Nullable
 		private TransactionStatus transactionStatus;
@@ -611,6 +818,11 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 		@Nullable
 		private TransactionInfo oldTransactionInfo;
 
+		private boolean recycled;
+
+		@Nullable
+		private TransactionInfo nextRecycled;
+
 		public TransactionInfo(@Nullable PlatformTransactionManager transactionManager,
 				@Nullable TransactionAttribute transactionAttribute, String joinpointIdentification) {
 
@@ -620,12 +832,14 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 		}
 
 		public PlatformTransactionManager getTransactionManager() {
+			assertNotRecycled();
 			Assert.state(this.transactionManager != null, "No PlatformTransactionManager set");
 			return this.transactionManager;
 		}
 
 		@Nullable
 		public TransactionAttribute getTransactionAttribute() {
+			assertNotRecycled();
 			return this.transactionAttribute;
 		}
 
@@ -634,15 +848,18 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 		 * for use in logging.
 		 */
 		public String getJoinpointIdentification() {
+			assertNotRecycled();
 			return this.joinpointIdentification;
 		}
 
 		public void newTransactionStatus(@Nullable TransactionStatus status) {
+			assertNotRecycled();
 			this.transactionStatus = status;
 		}
 
 		@Nullable
 		public TransactionStatus getTransactionStatus() {
+			assertNotRecycled();
 			return this.transactionStatus;
 		}
 
@@ -667,6 +884,29 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 			transactionInfoHolder.set(this.oldTransactionInfo);
 		}
 
+		private void reinitialize(@Nullable PlatformTransactionManager transactionManager,
+				@Nullable TransactionAttribute transactionAttribute, String joinpointIdentification) {
+
+			this.transactionManager = transactionManager;
+			this.transactionAttribute = transactionAttribute;
+			this.joinpointIdentification = joinpointIdentification;
+			this.recycled = false;
+		}
+
+		private void recycle() {
+			// Drop all references, so that a pooled instance does not keep
+			// completed transactions or outer TransactionInfos reachable.
+			this.transactionManager = null;
+			this.transactionAttribute = null;
+			this.transactionStatus = null;
+			this.oldTransactionInfo = null;
+			this.recycled = true;
+		}
+
+		private void assertNotRecycled() {
+			Assert.state(!this.recycled, "TransactionInfo has been recycled after completion of its transaction");
+		}
+
 		@Override
 		public String toString() {
 			return (this.transactionAttribute != null ? this.transactionAttribute.toString() : "No transaction");
@@ -674,6 +914,98 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 	}
 
 
+	/**
+	 * Bounded per-thread free list of completed TransactionInfo objects,
+	 * linked through the instances themselves.
+	 */
+	private static final class TransactionInfoPool {
+
+		private static final int MAX_SIZE = 8;
+
+		@Nullable
+		private TransactionInfo head;
+
+		private int size;
+
+		@Nullable
+		TransactionInfo poll() {
+			TransactionInfo txInfo = this.head;
+			if (txInfo != null) {
+				this.head = txInfo.nextRecycled;
+				txInfo.nextRecycled = null;
+				this.size--;
+			}
+			return txInfo;
+		}
+
+		void offer(TransactionInfo txInfo) {
+			if (txInfo.recycled) {
+				return;
+			}
+			txInfo.recycle();
+			if (this.size < MAX_SIZE) {
+				txInfo.nextRecycled = this.head;
+				this.head = txInfo;
+				this.size++;
+			}
+		}
+	}
+
+
+	/**
+	 * Immutable per-method invocation plan: the resolved transaction attribute,
+	 * the transaction manager to use and the joinpoint identification,
+	 * computed once on first invocation of a method on a target class.
+	 */
+	private static final class InvocationPlan {
+
+		@Nullable
+		final Class<?> targetClass;
+
+		@Nullable
+		final TransactionAttribute transactionAttribute;
+
+		/**
+		 * The transaction attribute exposing the joinpoint identification as
+		 * transaction name if none specified, created once instead of per call.
+		 */
+		@Nullable
+		final TransactionAttribute namedTransactionAttribute;
+
+		@Nullable
+		final PlatformTransactionManager transactionManager;
+
+		final String joinpointIdentification;
+
+		InvocationPlan(@Nullable Class<?> targetClass, @Nullable TransactionAttribute transactionAttribute,
+				@Nullable PlatformTransactionManager transactionManager, String joinpointIdentification) {
+
+			this.targetClass = targetClass;
+			this.transactionAttribute = transactionAttribute;
+			this.namedTransactionAttribute = (transactionAttribute != null && transactionAttribute.getName() == null ?
+					namedTransactionAttribute(transactionAttribute, joinpointIdentification) : transactionAttribute);
+			this.transactionManager = transactionManager;
+			this.joinpointIdentification = joinpointIdentification;
+		}
+
+		/**
+		 * Created in a static context, so that the attribute does not hold on
+		 * to the plan and remains serializable along with its target attribute.
+		 */
+		@SuppressWarnings("serial")
+		private static TransactionAttribute namedTransactionAttribute(
+				TransactionAttribute transactionAttribute, String joinpointIdentification) {
+
+			return new DelegatingTransactionAttribute(transactionAttribute) {
+				@Override
+				public String getName() {
+					return joinpointIdentification;
+				}
+			};
+		}
+	}
+
+
 	/**
 	 * Simple callback interface for proceeding with the target invocation.
 	 * Concrete interceptors/aspects adapt this to their invocation mechanism.
@@ -682,6 +1014,16 @@ public abstract class TransactionAspectSupport implements BeanFactoryAware, Init
 	protected interface InvocationCallback {
 
 		Object proceedWithInvocation() throws Throwable;
+
+		/**
+		 * Return a callback that proceeds with the target invocation anew on
+		 * each call, for retrying the invocation. The default implementation
+		 * returns this callback, assuming that it may proceed repeatedly.
+		 * @since 5.2
+		 */
+		default InvocationCallback repeatable() {
+			return this;
+		}
 	}
 
 
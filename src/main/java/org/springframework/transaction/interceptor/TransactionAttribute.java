@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2017 the original author or authors.
+ * Copyright 2002-2019 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,6 +18,7 @@ package org.springframework.transaction.interceptor;
 
 import org.springframework.lang.Nullable;
 import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionRetryPolicy;
 
 /**
  * This interface adds a {@code rollbackOn} specification to {@link TransactionDefinition}.
@@ -47,4 +48,15 @@ public interface TransactionAttribute extends TransactionDefinition {
 	 */
 	boolean rollbackOn(Throwable ex);
 
+	/**
+	 * Return the policy for retrying the transaction after a transient failure.
+	 * <p>The default implementation returns {@code null}: no retries.
+	 * @since 5.2
+	 * @see TransactionRetryPolicy#appliesTo
+	 */
+	@Nullable
+	default TransactionRetryPolicy getRetryPolicy() {
+		return null;
+	}
+
 }
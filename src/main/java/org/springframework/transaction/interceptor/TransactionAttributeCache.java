@@ -0,0 +1,81 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.interceptor;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Strategy for caching the transaction attributes resolved by an
+ * {@link AbstractFallbackTransactionAttributeSource}, including the marker
+ * for methods found to be non-transactional.
+ *
+ * <p>Each entry is associated with a scope class: the target class of the
+ * lookup, or the declaring class of the method if there is no target class.
+ * Implementations may use it to tie entries to the lifecycle of that class.
+ * Implementations need to be thread-safe.
+ *
+ * @since 5.2
+ * @see AbstractFallbackTransactionAttributeSource#setAttributeCache
+ * @see BoundedTransactionAttributeCache
+ */
+public interface TransactionAttributeCache {
+
+	/**
+	 * Return the cached attribute for the given key, if any.
+	 *
+	 * @param scope the class that the key refers to
+	 * @param key the cache key, as determined by the attribute source
+	 * @return the cached attribute, or {@code null} on a cache miss
+	 */
+	@Nullable
+	TransactionAttribute get(Class<?> scope, Object key);
+
+	/**
+	 * Cache the given attribute for the given key.
+	 *
+	 * @param scope the class that the key refers to
+	 * @param key the cache key, as determined by the attribute source
+	 * @param attribute the attribute to cache (never {@code null})
+	 */
+	void put(Class<?> scope, Object key, TransactionAttribute attribute);
+
+	/**
+	 * Remove all entries from this cache.
+	 */
+	void clear();
+
+	/**
+	 * Return the (possibly approximate) number of entries in this cache.
+	 */
+	int size();
+
+	/**
+	 * Return the number of lookups that found a cached attribute.
+	 */
+	long getHitCount();
+
+	/**
+	 * Return the number of lookups that did not find a cached attribute.
+	 */
+	long getMissCount();
+
+	/**
+	 * Return the number of entries removed to keep this cache within its bounds.
+	 */
+	long getEvictionCount();
+
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.interceptor;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Precomputed transaction attributes for all methods of a set of target
+ * classes, resolved ahead of time (e.g. at application context startup)
+ * so that the first invocations do not need to introspect annotations.
+ *
+ * <p>Built through {@link #build}, resolving the attributes of the given
+ * classes in parallel, and to be registered with an attribute source via
+ * {@link AbstractFallbackTransactionAttributeSource#setAttributeIndex}, which
+ * consults the index before its cache. Covers the methods of each target class
+ * and its interfaces, i.e. the methods that proxy creation and method
+ * invocations ask for; methods outside of the index get resolved as usual.
+ *
+ * <p>The index reflects the attribute source at build time and is immutable.
+ * Attributes get resolved without populating the cache of an
+ * {@link AbstractFallbackTransactionAttributeSource}. They are held by their
+ * target classes through a {@link ClassValue}, so that the index does not
+ * keep classes and their class loaders (e.g. after a hot redeployment) reachable.
+ *
+ * @since 5.2
+ * @see AbstractFallbackTransactionAttributeSource#setAttributeIndex
+ */
+public final class TransactionAttributeIndex {
+
+	/**
+	 * Marker for methods found to be non-transactional.
+	 */
+	@SuppressWarnings("serial")
+	static final TransactionAttribute NOT_TRANSACTIONAL = new DefaultTransactionAttribute() {
+		@Override
+		public String toString() {
+			return "null";
+		}
+	};
+
+	private static final Log logger = LogFactory.getLog(TransactionAttributeIndex.class);
+
+
+	private final IndexedAttributes entries;
+
+	private final List<WeakReference<Class<?>>> targetClasses;
+
+
+	private TransactionAttributeIndex(Map<Class<?>, Map<Method, TransactionAttribute>> resolved) {
+		this.entries = new IndexedAttributes(resolved);
+		this.targetClasses = new ArrayList<>(resolved.size());
+		for (Class<?> targetClass : resolved.keySet()) {
+			// Hand the attributes over to the class itself
+			this.entries.get(targetClass);
+			this.targetClasses.add(new WeakReference<>(targetClass));
+		}
+		this.entries.staged = null;
+	}
+
+
+	/**
+	 * Return whether the index contains the given method on the given target class.
+	 */
+	public boolean contains(Method method, Class<?> targetClass) {
+		return (lookup(method, targetClass) != null);
+	}
+
+	/**
+	 * Return the precomputed attribute for the given method on the given target class.
+	 *
+	 * @return the attribute, or {@code null} if the method is not transactional
+	 * or not contained in the index
+	 * @see #contains
+	 */
+	@Nullable
+	public TransactionAttribute getTransactionAttribute(Method method, Class<?> targetClass) {
+		TransactionAttribute attribute = lookup(method, targetClass);
+		return (attribute != NOT_TRANSACTIONAL ? attribute : null);
+	}
+
+	/**
+	 * Return the target classes contained in this index, as far as not collected yet.
+	 */
+	public Set<Class<?>> getTargetClasses() {
+		Set<Class<?>> classes = new LinkedHashSet<>(this.targetClasses.size());
+		for (WeakReference<Class<?>> ref : this.targetClasses) {
+			Class<?> targetClass = ref.get();
+			if (targetClass != null) {
+				classes.add(targetClass);
+			}
+		}
+		return Collections.unmodifiableSet(classes);
+	}
+
+	/**
+	 * Look up the given method on the given target class.
+	 *
+	 * @return the attribute, {@link #NOT_TRANSACTIONAL} for a non-transactional method,
+	 * or {@code null} if the method is not contained in the index
+	 */
+	@Nullable
+	TransactionAttribute lookup(Method method, Class<?> targetClass) {
+		return this.entries.get(targetClass).get(method);
+	}
+
+	@Override
+	public String toString() {
+		return "TransactionAttributeIndex for " + this.targetClasses.size() + " classes";
+	}
+
+
+	/**
+	 * Build an index for the given target classes, resolving their attributes
+	 * in parallel on the {@link ForkJoinPool#commonPool() common pool}.
+	 *
+	 * @param attributeSource the source to resolve attributes with
+	 * @param targetClasses the target classes to index
+	 * @return the index
+	 */
+	public static TransactionAttributeIndex build(
+			TransactionAttributeSource attributeSource, Collection<Class<?>> targetClasses) {
+
+		return build(attributeSource, targetClasses, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Build an index for the given target classes, resolving their attributes
+	 * on the given executor. Classes that fail to be introspected are left
+	 * out, getting resolved on demand instead.
+	 *
+	 * @param attributeSource the source to resolve attributes with (needs to
+	 * be thread-safe when resolving in parallel); an
+	 * {@link AbstractFallbackTransactionAttributeSource} resolves them
+	 * without caching them
+	 * @param targetClasses the target classes to index
+	 * @param executor the executor to resolve the classes on, one task per class,
+	 * or {@code null} to resolve them in the calling thread
+	 * @return the index
+	 */
+	public static TransactionAttributeIndex build(TransactionAttributeSource attributeSource,
+			Collection<Class<?>> targetClasses, @Nullable ExecutorService executor) {
+
+		Assert.notNull(attributeSource, "TransactionAttributeSource must not be null");
+		Assert.notNull(targetClasses, "Target classes must not be null");
+		Map<Class<?>, Map<Method, TransactionAttribute>> entries = new ConcurrentHashMap<>(targetClasses.size());
+		List<Callable<Object>> tasks = new ArrayList<>(targetClasses.size());
+		for (Class<?> targetClass : new LinkedHashSet<>(targetClasses)) {
+			tasks.add(() -> {
+				try {
+					entries.put(targetClass, resolveAttributes(attributeSource, targetClass));
+				}
+				catch (Throwable ex) {
+					if (logger.isDebugEnabled()) {
+						logger.debug("Failed to index transaction attributes for " + targetClass, ex);
+					}
+				}
+				return null;
+			});
+		}
+		if (executor != null) {
+			try {
+				for (Future<Object> future : executor.invokeAll(tasks)) {
+					future.get();
+				}
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while building transaction attribute index", ex);
+			}
+			catch (ExecutionException ex) {
+				throw new IllegalStateException("Failed to build transaction attribute index", ex.getCause());
+			}
+		}
+		else {
+			for (Callable<Object> task : tasks) {
+				try {
+					task.call();
+				}
+				catch (Exception ex) {
+					throw new IllegalStateException("Failed to build transaction attribute index", ex);
+				}
+			}
+		}
+		return new TransactionAttributeIndex(entries);
+	}
+
+	/**
+	 * Resolve the attributes for all methods of the given target class and its
+	 * interfaces, as considered by {@link org.springframework.aop.support.AopUtils#canApply}.
+	 */
+	private static Map<Method, TransactionAttribute> resolveAttributes(
+			TransactionAttributeSource attributeSource, Class<?> targetClass) {
+
+		Set<Class<?>> classes = new LinkedHashSet<>();
+		if (!Proxy.isProxyClass(targetClass)) {
+			classes.add(ClassUtils.getUserClass(targetClass));
+		}
+		classes.addAll(ClassUtils.getAllInterfacesForClassAsSet(targetClass));
+		AbstractFallbackTransactionAttributeSource fallbackSource =
+				(attributeSource instanceof AbstractFallbackTransactionAttributeSource ?
+						(AbstractFallbackTransactionAttributeSource) attributeSource : null);
+		Map<Method, TransactionAttribute> attributes = new HashMap<>();
+		for (Class<?> clazz : classes) {
+			for (Method method : ReflectionUtils.getAllDeclaredMethods(clazz)) {
+				if (method.getDeclaringClass() != Object.class && !attributes.containsKey(method)) {
+					TransactionAttribute attribute = (fallbackSource != null ?
+							fallbackSource.resolveTransactionAttribute(method, targetClass) :
+							attributeSource.getTransactionAttribute(method, targetClass));
+					attributes.put(method, (attribute != null ? attribute : NOT_TRANSACTIONAL));
+				}
+			}
+		}
+		return attributes;
+	}
+
+
+	/**
+	 * Indexed attributes per target class, held by the classes themselves.
+	 * Initially computed from the staged attributes resolved at build time,
+	 * empty for any other class.
+	 */
+	private static final class IndexedAttributes extends ClassValue<Map<Method, TransactionAttribute>> {
+
+		@Nullable
+		private Map<Class<?>, Map<Method, TransactionAttribute>> staged;
+
+		IndexedAttributes(Map<Class<?>, Map<Method, TransactionAttribute>> staged) {
+			this.staged = staged;
+		}
+
+		@Override
+		protected Map<Method, TransactionAttribute> computeValue(Class<?> type) {
+			Map<Class<?>, Map<Method, TransactionAttribute>> staged = this.staged;
+			Map<Method, TransactionAttribute> attributes = (staged != null ? staged.get(type) : null);
+			return (attributes != null ? attributes : Collections.emptyMap());
+		}
+	}
+
+}
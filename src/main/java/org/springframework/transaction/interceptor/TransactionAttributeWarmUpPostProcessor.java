@@ -0,0 +1,206 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.interceptor;
+
+import java.lang.reflect.Modifier;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.core.PriorityOrdered;
+import org.springframework.core.type.MethodMetadata;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Opt-in {@link BeanPostProcessor} that resolves the transaction attributes
+ * of all candidate bean classes in one parallel pass as soon as a transaction
+ * attribute source has been initialized, i.e. before the auto-proxy creator
+ * evaluates the transaction pointcut for every method of every bean.
+ *
+ * <p>The result is registered as a {@link TransactionAttributeIndex} with each
+ * {@link AbstractFallbackTransactionAttributeSource} bean, so that pointcut
+ * matching during proxy creation and the first invocations do not resolve
+ * attributes one method at a time. The time taken is logged at info level.
+ *
+ * <p>Candidate classes are derived from the bean definitions without creating
+ * any beans: bean classes and the declared return types of factory methods,
+ * excluding infrastructure beans, interfaces and factory beans.
+ *
+ * <p>To be registered as a static bean, e.g. through a {@code static @Bean} method
+ * alongside {@code @EnableTransactionManagement}.
+ *
+ * @since 5.2
+ * @see TransactionAttributeIndex
+ * @see AbstractFallbackTransactionAttributeSource#setAttributeIndex
+ */
+public class TransactionAttributeWarmUpPostProcessor implements BeanPostProcessor, BeanFactoryAware, PriorityOrdered {
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	@Nullable
+	private ConfigurableListableBeanFactory beanFactory;
+
+	private volatile long lastWarmUpMillis = -1;
+
+
+	/**
+	 * Set the number of threads to resolve attributes with.
+	 * <p>Default is the number of available processors. A value of 1
+	 * resolves all attributes in the thread creating the attribute source.
+	 */
+	public void setParallelism(int parallelism) {
+		Assert.isTrue(parallelism > 0, "Parallelism must be greater than 0");
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Return the number of threads to resolve attributes with.
+	 */
+	public int getParallelism() {
+		return this.parallelism;
+	}
+
+	/**
+	 * Return the time in milliseconds taken by the latest warm-up pass,
+	 * or -1 if none has happened yet.
+	 */
+	public long getLastWarmUpMillis() {
+		return this.lastWarmUpMillis;
+	}
+
+	@Override
+	public void setBeanFactory(BeanFactory beanFactory) {
+		if (!(beanFactory instanceof ConfigurableListableBeanFactory)) {
+			throw new IllegalArgumentException(
+					"TransactionAttributeWarmUpPostProcessor requires a ConfigurableListableBeanFactory: " + beanFactory);
+		}
+		this.beanFactory = (ConfigurableListableBeanFactory) beanFactory;
+	}
+
+	@Override
+	public int getOrder() {
+		return HIGHEST_PRECEDENCE;
+	}
+
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+		if (bean instanceof AbstractFallbackTransactionAttributeSource) {
+			AbstractFallbackTransactionAttributeSource tas = (AbstractFallbackTransactionAttributeSource) bean;
+			if (tas.getAttributeIndex() == null) {
+				warmUp(tas, beanName);
+			}
+		}
+		return bean;
+	}
+
+	private void warmUp(AbstractFallbackTransactionAttributeSource tas, String beanName) {
+		long start = System.nanoTime();
+		Set<Class<?>> candidateClasses = determineCandidateClasses();
+		long resolved = System.nanoTime();
+		TransactionAttributeIndex index;
+		if (this.parallelism > 1) {
+			ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+			try {
+				index = TransactionAttributeIndex.build(tas, candidateClasses, pool);
+			}
+			finally {
+				pool.shutdown();
+			}
+		}
+		else {
+			index = TransactionAttributeIndex.build(tas, candidateClasses, null);
+		}
+		tas.setAttributeIndex(index);
+		long end = System.nanoTime();
+		this.lastWarmUpMillis = (end - start) / 1_000_000;
+		if (logger.isInfoEnabled()) {
+			logger.info("Resolved transaction attributes for " + index.getTargetClasses().size() + " of " +
+					candidateClasses.size() + " candidate classes for '" + beanName + "' in " +
+					this.lastWarmUpMillis + " ms (" + (resolved - start) / 1_000_000 + " ms candidate detection, " +
+					(end - resolved) / 1_000_000 + " ms resolution with parallelism " + this.parallelism + ")");
+		}
+	}
+
+	/**
+	 * Determine the classes of all candidate beans, based on their bean definitions.
+	 */
+	protected Set<Class<?>> determineCandidateClasses() {
+		ConfigurableListableBeanFactory beanFactory = this.beanFactory;
+		Assert.state(beanFactory != null, "No BeanFactory set");
+		ClassLoader classLoader = beanFactory.getBeanClassLoader();
+		Set<Class<?>> candidateClasses = new LinkedHashSet<>();
+		for (String beanName : beanFactory.getBeanDefinitionNames()) {
+			BeanDefinition bd = beanFactory.getMergedBeanDefinition(beanName);
+			if (bd.isAbstract() || bd.getRole() == BeanDefinition.ROLE_INFRASTRUCTURE) {
+				continue;
+			}
+			String className = null;
+			if (bd.getFactoryMethodName() == null) {
+				className = bd.getBeanClassName();
+			}
+			else if (bd instanceof AnnotatedBeanDefinition) {
+				MethodMetadata factoryMethod = ((AnnotatedBeanDefinition) bd).getFactoryMethodMetadata();
+				if (factoryMethod != null) {
+					className = factoryMethod.getReturnTypeName();
+				}
+			}
+			Class<?> candidateClass = resolveCandidateClass(className, classLoader);
+			if (candidateClass != null) {
+				candidateClasses.add(candidateClass);
+			}
+		}
+		return candidateClasses;
+	}
+
+	@Nullable
+	private Class<?> resolveCandidateClass(@Nullable String className, @Nullable ClassLoader classLoader) {
+		if (className == null) {
+			return null;
+		}
+		try {
+			Class<?> clazz = ClassUtils.forName(className, classLoader);
+			if (clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers()) ||
+					FactoryBean.class.isAssignableFrom(clazz)) {
+				return null;
+			}
+			return clazz;
+		}
+		catch (ClassNotFoundException | LinkageError ex) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Skipping transaction attribute warm-up for bean class [" + className + "]", ex);
+			}
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,644 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.UnexpectedRollbackException;
+import org.springframework.util.Assert;
+import org.springframework.util.PatternMatchUtils;
+
+/**
+ * Base class for transaction managers that coalesce the commits of many small,
+ * concurrent transactions into one physical commit on a shared resource.
+ *
+ * <p>Transactions that are {@link #isGroupCommitEligible eligible}, by default
+ * through their {@link #setGroupCommitNames name}, join the currently open
+ * <i>commit group</i>: a physical transaction started through {@link #doBeginGroup}.
+ * A group accepts further members for at most the {@link #setMaxGroupLatency
+ * maximum group latency} and up to the {@link #setMaxGroupSize maximum group size}.
+ * Each member's commit blocks until all members of its group have completed
+ * their work and the group has closed, after which one of them commits the
+ * group through {@link #doCommitGroup} on behalf of all. Other transactions form
+ * a group of their own, committed right away. A transaction only joins a group
+ * begun with a {@link #isGroupCompatible compatible} definition, i.e. the same
+ * isolation level, read-only flag and timeout by default, since the group's
+ * physical transaction has been begun with the definition of its first member.
+ *
+ * <p>Each caller sees the normal commit and rollback contract, including its
+ * synchronization callbacks, reflecting the outcome of its group. Since the
+ * members of a group share one physical transaction, a member that rolls back
+ * rolls back its whole group: the commits of the other members fail with an
+ * {@link UnexpectedRollbackException}. Group commit therefore suits transactions
+ * that rarely roll back and whose work may be redone, e.g. ingestion of single rows.
+ *
+ * <p>A member that does not complete within the {@link #setMaxGroupWait maximum
+ * group wait}, counted from the first member waiting for it, rolls back its group:
+ * the commits of the waiting members fail right away, while the physical rollback
+ * is deferred until the last straggler has completed, as stragglers may still be
+ * using the shared resource.
+ * Suspending a member, e.g. for a {@code PROPAGATION_REQUIRES_NEW} scope,
+ * closes its group, so that the inner transaction starts a group of its own.
+ *
+ * <p>Within a member transaction, inner transaction scopes participate as usual.
+ * Subclasses expose the shared resource to the threads of the members, e.g.
+ * by binding it in {@link #doJoinGroup}, and need to cope with concurrent use
+ * of it. Nested transactions are not supported.
+ *
+ * @since 5.2
+ * @see #doBeginGroup
+ * @see #doCommitGroup
+ * @see #doRollbackGroup
+ */
+@SuppressWarnings("serial")
+public abstract class AbstractGroupCommitTransactionManager extends AbstractPlatformTransactionManager {
+
+	/** Default maximum time a commit group accepts members: 2 milliseconds. */
+	public static final Duration DEFAULT_MAX_GROUP_LATENCY = Duration.ofMillis(2);
+
+	/** Default maximum number of members of a commit group: 64. */
+	public static final int DEFAULT_MAX_GROUP_SIZE = 64;
+
+	/** Default maximum time a finished member waits for the other members of its group: 30 seconds. */
+	public static final Duration DEFAULT_MAX_GROUP_WAIT = Duration.ofSeconds(30);
+
+
+	private String[] groupCommitNames = new String[0];
+
+	private long maxGroupLatencyNanos = DEFAULT_MAX_GROUP_LATENCY.toNanos();
+
+	private int maxGroupSize = DEFAULT_MAX_GROUP_SIZE;
+
+	private long maxGroupWaitNanos = DEFAULT_MAX_GROUP_WAIT.toNanos();
+
+	private transient Object groupMonitor = new Object();
+
+	@Nullable
+	private transient CommitGroup openGroup;
+
+
+	/**
+	 * Set the names of the transactions eligible for group commit, as
+	 * simple patterns ("xxx*", "*xxx", "*xxx*" or "xxx*yyy").
+	 *
+	 * @see TransactionDefinition#getName()
+	 * @see PatternMatchUtils#simpleMatch(String, String)
+	 */
+	public void setGroupCommitNames(String... groupCommitNames) {
+		this.groupCommitNames = groupCommitNames;
+	}
+
+	/**
+	 * Set the maximum time a commit group accepts new members once started,
+	 * bounding the delay a commit incurs for waiting on further members.
+	 * Default is {@link #DEFAULT_MAX_GROUP_LATENCY}.
+	 */
+	public void setMaxGroupLatency(Duration maxGroupLatency) {
+		Assert.isTrue(!maxGroupLatency.isNegative(), "Max group latency must not be negative");
+		this.maxGroupLatencyNanos = maxGroupLatency.toNanos();
+	}
+
+	/**
+	 * Return the maximum time a commit group accepts new members.
+	 */
+	public Duration getMaxGroupLatency() {
+		return Duration.ofNanos(this.maxGroupLatencyNanos);
+	}
+
+	/**
+	 * Set the maximum number of members of a commit group, closing the group
+	 * right away once reached. Default is {@link #DEFAULT_MAX_GROUP_SIZE}.
+	 */
+	public void setMaxGroupSize(int maxGroupSize) {
+		Assert.isTrue(maxGroupSize > 0, "Max group size must be positive");
+		this.maxGroupSize = maxGroupSize;
+	}
+
+	/**
+	 * Return the maximum number of members of a commit group.
+	 */
+	public int getMaxGroupSize() {
+		return this.maxGroupSize;
+	}
+
+	/**
+	 * Set the maximum time a finished member waits for the other members of its
+	 * group to finish. Once exceeded, the group is rolled back: the commits of
+	 * all its members fail with an {@link UnexpectedRollbackException}.
+	 * Default is {@link #DEFAULT_MAX_GROUP_WAIT}.
+	 */
+	public void setMaxGroupWait(Duration maxGroupWait) {
+		Assert.isTrue(!maxGroupWait.isNegative() && !maxGroupWait.isZero(), "Max group wait must be positive");
+		this.maxGroupWaitNanos = maxGroupWait.toNanos();
+	}
+
+	/**
+	 * Return the maximum time a finished member waits for the other members of its group.
+	 */
+	public Duration getMaxGroupWait() {
+		return Duration.ofNanos(this.maxGroupWaitNanos);
+	}
+
+	/**
+	 * Determine whether a transaction with the given definition may join
+	 * a commit group. The default implementation matches the transaction
+	 * name against the {@link #setGroupCommitNames group commit names}.
+	 * <p>An eligible transaction only joins the open group if its definition is
+	 * {@link #isGroupCompatible compatible} with the one the group was begun with.
+	 *
+	 * @param definition the definition of the new transaction
+	 */
+	protected boolean isGroupCommitEligible(TransactionDefinition definition) {
+		String name = definition.getName();
+		return (name != null && PatternMatchUtils.simpleMatch(this.groupCommitNames, name));
+	}
+
+	/**
+	 * Determine whether a transaction with the given definition may join a group
+	 * whose physical transaction has been begun with the given group definition.
+	 * Otherwise, the transaction begins a new group. The default implementation
+	 * requires the same isolation level, read-only flag and timeout.
+	 *
+	 * @param groupDefinition the definition of the group's first transaction,
+	 *                        as passed to {@link #doBeginGroup}
+	 * @param definition      the definition of the joining transaction
+	 */
+	protected boolean isGroupCompatible(TransactionDefinition groupDefinition, TransactionDefinition definition) {
+		return (groupDefinition.getIsolationLevel() == definition.getIsolationLevel() &&
+				groupDefinition.isReadOnly() == definition.isReadOnly() &&
+				groupDefinition.getTimeout() == definition.getTimeout());
+	}
+
+
+	//---------------------------------------------------------------------
+	// Implementation of AbstractPlatformTransactionManager template methods
+	//---------------------------------------------------------------------
+
+	@Override
+	protected final Object doGetTransaction() {
+		return new GroupCommitTransactionObject((CommitGroup) TransactionSynchronizationManager.getResource(this));
+	}
+
+	@Override
+	protected final boolean isExistingTransaction(Object transaction) {
+		return (((GroupCommitTransactionObject) transaction).group != null);
+	}
+
+	@Override
+	protected final void doBegin(Object transaction, TransactionDefinition definition) {
+		GroupCommitTransactionObject txObject = (GroupCommitTransactionObject) transaction;
+		CommitGroup group;
+		if (isGroupCommitEligible(definition)) {
+			synchronized (this.groupMonitor) {
+				group = this.openGroup;
+				if (group == null || !isGroupCompatible(group.definition, definition) || !group.tryJoin()) {
+					if (group != null) {
+						group.closeForNewGroup();
+					}
+					group = new CommitGroup(definition, doBeginGroup(definition),
+							System.nanoTime() + this.maxGroupLatencyNanos, this.maxGroupSize, this.maxGroupWaitNanos);
+					this.openGroup = group;
+				}
+			}
+		} else {
+			group = new CommitGroup(definition, doBeginGroup(definition), System.nanoTime(), 1, this.maxGroupWaitNanos);
+		}
+		try {
+			doJoinGroup(group.resource, definition);
+		} catch (RuntimeException | Error ex) {
+			leaveGroup(group, ex);
+			throw ex;
+		}
+		txObject.group = group;
+		TransactionSynchronizationManager.bindResource(this, group);
+	}
+
+	@Override
+	protected final Object doSuspend(Object transaction) {
+		GroupCommitTransactionObject txObject = (GroupCommitTransactionObject) transaction;
+		if (txObject.group != null) {
+			// The suspended member cannot finish before the inner transaction: an inner
+			// transaction joining the same group would wait for its own outer member
+			txObject.group.closeForSuspension();
+		}
+		txObject.group = null;
+		return TransactionSynchronizationManager.unbindResource(this);
+	}
+
+	@Override
+	protected final void doResume(@Nullable Object transaction, Object suspendedResources) {
+		TransactionSynchronizationManager.bindResource(this, suspendedResources);
+	}
+
+	@Override
+	protected final void doCommit(DefaultTransactionStatus status) {
+		completeMember((GroupCommitTransactionObject) status.getTransaction(), false);
+	}
+
+	@Override
+	protected final void doRollback(DefaultTransactionStatus status) {
+		completeMember((GroupCommitTransactionObject) status.getTransaction(), true);
+	}
+
+	@Override
+	protected final void doSetRollbackOnly(DefaultTransactionStatus status) {
+		((GroupCommitTransactionObject) status.getTransaction()).rollbackOnly = true;
+	}
+
+	@Override
+	protected final void doCleanupAfterCompletion(Object transaction) {
+		GroupCommitTransactionObject txObject = (GroupCommitTransactionObject) transaction;
+		TransactionSynchronizationManager.unbindResourceIfPossible(this);
+		if (txObject.group != null) {
+			doLeaveGroup(txObject.group.resource);
+		}
+	}
+
+	/**
+	 * Withdraw a member that failed to join its group, rolling back the group's
+	 * physical transaction if no other member remains, or if it had timed out
+	 * and all remaining members have finished.
+	 */
+	private void leaveGroup(CommitGroup group, Throwable joinEx) {
+		boolean abandoned;
+		synchronized (this.groupMonitor) {
+			abandoned = group.leave();
+			if (abandoned && this.openGroup == group) {
+				this.openGroup = null;
+			}
+		}
+		if (abandoned) {
+			try {
+				doRollbackGroup(group.resource);
+			} catch (RuntimeException | Error rbex) {
+				logger.error("Join exception overridden by group rollback exception", joinEx);
+				throw rbex;
+			}
+		}
+	}
+
+	/**
+	 * 成员事务完成：等待同组全部成员完成后，由最后确定的组长代表全组提交或回滚，
+	 * 其余成员等待结果并据此报告各自的结果。
+	 */
+	private void completeMember(GroupCommitTransactionObject txObject, boolean rollback) {
+		CommitGroup group = txObject.group;
+		Assert.state(group != null, "No commit group");
+		if (txObject.completed) {
+			// E.g. rollback after a failed group commit: already completed along with the group
+			return;
+		}
+		txObject.completed = true;
+		Arrival arrival = group.arrive(rollback);
+		if (arrival == Arrival.LEADER) {
+			Throwable failure = null;
+			try {
+				if (group.isRollbackOnly()) {
+					doRollbackGroup(group.resource);
+				} else {
+					doCommitGroup(group.resource);
+				}
+			} catch (RuntimeException | Error ex) {
+				failure = ex;
+				throw ex;
+			} finally {
+				group.complete(failure);
+			}
+		} else if (arrival == Arrival.FOLLOWER) {
+			Throwable failure = group.awaitCompletion();
+			if (failure != null) {
+				throw new TransactionSystemException("Physical completion of commit group failed", failure);
+			}
+		}
+		// Otherwise abandoned: the timed out group gets rolled back by its last straggler
+		if (!rollback && group.isTimedOut()) {
+			throw new UnexpectedRollbackException(
+					"Transaction rolled back because its commit group exceeded the maximum group wait");
+		}
+		if (!rollback && group.isRollbackOnly()) {
+			throw new UnexpectedRollbackException(
+					"Transaction rolled back because another transaction of its commit group rolled back");
+		}
+	}
+
+
+	//---------------------------------------------------------------------
+	// Template methods to be implemented in subclasses
+	//---------------------------------------------------------------------
+
+	/**
+	 * Begin a physical transaction on the shared resource, for a new commit group.
+	 * <p>Called while holding the lock for opening groups.
+	 *
+	 * @param definition the definition of the group's first transaction
+	 * @return the shared resource, to be passed to the other template methods
+	 * @throws TransactionException in case of creation or system errors
+	 */
+	protected abstract Object doBeginGroup(TransactionDefinition definition) throws TransactionException;
+
+	/**
+	 * Commit the physical transaction of a commit group, on behalf of all its members.
+	 *
+	 * @param groupResource the shared resource as returned by {@link #doBeginGroup}
+	 * @throws TransactionException in case of commit or system errors
+	 */
+	protected abstract void doCommitGroup(Object groupResource) throws TransactionException;
+
+	/**
+	 * Roll back the physical transaction of a commit group, on behalf of all its members.
+	 *
+	 * @param groupResource the shared resource as returned by {@link #doBeginGroup}
+	 * @throws TransactionException in case of system errors
+	 */
+	protected abstract void doRollbackGroup(Object groupResource) throws TransactionException;
+
+	/**
+	 * Prepare the current thread for working within the given commit group,
+	 * e.g. binding the shared resource. The default implementation is empty.
+	 *
+	 * @param groupResource the shared resource as returned by {@link #doBeginGroup}
+	 * @param definition    the definition of the joining transaction
+	 */
+	protected void doJoinGroup(Object groupResource, TransactionDefinition definition) {
+	}
+
+	/**
+	 * Clean up the current thread after completion of a member transaction,
+	 * e.g. unbinding the shared resource. The default implementation is empty.
+	 *
+	 * @param groupResource the shared resource as returned by {@link #doBeginGroup}
+	 */
+	protected void doLeaveGroup(Object groupResource) {
+	}
+
+
+	//---------------------------------------------------------------------
+	// Serialization support
+	//---------------------------------------------------------------------
+
+	private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+		ois.defaultReadObject();
+		this.groupMonitor = new Object();
+	}
+
+
+	/**
+	 * Transaction object of a member transaction.
+	 */
+	private static class GroupCommitTransactionObject implements SmartTransactionObject {
+
+		@Nullable
+		CommitGroup group;
+
+		boolean rollbackOnly;
+
+		boolean completed;
+
+		GroupCommitTransactionObject(@Nullable CommitGroup group) {
+			this.group = group;
+		}
+
+		@Override
+		public boolean isRollbackOnly() {
+			return this.rollbackOnly;
+		}
+
+		@Override
+		public void flush() {
+			if (TransactionSynchronizationManager.isSynchronizationActive()) {
+				TransactionSynchronizationUtils.triggerFlush();
+			}
+		}
+	}
+
+
+	/**
+	 * Role of a finished member in the completion of its group.
+	 */
+	private enum Arrival {
+
+		/** Completes the group physically on behalf of all members. */
+		LEADER,
+
+		/** Waits for the leader to complete the group. */
+		FOLLOWER,
+
+		/** Member of a timed out group, not waiting for its completion. */
+		ABANDONED
+	}
+
+
+	/**
+	 * A physical transaction shared by its members, guarded by its own monitor.
+	 */
+	private static final class CommitGroup {
+
+		final TransactionDefinition definition;
+
+		final Object resource;
+
+		/** Point in time, as of {@link System#nanoTime()}, until which new members are accepted. */
+		private final long deadline;
+
+		private final int maxSize;
+
+		private final long maxWaitNanos;
+
+		private int members = 1;
+
+		private int finished;
+
+		private boolean closed;
+
+		private boolean rollbackOnly;
+
+		private boolean leaderElected;
+
+		private boolean timedOut;
+
+		private boolean completed;
+
+		@Nullable
+		private Throwable failure;
+
+		CommitGroup(TransactionDefinition definition, Object resource, long deadline, int maxSize, long maxWaitNanos) {
+			this.definition = definition;
+			this.resource = resource;
+			this.deadline = deadline;
+			this.maxSize = maxSize;
+			this.maxWaitNanos = maxWaitNanos;
+			this.closed = (maxSize <= 1);
+		}
+
+		synchronized boolean tryJoin() {
+			if (this.closed || this.members >= this.maxSize || System.nanoTime() - this.deadline >= 0) {
+				close();
+				return false;
+			}
+			this.members++;
+			if (this.members >= this.maxSize) {
+				close();
+			}
+			return true;
+		}
+
+		/**
+		 * Withdraw a member that failed to join properly.
+		 *
+		 * @return {@code true} if the group is to be rolled back by the caller: no member
+		 * remains, or the group has timed out and all remaining members have finished;
+		 * {@code false} if the remaining members complete the group
+		 */
+		synchronized boolean leave() {
+			this.members--;
+			notifyAll();
+			if (this.members == 0 || (this.timedOut && this.finished >= this.members && !this.leaderElected)) {
+				this.closed = true;
+				this.rollbackOnly = true;
+				this.leaderElected = true;
+				this.completed = true;
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Stop accepting new members since one of the members has been suspended.
+		 */
+		synchronized void closeForSuspension() {
+			close();
+		}
+
+		/**
+		 * Stop accepting new members since a new group has been opened.
+		 */
+		synchronized void closeForNewGroup() {
+			close();
+		}
+
+		synchronized boolean isRollbackOnly() {
+			return this.rollbackOnly;
+		}
+
+		synchronized boolean isTimedOut() {
+			return this.timedOut;
+		}
+
+		private void close() {
+			if (!this.closed) {
+				this.closed = true;
+				notifyAll();
+			}
+		}
+
+		/**
+		 * Register a member as finished and wait until the group can complete.
+		 *
+		 * @param rollback whether the member requests a rollback
+		 * @return the role of the calling member in completing the group
+		 */
+		synchronized Arrival arrive(boolean rollback) {
+			this.finished++;
+			if (rollback) {
+				this.rollbackOnly = true;
+				this.closed = true;
+			}
+			notifyAll();
+			long waitDeadline = System.nanoTime() + this.maxWaitNanos;
+			boolean interrupted = false;
+			try {
+				while (!this.leaderElected) {
+					if (this.timedOut) {
+						// The last straggler rolls back the group, once nobody uses the resource anymore
+						if (this.finished >= this.members) {
+							this.leaderElected = true;
+							return Arrival.LEADER;
+						}
+						return Arrival.ABANDONED;
+					}
+					long now = System.nanoTime();
+					long remaining = this.deadline - now;
+					if (this.finished >= this.members && (this.closed || remaining <= 0)) {
+						this.closed = true;
+						this.leaderElected = true;
+						return Arrival.LEADER;
+					}
+					long remainingWait = waitDeadline - now;
+					if (this.finished < this.members && remainingWait <= 0) {
+						// Stragglers: give up on them, failing the waiting members right away
+						this.closed = true;
+						this.rollbackOnly = true;
+						this.timedOut = true;
+						notifyAll();
+						return Arrival.ABANDONED;
+					}
+					try {
+						if (this.finished >= this.members) {
+							// Everybody done: keep the group open for new members until the deadline
+							TimeUnit.NANOSECONDS.timedWait(this, remaining);
+						} else {
+							TimeUnit.NANOSECONDS.timedWait(this, remainingWait);
+						}
+					} catch (InterruptedException ex) {
+						// Cannot abandon the shared transaction: keep waiting
+						interrupted = true;
+					}
+				}
+				return Arrival.FOLLOWER;
+			} finally {
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		synchronized void complete(@Nullable Throwable failure) {
+			this.failure = failure;
+			this.completed = true;
+			notifyAll();
+		}
+
+		/**
+		 * Wait for the elected member to complete the group physically.
+		 *
+		 * @return the failure of the physical completion, if any
+		 */
+		@Nullable
+		synchronized Throwable awaitCompletion() {
+			boolean interrupted = false;
+			while (!this.completed) {
+				try {
+					wait();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			return this.failure;
+		}
+	}
+
+}
@@ -3,13 +3,17 @@ package org.springframework.transaction.support;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.springframework.core.Constants;
 import org.springframework.lang.Nullable;
+import org.springframework.transaction.HeuristicCompletionException;
 import org.springframework.transaction.IllegalTransactionStateException;
 import org.springframework.transaction.InvalidTimeoutException;
 import org.springframework.transaction.NestedTransactionNotSupportedException;
@@ -77,6 +81,17 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 
 	private boolean rollbackOnCommitFailure = false;
 
+	private boolean transactionStatusRecycling = false;
+
+	@Nullable
+	private transient TransactionMetricsRecorder metricsRecorder;
+
+	@Nullable
+	private transient TransactionTracer transactionTracer;
+
+	@Nullable
+	private transient Executor asyncCompletionExecutor;
+
 
 	/**
 	 * Set the transaction synchronization by the name of the corresponding constant
@@ -283,6 +298,108 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 		return this.rollbackOnCommitFailure;
 	}
 
+	/**
+	 * Set whether {@link DefaultTransactionStatus} objects should be recycled
+	 * through a per-thread free list once their transaction has completed,
+	 * instead of allocating a new status object for every transaction.
+	 * <p>Default is "false". Only to be switched on if callers never hold on to
+	 * a status beyond its {@code commit}/{@code rollback} call, as it is the case
+	 * for {@link TransactionTemplate} and declarative transactions: a completed
+	 * status is marked as {@link DefaultTransactionStatus#isRecycled() recycled}
+	 * and rejects further use until it is handed out again for a subsequent
+	 * transaction, at which point stale references would see the new transaction.
+	 * <p>Subclasses overriding {@link #newTransactionStatus} do not take part.
+	 *
+	 * @since 5.2
+	 */
+	public final void setTransactionStatusRecycling(boolean transactionStatusRecycling) {
+		this.transactionStatusRecycling = transactionStatusRecycling;
+	}
+
+	/**
+	 * Return whether completed transaction status objects get recycled.
+	 *
+	 * @since 5.2
+	 */
+	public final boolean isTransactionStatusRecycling() {
+		return this.transactionStatusRecycling;
+	}
+
+	/**
+	 * Set a recorder for the lifecycle of the transactions driven by this manager:
+	 * begin, completion with outcome and duration, suspension and resumption.
+	 * <p>Default is none. Not serialized with this transaction manager.
+	 *
+	 * @since 5.2
+	 * @see DefaultTransactionMetrics
+	 */
+	public final void setMetricsRecorder(@Nullable TransactionMetricsRecorder metricsRecorder) {
+		this.metricsRecorder = metricsRecorder;
+	}
+
+	/**
+	 * Return the recorder for the lifecycle of transactions, if any.
+	 *
+	 * @since 5.2
+	 */
+	@Nullable
+	public final TransactionMetricsRecorder getMetricsRecorder() {
+		return this.metricsRecorder;
+	}
+
+	/**
+	 * Set a tracer for a timing breakdown of sampled transaction scopes into
+	 * begin, body, before-commit, commit and after-completion phases.
+	 * <p>Default is none. Not serialized with this transaction manager.
+	 *
+	 * @since 5.2
+	 * @see TransactionTrace
+	 */
+	public final void setTransactionTracer(@Nullable TransactionTracer transactionTracer) {
+		this.transactionTracer = transactionTracer;
+	}
+
+	/**
+	 * Return the tracer for transaction scopes, if any.
+	 *
+	 * @since 5.2
+	 */
+	@Nullable
+	public final TransactionTracer getTransactionTracer() {
+		return this.transactionTracer;
+	}
+
+	/**
+	 * Set an executor for running the {@code afterCommit} and {@code afterCompletion}
+	 * callbacks of {@link AsyncCompletionSynchronization} implementations once a
+	 * transaction has completed, instead of in the thread that completes it.
+	 * <p>The callbacks of each transaction get submitted as a single task,
+	 * preserving their order. The executor is expected to be bounded: if it
+	 * rejects a task, the callbacks run in the completing thread instead,
+	 * slowing down callers rather than queueing up work without limits.
+	 * Either way, the task is only dispatched after
+	 * {@link #doCleanupAfterCompletion} has released the transaction's resources,
+	 * and before any suspended outer transaction is resumed.
+	 * <p>Default is none, invoking all callbacks synchronously.
+	 * Not serialized with this transaction manager.
+	 *
+	 * @since 5.2
+	 * @see AsyncCompletionSynchronization
+	 */
+	public final void setAsyncCompletionExecutor(@Nullable Executor asyncCompletionExecutor) {
+		this.asyncCompletionExecutor = asyncCompletionExecutor;
+	}
+
+	/**
+	 * Return the executor for asynchronous completion callbacks, if any.
+	 *
+	 * @since 5.2
+	 */
+	@Nullable
+	public final Executor getAsyncCompletionExecutor() {
+		return this.asyncCompletionExecutor;
+	}
+
 
 	//---------------------------------------------------------------------
 	// Implementation of PlatformTransactionManager 以下是平台事务管理的实现。
@@ -298,17 +415,67 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 	 */
 	@Override
 	public final TransactionStatus getTransaction(@Nullable TransactionDefinition definition) throws TransactionException {
-		Object transaction = doGetTransaction();
-		// Cache debug flag to avoid repeated checks.
-		boolean debugEnabled = logger.isDebugEnabled();
 		if (definition == null) {
 			// Use defaults if no transaction definition given.
 			definition = new DefaultTransactionDefinition();
 		}
+		TransactionMetricsRecorder recorder = this.metricsRecorder;
+		TransactionTracer tracer = this.transactionTracer;
+		TransactionTrace trace = (tracer != null ? tracer.startTrace(definition) : null);
+		if (recorder == null && trace == null) {
+			return startTransaction(definition);
+		}
+		long beginNanos = (trace != null ? trace.getStartNanos() : System.nanoTime());
+		TransactionStatus status;
+		try {
+			status = startTransaction(definition);
+		} catch (RuntimeException | Error ex) {
+			if (recorder != null) {
+				recorder.transactionBeginFailed(definition, ex);
+			}
+			if (trace != null) {
+				trace.markPhaseEnd(TransactionTrace.Phase.BEGIN);
+				trace.complete(TransactionMetricsRecorder.Outcome.FAILED);
+				trace.getTracer().emit(trace);
+			}
+			throw ex;
+		}
+		DefaultTransactionStatus defStatus = (DefaultTransactionStatus) status;
+		if (recorder != null) {
+			defStatus.metricsDefinition = definition;
+		}
+		if (trace != null) {
+			trace.setNewTransaction(status.isNewTransaction());
+			trace.markPhaseEnd(TransactionTrace.Phase.BEGIN);
+			defStatus.trace = trace;
+		}
+		defStatus.beginNanos = beginNanos;
+		if (recorder != null) {
+			recorder.transactionBegun(definition, status.isNewTransaction(), System.nanoTime() - beginNanos);
+		}
+		return status;
+	}
+
+	/**
+	 * 按传播行为开启事务范围：新事务、参与现有事务或挂起现有事务。
+	 */
+	private TransactionStatus startTransaction(TransactionDefinition definition) throws TransactionException {
+		Object transaction = doGetTransaction();
+		// Cache debug flag to avoid repeated checks.
+		boolean debugEnabled = logger.isDebugEnabled();
 		if (isExistingTransaction(transaction)) {
 			// Existing transaction found -> check propagation behavior to find out how to behave.
 			//判斷當前綫程是否存在事務。
 			//依據：當前綫程記錄的鏈接不爲空&&connectionHolder中的trans..Active屬性不爲空。
+			int propagation = definition.getPropagationBehavior();
+			if ((propagation == TransactionDefinition.PROPAGATION_REQUIRED ||
+					propagation == TransactionDefinition.PROPAGATION_SUPPORTS) && canParticipateDirectly()) {
+				//快速路徑：直接參與現有事務，無需逐一檢查傳播行爲。
+				if (debugEnabled) {
+					logger.debug("Participating in existing transaction");
+				}
+				return prepareTransactionStatus(definition, transaction, false, false, debugEnabled, null);
+			}
 			return handleExistingTransaction(definition, transaction, debugEnabled);
 		}
 		// Check definition settings for new transaction.
@@ -348,6 +515,17 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 		}
 	}
 
+	/**
+	 * Determine whether a PROPAGATION_REQUIRED or PROPAGATION_SUPPORTS scope
+	 * may simply join the existing transaction, without validation and without
+	 * opening synchronization of its own.
+	 */
+	private boolean canParticipateDirectly() {
+		return (!isValidateExistingTransaction() &&
+				(getTransactionSynchronization() == SYNCHRONIZATION_NEVER ||
+						TransactionSynchronizationManager.isSynchronizationActive()));
+	}
+
 	/**
 	 * 为现有事务创建TransactionStatus。
 	 * 獲取事務時，處理現有的事務。
@@ -477,6 +655,20 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 
 		boolean actualNewSynchronization = newSynchronization &&
 				!TransactionSynchronizationManager.isSynchronizationActive();
+		if (this.transactionStatusRecycling) {
+			//从当前线程的空闲链表中复用已完成的状态对象
+			DefaultTransactionStatus status = TransactionSynchronizationManager.pollRecycledTransactionStatus();
+			if (status != null) {
+				status.reinitialize(transaction, newTransaction, actualNewSynchronization,
+						definition.isReadOnly(), debug, suspendedResources);
+			} else {
+				status = new DefaultTransactionStatus(
+						transaction, newTransaction, actualNewSynchronization,
+						definition.isReadOnly(), debug, suspendedResources);
+				status.recyclable = true;
+			}
+			return status;
+		}
 		return new DefaultTransactionStatus(
 				transaction, newTransaction, actualNewSynchronization,
 				definition.isReadOnly(), debug, suspendedResources);
@@ -489,14 +681,12 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 	protected void prepareSynchronization(DefaultTransactionStatus status, TransactionDefinition definition) {
 		//先判断是否是新同步。
 		if (status.isNewSynchronization()) {
-			TransactionSynchronizationManager.setActualTransactionActive(status.hasTransaction());
-			TransactionSynchronizationManager.setCurrentTransactionIsolationLevel(
+			//一次性设置事务名称、只读、隔离级别、活跃状态并初始化同步器
+			TransactionSynchronizationManager.initSynchronization(
+					definition.getName(), definition.isReadOnly(),
 					definition.getIsolationLevel() != TransactionDefinition.ISOLATION_DEFAULT ?
-							definition.getIsolationLevel() : null);
-			TransactionSynchronizationManager.setCurrentTransactionReadOnly(definition.isReadOnly());
-			//设置事务名称
-			TransactionSynchronizationManager.setCurrentTransactionName(definition.getName());
-			TransactionSynchronizationManager.initSynchronization();
+							definition.getIsolationLevel() : null,
+					status.hasTransaction());
 		}
 	}
 
@@ -531,26 +721,32 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 	 */
 	@Nullable
 	protected final SuspendedResourcesHolder suspend(@Nullable Object transaction) throws TransactionException {
+		SuspendedResourcesHolder resourcesHolder = doSuspendResources(transaction);
+		TransactionMetricsRecorder recorder = this.metricsRecorder;
+		if (recorder != null && resourcesHolder != null) {
+			recorder.transactionSuspended(TransactionSynchronizationManager.adjustSuspendDepth(1));
+		}
+		return resourcesHolder;
+	}
+
+	/**
+	 * 挂起当前同步与事务资源，返回持有挂起状态的对象。
+	 * 同步器注册表与事务特征整体移出线程上下文（O(1)），
+	 * 仅实现了suspend/resume回调的同步器会收到回调。
+	 */
+	@Nullable
+	private SuspendedResourcesHolder doSuspendResources(@Nullable Object transaction) throws TransactionException {
 		if (TransactionSynchronizationManager.isSynchronizationActive()) {
-			List<TransactionSynchronization> suspendedSynchronizations = doSuspendSynchronization();
+			TransactionContext.SuspendedState suspendedState = TransactionSynchronizationManager.suspendSynchronization();
 			try {
 				Object suspendedResources = null;
 				if (transaction != null) {
 					suspendedResources = doSuspend(transaction);
 				}
-				String name = TransactionSynchronizationManager.getCurrentTransactionName();
-				TransactionSynchronizationManager.setCurrentTransactionName(null);
-				boolean readOnly = TransactionSynchronizationManager.isCurrentTransactionReadOnly();
-				TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
-				Integer isolationLevel = TransactionSynchronizationManager.getCurrentTransactionIsolationLevel();
-				TransactionSynchronizationManager.setCurrentTransactionIsolationLevel(null);
-				boolean wasActive = TransactionSynchronizationManager.isActualTransactionActive();
-				TransactionSynchronizationManager.setActualTransactionActive(false);
-				return new SuspendedResourcesHolder(
-						suspendedResources, suspendedSynchronizations, name, readOnly, isolationLevel, wasActive);
+				return new SuspendedResourcesHolder(suspendedResources, suspendedState);
 			} catch (RuntimeException | Error ex) {
 				// doSuspend failed - original transaction is still active...
-				doResumeSynchronization(suspendedSynchronizations);
+				TransactionSynchronizationManager.resumeSynchronization(suspendedState);
 				throw ex;
 			}
 		} else if (transaction != null) {
@@ -582,13 +778,13 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 			if (suspendedResources != null) {
 				doResume(transaction, suspendedResources);
 			}
-			List<TransactionSynchronization> suspendedSynchronizations = resourcesHolder.suspendedSynchronizations;
-			if (suspendedSynchronizations != null) {
-				TransactionSynchronizationManager.setActualTransactionActive(resourcesHolder.wasActive);
-				TransactionSynchronizationManager.setCurrentTransactionIsolationLevel(resourcesHolder.isolationLevel);
-				TransactionSynchronizationManager.setCurrentTransactionReadOnly(resourcesHolder.readOnly);
-				TransactionSynchronizationManager.setCurrentTransactionName(resourcesHolder.name);
-				doResumeSynchronization(suspendedSynchronizations);
+			TransactionContext.SuspendedState suspendedState = resourcesHolder.suspendedState;
+			if (suspendedState != null) {
+				TransactionSynchronizationManager.resumeSynchronization(suspendedState);
+			}
+			TransactionMetricsRecorder recorder = this.metricsRecorder;
+			if (recorder != null) {
+				recorder.transactionResumed(TransactionSynchronizationManager.adjustSuspendDepth(-1));
 			}
 		}
 	}
@@ -608,36 +804,6 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 		}
 	}
 
-	/**
-	 * Suspend all current synchronizations and deactivate transaction
-	 * synchronization for the current thread.
-	 *
-	 * @return the List of suspended TransactionSynchronization objects
-	 */
-	private List<TransactionSynchronization> doSuspendSynchronization() {
-		List<TransactionSynchronization> suspendedSynchronizations =
-				TransactionSynchronizationManager.getSynchronizations();
-		for (TransactionSynchronization synchronization : suspendedSynchronizations) {
-			synchronization.suspend();
-		}
-		TransactionSynchronizationManager.clearSynchronization();
-		return suspendedSynchronizations;
-	}
-
-	/**
-	 * Reactivate transaction synchronization for the current thread
-	 * and resume all given synchronizations.
-	 *
-	 * @param suspendedSynchronizations a List of TransactionSynchronization objects
-	 */
-	private void doResumeSynchronization(List<TransactionSynchronization> suspendedSynchronizations) {
-		TransactionSynchronizationManager.initSynchronization();
-		for (TransactionSynchronization synchronization : suspendedSynchronizations) {
-			synchronization.resume();
-			TransactionSynchronizationManager.registerSynchronization(synchronization);
-		}
-	}
-
 
 	/**
 	 * This implementation of commit handles participating in existing
@@ -657,23 +823,153 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 		}
 
 		DefaultTransactionStatus defStatus = (DefaultTransactionStatus) status;
-		if (defStatus.isLocalRollbackOnly()) {
-			if (defStatus.isDebug()) {
+		if (defStatus.metricsDefinition == null && defStatus.trace == null) {
+			processCommitRequest(defStatus);
+			return;
+		}
+		processInstrumentedCompletion(defStatus, true);
+	}
+
+	/**
+	 * Process a commit or rollback request for a scope with metrics or tracing,
+	 * recording its outcome once completed.
+	 *
+	 * @param status object representing the transaction
+	 * @param commit whether a commit has been requested, as opposed to a rollback
+	 * @throws TransactionException in case of commit or rollback failure
+	 */
+	private void processInstrumentedCompletion(DefaultTransactionStatus status, boolean commit)
+			throws TransactionException {
+
+		//状态可能在完成时被回收，故预先取出所需信息
+		TransactionMetricsRecorder recorder = this.metricsRecorder;
+		TransactionDefinition definition = status.metricsDefinition;
+		TransactionTrace trace = status.trace;
+		boolean newTransaction = status.isNewTransaction();
+		long beginNanos = status.beginNanos;
+		if (trace != null) {
+			trace.markPhaseEnd(TransactionTrace.Phase.BODY);
+		}
+		TransactionMetricsRecorder.Outcome outcome = TransactionMetricsRecorder.Outcome.FAILED;
+		try {
+			if (commit) {
+				outcome = (processCommitRequest(status) ?
+						TransactionMetricsRecorder.Outcome.COMMITTED : TransactionMetricsRecorder.Outcome.ROLLED_BACK);
+			} else {
+				processRollbackRequest(status);
+				outcome = TransactionMetricsRecorder.Outcome.ROLLED_BACK;
+			}
+		} catch (RuntimeException | Error ex) {
+			outcome = determineOutcome(ex);
+			throw ex;
+		} finally {
+			if (recorder != null && definition != null) {
+				recorder.transactionCompleted(definition, newTransaction, outcome, System.nanoTime() - beginNanos);
+			}
+			if (trace != null) {
+				trace.complete(outcome);
+				trace.getTracer().emit(trace);
+			}
+		}
+	}
+
+	/**
+	 * Process a commit request, applying rollback-only flags.
+	 *
+	 * @param status object representing the transaction
+	 * @return {@code true} if committed, {@code false} if rolled back as requested
+	 * @throws TransactionException in case of commit or rollback failure
+	 */
+	private boolean processCommitRequest(DefaultTransactionStatus status) throws TransactionException {
+		if (status.isLocalRollbackOnly()) {
+			if (status.isDebug()) {
 				logger.debug("Transactional code has requested rollback");
 			}
-			processRollback(defStatus, false);
-			return;
+			processRollback(status, false);
+			return false;
 		}
 
-		if (!shouldCommitOnGlobalRollbackOnly() && defStatus.isGlobalRollbackOnly()) {
-			if (defStatus.isDebug()) {
+		if (!shouldCommitOnGlobalRollbackOnly() && status.isGlobalRollbackOnly()) {
+			if (status.isDebug()) {
 				logger.debug("Global transaction is marked as rollback-only but transactional code requested commit");
 			}
-			processRollback(defStatus, true);
-			return;
+			processRollback(status, true);
+			return false;
+		}
+
+		if (isPlainParticipation(status)) {
+			processParticipatingCommit(status);
+			return true;
+		}
+		processCommit(status);
+		return true;
+	}
+
+	/**
+	 * Mark the end of the given phase if the given scope is traced.
+	 */
+	private static void markPhaseEnd(DefaultTransactionStatus status, TransactionTrace.Phase phase) {
+		TransactionTrace trace = status.trace;
+		if (trace != null) {
+			trace.markPhaseEnd(phase);
 		}
+	}
 
-		processCommit(defStatus);
+	/**
+	 * Determine the metrics outcome for the given completion exception.
+	 */
+	private static TransactionMetricsRecorder.Outcome determineOutcome(Throwable ex) {
+		if (ex instanceof UnexpectedRollbackException) {
+			return TransactionMetricsRecorder.Outcome.UNEXPECTED_ROLLBACK;
+		}
+		if (ex instanceof HeuristicCompletionException) {
+			return TransactionMetricsRecorder.Outcome.HEURISTIC;
+		}
+		return TransactionMetricsRecorder.Outcome.FAILED;
+	}
+
+	/**
+	 * Determine whether the given status merely participates in an existing
+	 * transaction: no new transaction, no synchronization of its own, no held
+	 * savepoint and no suspended resources, i.e. nothing to trigger on completion.
+	 */
+	private static boolean isPlainParticipation(DefaultTransactionStatus status) {
+		return (status.hasTransaction() && !status.isNewTransaction() && !status.isNewSynchronization() &&
+				!status.hasSavepoint() && status.getSuspendedResources() == null);
+	}
+
+	/**
+	 * Process the commit of a scope that merely participates in an existing
+	 * transaction, skipping synchronization triggers which would be no-ops.
+	 * Rollback-only flags have already been checked and applied.
+	 *
+	 * @param status object representing the participating scope
+	 * @throws TransactionException in case of commit preparation failure
+	 * @see #processCommit
+	 */
+	private void processParticipatingCommit(DefaultTransactionStatus status) throws TransactionException {
+		try {
+			try {
+				prepareForCommit(status);
+				if (isFailEarlyOnGlobalRollbackOnly() && status.isGlobalRollbackOnly()) {
+					throw new UnexpectedRollbackException(
+							"Transaction silently rolled back because it has been marked as rollback-only");
+				}
+			} catch (UnexpectedRollbackException ex) {
+				// Same outcomes as in processCommit: no rollback-only marking
+				throw ex;
+			} catch (TransactionException ex) {
+				if (isRollbackOnCommitFailure()) {
+					doRollbackOnCommitException(status, ex);
+				}
+				throw ex;
+			} catch (RuntimeException | Error ex) {
+				doRollbackOnCommitException(status, ex);
+				throw ex;
+			}
+		} finally {
+			cleanupAfterCompletion(status);
+		}
 	}
 
 	/**
@@ -693,6 +989,7 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 				triggerBeforeCommit(status);
 				triggerBeforeCompletion(status);
 				beforeCompletionInvoked = true;
+				markPhaseEnd(status, TransactionTrace.Phase.BEFORE_COMMIT);
 
 				if (status.hasSavepoint()) {
 					if (status.isDebug()) {
@@ -709,6 +1006,7 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 				} else if (isFailEarlyOnGlobalRollbackOnly()) {
 					unexpectedRollback = status.isGlobalRollbackOnly();
 				}
+				markPhaseEnd(status, TransactionTrace.Phase.COMMIT);
 
 				// Throw UnexpectedRollbackException if we have a global rollback-only
 				// marker but still didn't get a corresponding exception from commit.
@@ -765,7 +1063,48 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 		}
 
 		DefaultTransactionStatus defStatus = (DefaultTransactionStatus) status;
-		processRollback(defStatus, false);
+		if (defStatus.metricsDefinition == null && defStatus.trace == null) {
+			processRollbackRequest(defStatus);
+			return;
+		}
+		processInstrumentedCompletion(defStatus, false);
+	}
+
+	/**
+	 * Process a rollback request, for a participating scope or an actual transaction.
+	 */
+	private void processRollbackRequest(DefaultTransactionStatus status) throws TransactionException {
+		if (isPlainParticipation(status)) {
+			processParticipatingRollback(status);
+			return;
+		}
+		processRollback(status, false);
+	}
+
+	/**
+	 * Process the rollback of a scope that merely participates in an existing
+	 * transaction: mark the existing transaction as rollback-only if necessary,
+	 * skipping synchronization triggers which would be no-ops.
+	 *
+	 * @param status object representing the participating scope
+	 * @throws TransactionException in case of failure to mark rollback-only
+	 * @see #processRollback
+	 */
+	private void processParticipatingRollback(DefaultTransactionStatus status) throws TransactionException {
+		try {
+			if (status.isLocalRollbackOnly() || isGlobalRollbackOnParticipationFailure()) {
+				if (status.isDebug()) {
+					logger.debug("Participating transaction failed - marking existing transaction as rollback-only");
+				}
+				doSetRollbackOnly(status);
+			} else {
+				if (status.isDebug()) {
+					logger.debug("Participating transaction failed - letting transaction originator decide on rollback");
+				}
+			}
+		} finally {
+			cleanupAfterCompletion(status);
+		}
 	}
 
 	/**
@@ -781,6 +1120,7 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 
 			try {
 				triggerBeforeCompletion(status);
+				markPhaseEnd(status, TransactionTrace.Phase.BEFORE_COMMIT);
 
 				if (status.hasSavepoint()) {
 					if (status.isDebug()) {
@@ -813,6 +1153,7 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 						unexpectedRollback = false;
 					}
 				}
+				markPhaseEnd(status, TransactionTrace.Phase.COMMIT);
 			} catch (RuntimeException | Error ex) {
 				triggerAfterCompletion(status, TransactionSynchronization.STATUS_UNKNOWN);
 				throw ex;
@@ -898,7 +1239,21 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 			if (status.isDebug()) {
 				logger.trace("Triggering afterCommit synchronization");
 			}
-			TransactionSynchronizationUtils.triggerAfterCommit();
+			if (this.asyncCompletionExecutor == null || (status.hasTransaction() && !status.isNewTransaction())) {
+				TransactionSynchronizationUtils.triggerAfterCommit();
+				return;
+			}
+			//异步同步器的afterCommit推迟到afterCompletion时一并提交到执行器
+			List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+			List<TransactionSynchronization> inline = new ArrayList<>(synchronizations.size());
+			List<TransactionSynchronization> deferred = new ArrayList<>(synchronizations.size());
+			for (TransactionSynchronization synchronization : synchronizations) {
+				(synchronization instanceof AsyncCompletionSynchronization ? deferred : inline).add(synchronization);
+			}
+			if (!deferred.isEmpty()) {
+				status.deferredAfterCommit = deferred;
+			}
+			TransactionSynchronizationUtils.invokeAfterCommit(inline);
 		}
 	}
 
@@ -918,7 +1273,11 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 				}
 				// No transaction or new transaction for the current scope ->
 				// invoke the afterCompletion callbacks immediately
-				invokeAfterCompletion(synchronizations, completionStatus);
+				if (this.asyncCompletionExecutor != null) {
+					dispatchAfterCompletion(status, synchronizations, completionStatus);
+				} else {
+					invokeAfterCompletion(synchronizations, completionStatus);
+				}
 			} else if (!synchronizations.isEmpty()) {
 				// Existing transaction that we participate in, controlled outside
 				// of the scope of this Spring transaction manager -> try to register
@@ -928,6 +1287,65 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 		}
 	}
 
+	/**
+	 * Invoke the {@code afterCompletion} callbacks of synchronous synchronizations
+	 * immediately, preparing those of asynchronous synchronizations (preceded by
+	 * their deferred {@code afterCommit} callbacks) as a single task, to be
+	 * submitted on {@link #cleanupAfterCompletion cleanup}.
+	 *
+	 * @param status           object representing the transaction
+	 * @param synchronizations the synchronizations of the transaction
+	 * @param completionStatus completion status according to TransactionSynchronization constants
+	 */
+	private void dispatchAfterCompletion(DefaultTransactionStatus status,
+			List<TransactionSynchronization> synchronizations, int completionStatus) {
+
+		Executor executor = this.asyncCompletionExecutor;
+		List<TransactionSynchronization> deferredAfterCommit = status.deferredAfterCommit;
+		status.deferredAfterCommit = null;
+		List<TransactionSynchronization> inline = new ArrayList<>(synchronizations.size());
+		List<TransactionSynchronization> async = new ArrayList<>(synchronizations.size());
+		for (TransactionSynchronization synchronization : synchronizations) {
+			(synchronization instanceof AsyncCompletionSynchronization ? async : inline).add(synchronization);
+		}
+		invokeAfterCompletion(inline, completionStatus);
+		if (executor == null || (async.isEmpty() && deferredAfterCommit == null)) {
+			return;
+		}
+		status.pendingAsyncCompletion = () -> {
+			if (deferredAfterCommit != null) {
+				TransactionSynchronizationUtils.invokeAfterCommitLoggingExceptions(deferredAfterCommit);
+			}
+			TransactionSynchronizationUtils.invokeAfterCompletion(async, completionStatus);
+		};
+	}
+
+	/**
+	 * Submit the asynchronous completion callbacks prepared for the given
+	 * transaction, if any, or run them immediately if the executor rejects them.
+	 *
+	 * @param status object representing the transaction
+	 */
+	private void submitAsyncCompletion(DefaultTransactionStatus status) {
+		Runnable task = status.pendingAsyncCompletion;
+		if (task == null) {
+			return;
+		}
+		status.pendingAsyncCompletion = null;
+		Executor executor = this.asyncCompletionExecutor;
+		if (executor != null) {
+			try {
+				executor.execute(task);
+				return;
+			} catch (RejectedExecutionException ex) {
+				if (status.isDebug()) {
+					logger.debug("Asynchronous completion executor rejected callbacks - invoking them immediately");
+				}
+			}
+		}
+		task.run();
+	}
+
 	/**
 	 * Actually invoke the {@code afterCompletion} methods of the
 	 * given Spring TransactionSynchronization objects.
@@ -948,7 +1366,8 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 
 	/**
 	 * Clean up after completion, clearing synchronization if necessary,
-	 * and invoking doCleanupAfterCompletion.
+	 * invoking doCleanupAfterCompletion, and submitting asynchronous
+	 * completion callbacks once resources have been released.
 	 *
 	 * @param status object representing the transaction
 	 * @see #doCleanupAfterCompletion
@@ -958,8 +1377,12 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 		if (status.isNewSynchronization()) {
 			TransactionSynchronizationManager.clear();
 		}
-		if (status.isNewTransaction()) {
-			doCleanupAfterCompletion(status.getTransaction());
+		try {
+			if (status.isNewTransaction()) {
+				doCleanupAfterCompletion(status.getTransaction());
+			}
+		} finally {
+			submitAsyncCompletion(status);
 		}
 		if (status.getSuspendedResources() != null) {
 			if (status.isDebug()) {
@@ -968,6 +1391,9 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 			Object transaction = (status.hasTransaction() ? status.getTransaction() : null);
 			resume(transaction, (SuspendedResourcesHolder) status.getSuspendedResources());
 		}
+		if (status.recyclable) {
+			TransactionSynchronizationManager.recycleTransactionStatus(status);
+		}
 	}
 
 
@@ -1245,32 +1671,17 @@ public abstract class AbstractPlatformTransactionManager implements PlatformTran
 		private final Object suspendedResources;
 
 		@Nullable
-		private List<TransactionSynchronization> suspendedSynchronizations;
-
-		@Nullable
-		private String name;
-
-		private boolean readOnly;
-
-		@Nullable
-		private Integer isolationLevel;
-
-		private boolean wasActive;
+		private TransactionContext.SuspendedState suspendedState;
 
 		private SuspendedResourcesHolder(Object suspendedResources) {
 			this.suspendedResources = suspendedResources;
 		}
 
 		private SuspendedResourcesHolder(
-				@Nullable Object suspendedResources, List<TransactionSynchronization> suspendedSynchronizations,
-				@Nullable String name, boolean readOnly, @Nullable Integer isolationLevel, boolean wasActive) {
+				@Nullable Object suspendedResources, TransactionContext.SuspendedState suspendedState) {
 
 			this.suspendedResources = suspendedResources;
-			this.suspendedSynchronizations = suspendedSynchronizations;
-			this.name = name;
-			this.readOnly = readOnly;
-			this.isolationLevel = isolationLevel;
-			this.wasActive = wasActive;
+			this.suspendedState = suspendedState;
 		}
 	}
 
@@ -176,6 +176,17 @@ public abstract class AbstractTransactionStatus implements TransactionStatus {
 	}
 
 
+	/**
+	 * Reset the rollback-only and completed flags and drop the held savepoint,
+	 * if any, for reuse of this status object for another transaction.
+	 */
+	void resetState() {
+		this.rollbackOnly = false;
+		this.completed = false;
+		this.savepoint = null;
+	}
+
+
 	//---------------------------------------------------------------------
 	// Implementation of SavepointManager
 	//---------------------------------------------------------------------
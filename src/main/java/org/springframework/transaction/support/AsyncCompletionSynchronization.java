@@ -0,0 +1,38 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+/**
+ * Marker for {@link TransactionSynchronization} implementations whose
+ * {@code afterCommit} and {@code afterCompletion} callbacks may run
+ * asynchronously, once the transaction has completed, instead of
+ * delaying the return to the caller: e.g. cache invalidation or notifications.
+ *
+ * <p>Only takes effect with a transaction manager that has an
+ * {@link AbstractPlatformTransactionManager#setAsyncCompletionExecutor
+ * asynchronous completion executor}; otherwise, such synchronizations get
+ * invoked synchronously like any other. When dispatched asynchronously,
+ * the callbacks run on another thread, without transaction synchronization
+ * and after the transaction's resources have been released. Exceptions
+ * thrown by them get logged rather than propagated to the caller.
+ *
+ * @since 5.2
+ * @see AbstractPlatformTransactionManager#setAsyncCompletionExecutor
+ */
+public interface AsyncCompletionSynchronization extends TransactionSynchronization {
+
+}
@@ -0,0 +1,421 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.NestedTransactionNotSupportedException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.UnexpectedRollbackException;
+import org.springframework.util.Assert;
+
+/**
+ * {@link TransactionTemplate} variant for bulk processing: processes a sequence
+ * of items in chunks, each chunk in one transaction, committing every
+ * {@link #setChunkSize chunk size} items or once the {@link #setMaxChunkDuration
+ * maximum chunk duration} has elapsed, whichever comes first.
+ *
+ * <p>Failing items do not fail their chunk. An item whose callback throws a
+ * RuntimeException is recorded as failed; the other items of its chunk are
+ * kept, by rolling back to a savepoint where the transaction supports them
+ * (see {@link org.springframework.transaction.SavepointManager}), or else
+ * by processing them again in a transaction of their own. Failures that
+ * cannot be attributed to a single item, such as constraint violations
+ * detected on flush or commit, get isolated by bisecting the chunk: under
+ * savepoints within the transaction while flushing, in separate transactions
+ * on commit, until the failing items are found.
+ *
+ * <p>Item callbacks may therefore be invoked more than once per item and need
+ * to confine their effects to the transaction. Chunks are meant to be
+ * transactions of their own: with the default propagation behavior, the
+ * template is to be invoked outside of any transaction.
+ * {@link CallbackPreferringPlatformTransactionManager} implementations are
+ * not supported.
+ *
+ * @since 5.2
+ * @see #executeInChunks(Iterable, TransactionItemCallback)
+ * @see TransactionItemCallback
+ */
+@SuppressWarnings("serial")
+public class ChunkedTransactionTemplate extends TransactionTemplate {
+
+	/** Default number of items per chunk: 100. */
+	public static final int DEFAULT_CHUNK_SIZE = 100;
+
+
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	private long maxChunkDurationNanos;
+
+
+	public ChunkedTransactionTemplate() {
+	}
+
+	/**
+	 * Construct a new ChunkedTransactionTemplate using the given transaction manager.
+	 *
+	 * @param transactionManager the transaction management strategy to be used
+	 */
+	public ChunkedTransactionTemplate(PlatformTransactionManager transactionManager) {
+		super(transactionManager);
+	}
+
+	/**
+	 * Construct a new ChunkedTransactionTemplate using the given transaction manager,
+	 * taking its default settings from the given transaction definition.
+	 *
+	 * @param transactionManager    the transaction management strategy to be used
+	 * @param transactionDefinition the transaction definition to copy the
+	 *                              default settings from
+	 */
+	public ChunkedTransactionTemplate(PlatformTransactionManager transactionManager,
+			TransactionDefinition transactionDefinition) {
+
+		super(transactionManager, transactionDefinition);
+	}
+
+
+	/**
+	 * Set the maximum number of items per transaction.
+	 * Default is {@link #DEFAULT_CHUNK_SIZE}.
+	 */
+	public void setChunkSize(int chunkSize) {
+		Assert.isTrue(chunkSize > 0, "Chunk size must be positive");
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Return the maximum number of items per transaction.
+	 */
+	public int getChunkSize() {
+		return this.chunkSize;
+	}
+
+	/**
+	 * Set the time after which a chunk gets committed even if not full yet,
+	 * e.g. for items arriving slowly from their source. Checked between items.
+	 * Default is {@link Duration#ZERO}, i.e. no limit.
+	 */
+	public void setMaxChunkDuration(Duration maxChunkDuration) {
+		Assert.isTrue(!maxChunkDuration.isNegative(), "Max chunk duration must not be negative");
+		this.maxChunkDurationNanos = maxChunkDuration.toNanos();
+	}
+
+	/**
+	 * Return the time after which a chunk gets committed even if not full yet.
+	 */
+	public Duration getMaxChunkDuration() {
+		return Duration.ofNanos(this.maxChunkDurationNanos);
+	}
+
+
+	/**
+	 * Process the given items in chunks, see the {@link ChunkedTransactionTemplate
+	 * class description}.
+	 *
+	 * @param items  the items to process, consumed lazily
+	 * @param action the callback processing a single item
+	 * @return the outcome of the processing, including the failed items
+	 * @throws TransactionException in case of initialization, rollback or system errors
+	 */
+	public <T> ChunkResult<T> executeInChunks(Iterable<? extends T> items, TransactionItemCallback<? super T> action)
+			throws TransactionException {
+
+		return doExecuteInChunks(items.iterator(), action);
+	}
+
+	/**
+	 * Process the given items in chunks, see the {@link ChunkedTransactionTemplate
+	 * class description}. The stream is not closed by this method.
+	 *
+	 * @param items  the items to process, consumed lazily
+	 * @param action the callback processing a single item
+	 * @return the outcome of the processing, including the failed items
+	 * @throws TransactionException in case of initialization, rollback or system errors
+	 */
+	public <T> ChunkResult<T> executeInChunks(Stream<? extends T> items, TransactionItemCallback<? super T> action)
+			throws TransactionException {
+
+		return doExecuteInChunks(items.iterator(), action);
+	}
+
+	private <T> ChunkResult<T> doExecuteInChunks(Iterator<? extends T> items, TransactionItemCallback<? super T> action) {
+		PlatformTransactionManager tm = getTransactionManager();
+		Assert.state(tm != null, "No PlatformTransactionManager set");
+		Assert.state(!(tm instanceof CallbackPreferringPlatformTransactionManager),
+				"Chunked processing not supported with CallbackPreferringPlatformTransactionManager");
+
+		ChunkResult<T> result = new ChunkResult<>();
+		while (items.hasNext()) {
+			processChunk(tm, items, action, result);
+		}
+		return result;
+	}
+
+	/**
+	 * 在一个事务中处理下一批条目：支持保存点时，失败条目回滚到块保存点后重放其余条目，
+	 * 否则放弃当前事务，改用独立事务重新处理。
+	 */
+	private <T> void processChunk(PlatformTransactionManager tm, Iterator<? extends T> items,
+			TransactionItemCallback<? super T> action, ChunkResult<T> result) {
+
+		long deadline = System.nanoTime() + this.maxChunkDurationNanos;
+		// Items processed before the current savepoint, and since
+		List<T> applied = new ArrayList<>();
+		List<T> pending = new ArrayList<>();
+		int taken = 0;
+		TransactionStatus status = tm.getTransaction(this);
+		try {
+			Object savepoint = createSavepointIfPossible(status);
+			while (items.hasNext() && taken < this.chunkSize &&
+					(taken == 0 || this.maxChunkDurationNanos == 0 || System.nanoTime() - deadline < 0)) {
+				T item = items.next();
+				taken++;
+				try {
+					action.doInTransaction(item, status);
+					pending.add(item);
+				} catch (RuntimeException ex) {
+					result.addFailure(item, ex);
+					if (savepoint == null) {
+						tm.rollback(status);
+						processIsolated(tm, pending, action, result);
+						return;
+					}
+					status.rollbackToSavepoint(savepoint);
+					status.releaseSavepoint(savepoint);
+					applied.addAll(processWithSavepoints(status, pending, action, result));
+					pending.clear();
+					savepoint = status.createSavepoint();
+				}
+			}
+			if (savepoint != null) {
+				try {
+					status.flush();
+				} catch (RuntimeException ex) {
+					logger.debug("Flushing chunk failed - isolating failed items under savepoints", ex);
+					status.rollbackToSavepoint(savepoint);
+					status.releaseSavepoint(savepoint);
+					pending = processWithSavepoints(status, pending, action, result);
+				}
+			}
+		} catch (RuntimeException | Error ex) {
+			if (!status.isCompleted()) {
+				tm.rollback(status);
+			}
+			throw ex;
+		}
+		applied.addAll(pending);
+		commitChunk(tm, status, applied, action, result);
+	}
+
+	@Nullable
+	private Object createSavepointIfPossible(TransactionStatus status) {
+		try {
+			return status.createSavepoint();
+		} catch (NestedTransactionNotSupportedException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Process the given items under a savepoint, bisecting them on failure.
+	 *
+	 * @return the items processed successfully
+	 */
+	private <T> List<T> processWithSavepoints(TransactionStatus status, List<T> items,
+			TransactionItemCallback<? super T> action, ChunkResult<T> result) {
+
+		if (items.isEmpty()) {
+			return items;
+		}
+		Object savepoint = status.createSavepoint();
+		try {
+			for (T item : items) {
+				action.doInTransaction(item, status);
+			}
+			status.flush();
+		} catch (RuntimeException ex) {
+			status.rollbackToSavepoint(savepoint);
+			status.releaseSavepoint(savepoint);
+			if (items.size() == 1) {
+				result.addFailure(items.get(0), ex);
+				return Collections.emptyList();
+			}
+			int middle = items.size() / 2;
+			List<T> processed = new ArrayList<>(items.size());
+			processed.addAll(processWithSavepoints(status, items.subList(0, middle), action, result));
+			processed.addAll(processWithSavepoints(status, items.subList(middle, items.size()), action, result));
+			return processed;
+		}
+		status.releaseSavepoint(savepoint);
+		return items;
+	}
+
+	/**
+	 * Process the given items in a transaction of their own, recording failing
+	 * items and processing the others again in separate transactions.
+	 */
+	private <T> void processIsolated(PlatformTransactionManager tm, List<T> items,
+			TransactionItemCallback<? super T> action, ChunkResult<T> result) {
+
+		if (items.isEmpty()) {
+			return;
+		}
+		TransactionStatus status = tm.getTransaction(this);
+		for (int i = 0; i < items.size(); i++) {
+			try {
+				action.doInTransaction(items.get(i), status);
+			} catch (RuntimeException ex) {
+				result.addFailure(items.get(i), ex);
+				tm.rollback(status);
+				processIsolated(tm, items.subList(0, i), action, result);
+				processIsolated(tm, items.subList(i + 1, items.size()), action, result);
+				return;
+			} catch (Error err) {
+				tm.rollback(status);
+				throw err;
+			}
+		}
+		commitChunk(tm, status, items, action, result);
+	}
+
+	/**
+	 * Commit the given transaction, bisecting its items in separate
+	 * transactions if the commit fails.
+	 */
+	private <T> void commitChunk(PlatformTransactionManager tm, TransactionStatus status, List<T> items,
+			TransactionItemCallback<? super T> action, ChunkResult<T> result) {
+
+		try {
+			if (status.isRollbackOnly()) {
+				tm.rollback(status);
+				throw new UnexpectedRollbackException("Chunk transaction has been marked as rollback-only");
+			}
+			tm.commit(status);
+		} catch (RuntimeException ex) {
+			logger.debug("Committing chunk failed - isolating failed items in separate transactions", ex);
+			if (items.size() == 1) {
+				result.addFailure(items.get(0), ex);
+			} else if (!items.isEmpty()) {
+				int middle = items.size() / 2;
+				processIsolated(tm, items.subList(0, middle), action, result);
+				processIsolated(tm, items.subList(middle, items.size()), action, result);
+			}
+			return;
+		}
+		result.addCommit(items.size());
+	}
+
+
+	/**
+	 * Outcome of {@link #executeInChunks}.
+	 *
+	 * @param <T> the item type
+	 */
+	public static final class ChunkResult<T> {
+
+		private long committedItems;
+
+		private int commits;
+
+		private final List<FailedItem<T>> failedItems = new ArrayList<>();
+
+		void addCommit(int itemCount) {
+			this.committedItems += itemCount;
+			this.commits++;
+		}
+
+		void addFailure(T item, RuntimeException ex) {
+			this.failedItems.add(new FailedItem<>(item, ex));
+		}
+
+		/**
+		 * Return the number of items processed in committed transactions.
+		 */
+		public long getCommittedItemCount() {
+			return this.committedItems;
+		}
+
+		/**
+		 * Return the number of committed transactions.
+		 */
+		public int getCommitCount() {
+			return this.commits;
+		}
+
+		/**
+		 * Return whether any item failed.
+		 */
+		public boolean hasFailures() {
+			return !this.failedItems.isEmpty();
+		}
+
+		/**
+		 * Return the failed items, in the order of their failure.
+		 */
+		public List<FailedItem<T>> getFailedItems() {
+			return Collections.unmodifiableList(this.failedItems);
+		}
+
+		@Override
+		public String toString() {
+			return "ChunkResult: " + this.committedItems + " items committed in " + this.commits +
+					" transactions, " + this.failedItems.size() + " items failed";
+		}
+	}
+
+
+	/**
+	 * An item that failed, along with the exception it failed with.
+	 *
+	 * @param <T> the item type
+	 */
+	public static final class FailedItem<T> {
+
+		private final T item;
+
+		private final RuntimeException exception;
+
+		FailedItem(T item, RuntimeException exception) {
+			this.item = item;
+			this.exception = exception;
+		}
+
+		public T getItem() {
+			return this.item;
+		}
+
+		public RuntimeException getException() {
+			return this.exception;
+		}
+
+		@Override
+		public String toString() {
+			return "FailedItem [" + this.item + "]: " + this.exception;
+		}
+	}
+
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.util.ObjectUtils;
+
+/**
+ * Default {@link TransactionMetricsRecorder}, keeping lock-free counters and
+ * {@link LatencyHistogram latency histograms} per transaction name and
+ * propagation behavior, as well as suspension counts for all transactions.
+ *
+ * <p>The number of distinct tags is bounded by the number of transaction
+ * definitions in the application, e.g. one per transactional method.
+ * Beyond {@link #setMaxTags the maximum number of tags}, scopes are recorded
+ * under their propagation behavior only.
+ *
+ * @since 5.2
+ * @see AbstractPlatformTransactionManager#setMetricsRecorder
+ */
+public class DefaultTransactionMetrics implements TransactionMetricsRecorder {
+
+	/** Default maximum number of tags. */
+	public static final int DEFAULT_MAX_TAGS = 1024;
+
+
+	private final Map<Tag, TransactionStats> stats = new ConcurrentHashMap<>(64);
+
+	private volatile int maxTags = DEFAULT_MAX_TAGS;
+
+	private final LongAdder suspendCount = new LongAdder();
+
+	private final LongAdder resumeCount = new LongAdder();
+
+	private final AtomicInteger maxSuspendDepth = new AtomicInteger();
+
+
+	/**
+	 * Set the maximum number of distinct tags to keep statistics for.
+	 * Default is {@value #DEFAULT_MAX_TAGS}.
+	 */
+	public void setMaxTags(int maxTags) {
+		this.maxTags = maxTags;
+	}
+
+	/**
+	 * Return the maximum number of distinct tags to keep statistics for.
+	 */
+	public int getMaxTags() {
+		return this.maxTags;
+	}
+
+
+	@Override
+	public void transactionBegun(TransactionDefinition definition, boolean newTransaction, long beginNanos) {
+		TransactionStats stats = getStats(definition);
+		stats.begunCount.increment();
+		if (newTransaction) {
+			stats.newTransactionCount.increment();
+		}
+		stats.beginLatency.record(beginNanos);
+	}
+
+	@Override
+	public void transactionBeginFailed(TransactionDefinition definition, Throwable ex) {
+		getStats(definition).beginFailureCount.increment();
+	}
+
+	@Override
+	public void transactionCompleted(TransactionDefinition definition, boolean newTransaction,
+			Outcome outcome, long durationNanos) {
+
+		TransactionStats stats = getStats(definition);
+		stats.outcomeCounts[outcome.ordinal()].increment();
+		stats.duration.record(durationNanos);
+	}
+
+	@Override
+	public void transactionSuspended(int depth) {
+		this.suspendCount.increment();
+		int max = this.maxSuspendDepth.get();
+		while (depth > max && !this.maxSuspendDepth.compareAndSet(max, depth)) {
+			max = this.maxSuspendDepth.get();
+		}
+	}
+
+	@Override
+	public void transactionResumed(int depth) {
+		this.resumeCount.increment();
+	}
+
+	private TransactionStats getStats(TransactionDefinition definition) {
+		Tag tag = new Tag(definition.getName(), definition.getPropagationBehavior());
+		TransactionStats stats = this.stats.get(tag);
+		if (stats == null) {
+			if (this.stats.size() >= this.maxTags) {
+				tag = new Tag(null, definition.getPropagationBehavior());
+			}
+			stats = this.stats.computeIfAbsent(tag, key -> new TransactionStats());
+		}
+		return stats;
+	}
+
+
+	/**
+	 * Return the statistics for all tags recorded so far.
+	 */
+	public Map<Tag, TransactionStats> getStats() {
+		return Collections.unmodifiableMap(this.stats);
+	}
+
+	/**
+	 * Return the statistics for the given transaction name and propagation behavior.
+	 *
+	 * @param name the transaction name, or {@code null} for unnamed transactions
+	 * @param propagationBehavior the propagation behavior
+	 * @return the statistics, or {@code null} if none recorded
+	 */
+	@Nullable
+	public TransactionStats getStats(@Nullable String name, int propagationBehavior) {
+		return this.stats.get(new Tag(name, propagationBehavior));
+	}
+
+	/**
+	 * Return the number of suspensions recorded.
+	 */
+	public long getSuspendCount() {
+		return this.suspendCount.sum();
+	}
+
+	/**
+	 * Return the number of resumptions recorded.
+	 */
+	public long getResumeCount() {
+		return this.resumeCount.sum();
+	}
+
+	/**
+	 * Return the largest number of transactions suspended at the same time on any thread.
+	 */
+	public int getMaxSuspendDepth() {
+		return this.maxSuspendDepth.get();
+	}
+
+	/**
+	 * Discard all statistics recorded so far.
+	 */
+	public void reset() {
+		this.stats.clear();
+		this.suspendCount.reset();
+		this.resumeCount.reset();
+		this.maxSuspendDepth.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "DefaultTransactionMetrics: " + this.stats.size() + " tags, suspensions=" + getSuspendCount() +
+				", maxSuspendDepth=" + getMaxSuspendDepth();
+	}
+
+
+	/**
+	 * Transaction name and propagation behavior that statistics are kept for.
+	 */
+	public static final class Tag {
+
+		@Nullable
+		private final String name;
+
+		private final int propagationBehavior;
+
+		Tag(@Nullable String name, int propagationBehavior) {
+			this.name = name;
+			this.propagationBehavior = propagationBehavior;
+		}
+
+		/**
+		 * Return the transaction name, or {@code null} for unnamed transactions
+		 * and for transactions beyond the maximum number of tags.
+		 */
+		@Nullable
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * Return the propagation behavior.
+		 *
+		 * @see TransactionDefinition#getPropagationBehavior()
+		 */
+		public int getPropagationBehavior() {
+			return this.propagationBehavior;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof Tag)) {
+				return false;
+			}
+			Tag otherTag = (Tag) other;
+			return (ObjectUtils.nullSafeEquals(this.name, otherTag.name) &&
+					this.propagationBehavior == otherTag.propagationBehavior);
+		}
+
+		@Override
+		public int hashCode() {
+			return ObjectUtils.nullSafeHashCode(this.name) * 31 + this.propagationBehavior;
+		}
+
+		@Override
+		public String toString() {
+			return this.name + " [" + DefaultTransactionDefinition.constants.toCode(
+					this.propagationBehavior, DefaultTransactionDefinition.PREFIX_PROPAGATION) + "]";
+		}
+	}
+
+
+	/**
+	 * Counters and latencies recorded for a tag.
+	 */
+	public static final class TransactionStats {
+
+		private final LongAdder begunCount = new LongAdder();
+
+		private final LongAdder newTransactionCount = new LongAdder();
+
+		private final LongAdder beginFailureCount = new LongAdder();
+
+		private final LongAdder[] outcomeCounts = new LongAdder[Outcome.values().length];
+
+		private final LatencyHistogram beginLatency = new LatencyHistogram();
+
+		private final LatencyHistogram duration = new LatencyHistogram();
+
+		TransactionStats() {
+			for (int i = 0; i < this.outcomeCounts.length; i++) {
+				this.outcomeCounts[i] = new LongAdder();
+			}
+		}
+
+		/**
+		 * Return the number of scopes begun, new or participating.
+		 */
+		public long getBegunCount() {
+			return this.begunCount.sum();
+		}
+
+		/**
+		 * Return the number of scopes that began a new physical transaction.
+		 */
+		public long getNewTransactionCount() {
+			return this.newTransactionCount.sum();
+		}
+
+		/**
+		 * Return the number of scopes that failed to begin.
+		 */
+		public long getBeginFailureCount() {
+			return this.beginFailureCount.sum();
+		}
+
+		/**
+		 * Return the number of scopes completed with the given outcome.
+		 */
+		public long getCount(Outcome outcome) {
+			return this.outcomeCounts[outcome.ordinal()].sum();
+		}
+
+		/**
+		 * Return the time spent in {@code getTransaction}.
+		 */
+		public LatencyHistogram getBeginLatency() {
+			return this.beginLatency;
+		}
+
+		/**
+		 * Return the time from the start of {@code getTransaction} until
+		 * completion through {@code commit} or {@code rollback}.
+		 */
+		public LatencyHistogram getDuration() {
+			return this.duration;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder("begun=").append(getBegunCount());
+			for (Outcome outcome : Outcome.values()) {
+				sb.append(", ").append(outcome.name().toLowerCase()).append('=').append(getCount(outcome));
+			}
+			return sb.append(", duration: ").append(this.duration).toString();
+		}
+	}
+
+}
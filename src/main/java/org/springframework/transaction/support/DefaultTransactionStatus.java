@@ -16,9 +16,13 @@
 
 package org.springframework.transaction.support;
 
+import java.util.List;
+
 import org.springframework.lang.Nullable;
+import org.springframework.transaction.IllegalTransactionStateException;
 import org.springframework.transaction.NestedTransactionNotSupportedException;
 import org.springframework.transaction.SavepointManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.util.Assert;
 
 /**
@@ -51,18 +55,65 @@ import org.springframework.util.Assert;
 public class DefaultTransactionStatus extends AbstractTransactionStatus {
 
 	@Nullable
-	private final Object transaction;
+	private Object transaction;
+
+	private boolean newTransaction;
+
+	private boolean newSynchronization;
+
+	private boolean readOnly;
+
+	private boolean debug;
+
+	@Nullable
+	private Object suspendedResources;
+
+	/**
+	 * Whether this status may be returned to the per-thread free list on completion.
+	 */
+	boolean recyclable;
+
+	/**
+	 * Whether this status currently sits in the free list, i.e. has completed.
+	 */
+	private boolean recycled;
+
+	/**
+	 * Next status in the per-thread free list, if any.
+	 */
+	@Nullable
+	DefaultTransactionStatus nextRecycled;
 
-	private final boolean newTransaction;
+	/**
+	 * Definition of this scope, kept for metrics only.
+	 */
+	@Nullable
+	TransactionDefinition metricsDefinition;
 
-	private final boolean newSynchronization;
+	/**
+	 * Start of {@code getTransaction} for this scope, kept for metrics only.
+	 */
+	long beginNanos;
 
-	private final boolean readOnly;
+	/**
+	 * Timing breakdown of this scope, if sampled for tracing.
+	 */
+	@Nullable
+	TransactionTrace trace;
 
-	private final boolean debug;
+	/**
+	 * Asynchronous synchronizations whose {@code afterCommit} callbacks await
+	 * dispatch along with their {@code afterCompletion} callbacks.
+	 */
+	@Nullable
+	List<TransactionSynchronization> deferredAfterCommit;
 
+	/**
+	 * Asynchronous completion callbacks awaiting submission once the
+	 * transaction's resources have been cleaned up.
+	 */
 	@Nullable
-	private final Object suspendedResources;
+	Runnable pendingAsyncCompletion;
 
 
 	/**
@@ -89,16 +140,96 @@ public class DefaultTransactionStatus extends AbstractTransactionStatus {
 	}
 
 
+	/**
+	 * 复用一个已回收的状态对象：按新事务重新初始化全部字段，
+	 * 并重置仅回滚标记、完成标记以及持有的保存点。
+	 */
+	void reinitialize(
+			@Nullable Object transaction, boolean newTransaction, boolean newSynchronization,
+			boolean readOnly, boolean debug, @Nullable Object suspendedResources) {
+
+		resetState();
+		this.transaction = transaction;
+		this.newTransaction = newTransaction;
+		this.newSynchronization = newSynchronization;
+		this.readOnly = readOnly;
+		this.debug = debug;
+		this.suspendedResources = suspendedResources;
+		this.recycled = false;
+		this.nextRecycled = null;
+		this.metricsDefinition = null;
+		this.trace = null;
+		this.deferredAfterCommit = null;
+		this.pendingAsyncCompletion = null;
+	}
+
+	/**
+	 * 事务完成后回收：释放对事务对象与挂起资源的引用，保持完成标记，
+	 * 以便后续误用（提交、回滚、标记仅回滚）能被检测出来。
+	 */
+	void recycle() {
+		this.transaction = null;
+		this.suspendedResources = null;
+		this.metricsDefinition = null;
+		this.trace = null;
+		this.deferredAfterCommit = null;
+		this.pendingAsyncCompletion = null;
+		this.recycled = true;
+	}
+
+	/**
+	 * Return whether this status has been recycled after completion,
+	 * i.e. must not be used by the caller anymore.
+	 *
+	 * @since 5.2
+	 * @see AbstractPlatformTransactionManager#setTransactionStatusRecycling
+	 */
+	public boolean isRecycled() {
+		return this.recycled;
+	}
+
+	/**
+	 * Return the timing breakdown of this transaction scope,
+	 * if sampled by the transaction manager's tracer.
+	 *
+	 * @since 5.2
+	 * @see AbstractPlatformTransactionManager#setTransactionTracer
+	 */
+	@Nullable
+	public TransactionTrace getTransactionTrace() {
+		return this.trace;
+	}
+
+	private void assertNotRecycled() {
+		if (this.recycled) {
+			throw new IllegalTransactionStateException(
+					"Transaction status has been recycled after completion - do not use it anymore");
+		}
+	}
+
+
 	/**
 	 * 返回基础事务对象。
 	 *
 	 * @throws IllegalStateException if no transaction is active
 	 */
 	public Object getTransaction() {
+		assertNotRecycled();
 		Assert.state(this.transaction != null, "No transaction active");
 		return this.transaction;
 	}
 
+	/**
+	 * 回收后的状态拒绝再次标记为仅回滚。
+	 *
+	 * @throws IllegalTransactionStateException if this status has been recycled
+	 */
+	@Override
+	public void setRollbackOnly() {
+		assertNotRecycled();
+		super.setRollbackOnly();
+	}
+
 	/**
 	 * Return whether there is an actual transaction active.
 	 */
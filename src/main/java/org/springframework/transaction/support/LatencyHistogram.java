@@ -0,0 +1,166 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.util.Assert;
+
+/**
+ * Lock-free histogram of nanosecond latencies with log-linear buckets:
+ * every power of two is split into {@value #SUB_BUCKETS} linear sub-buckets,
+ * bounding the relative error of reported values to about 6% while keeping
+ * a fixed footprint of less than 8 KB, in the style of an HDR histogram.
+ *
+ * @since 5.2
+ * @see DefaultTransactionMetrics
+ */
+public final class LatencyHistogram {
+
+	/** Number of linear sub-buckets per power of two. */
+	static final int SUB_BUCKETS = 16;
+
+	private static final int SUB_BUCKET_BITS = 4;
+
+	private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+	private final LongAdder totalCount = new LongAdder();
+
+	private final LongAdder totalNanos = new LongAdder();
+
+	private final AtomicLong maxNanos = new AtomicLong();
+
+
+	/**
+	 * Record the given latency.
+	 *
+	 * @param nanos the latency in nanoseconds (negative values count as 0)
+	 */
+	public void record(long nanos) {
+		long value = Math.max(nanos, 0);
+		this.counts.incrementAndGet(bucketIndex(value));
+		this.totalCount.increment();
+		this.totalNanos.add(value);
+		long max = this.maxNanos.get();
+		while (value > max && !this.maxNanos.compareAndSet(max, value)) {
+			max = this.maxNanos.get();
+		}
+	}
+
+	/**
+	 * Return the number of recorded values.
+	 */
+	public long getCount() {
+		return this.totalCount.sum();
+	}
+
+	/**
+	 * Return the mean of all recorded values, in the given unit.
+	 */
+	public double getMean(TimeUnit unit) {
+		long count = getCount();
+		return (count > 0 ? (double) this.totalNanos.sum() / count / unit.toNanos(1) : 0);
+	}
+
+	/**
+	 * Return the largest recorded value, in the given unit.
+	 */
+	public long getMax(TimeUnit unit) {
+		return unit.convert(this.maxNanos.get(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Return the value below which the given percentage of recorded values fall,
+	 * in the given unit, as the upper bound of the corresponding bucket.
+	 *
+	 * @param percentile the percentile between 0 and 100, e.g. 99.9
+	 * @param unit the unit to return the value in
+	 */
+	public long getValueAtPercentile(double percentile, TimeUnit unit) {
+		Assert.isTrue(percentile >= 0 && percentile <= 100, "Percentile must be between 0 and 100");
+		long total = 0;
+		long[] snapshot = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			snapshot[i] = this.counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long threshold = Math.max((long) Math.ceil(total * percentile / 100), 1);
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += snapshot[i];
+			if (seen >= threshold) {
+				long value = Math.min(bucketUpperBound(i), this.maxNanos.get());
+				return unit.convert(value, TimeUnit.NANOSECONDS);
+			}
+		}
+		return getMax(unit);
+	}
+
+	/**
+	 * Discard all recorded values.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			this.counts.set(i, 0);
+		}
+		this.totalCount.reset();
+		this.totalNanos.reset();
+		this.maxNanos.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + getCount() + ", mean=" + String.format("%.1f", getMean(TimeUnit.MICROSECONDS)) +
+				"us, p50=" + getValueAtPercentile(50, TimeUnit.MICROSECONDS) +
+				"us, p99=" + getValueAtPercentile(99, TimeUnit.MICROSECONDS) +
+				"us, max=" + getMax(TimeUnit.MICROSECONDS) + "us";
+	}
+
+
+	/**
+	 * Values below {@code SUB_BUCKETS} map linearly, larger ones to the sub-bucket
+	 * given by the bits following their highest one bit.
+	 */
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+		return (shift + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+}
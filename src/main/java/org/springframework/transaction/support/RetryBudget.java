@@ -0,0 +1,142 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.Assert;
+
+/**
+ * Limits retries to a fraction of the executions sharing the budget, so that
+ * retries cannot multiply the load while most executions fail, e.g. during
+ * a storm of lock contention.
+ *
+ * <p>Each execution deposits the {@link #getRetryRatio() retry ratio} into the
+ * budget, each retry withdraws one. The balance is capped at the
+ * {@link #getMaxRetries() maximum retries}, which the budget starts out with,
+ * allowing for bursts of retries after a quiet period. Thread-safe.
+ *
+ * @since 5.2
+ * @see TransactionRetryPolicy
+ */
+@SuppressWarnings("serial")
+public class RetryBudget implements Serializable {
+
+	/** Default maximum balance: 10 retries. */
+	public static final int DEFAULT_MAX_RETRIES = 10;
+
+	/** Balance units per retry, allowing for fractional deposits. */
+	private static final long UNITS_PER_RETRY = 1000;
+
+
+	private final double retryRatio;
+
+	private final int maxRetries;
+
+	private final long deposit;
+
+	private final long maxBalance;
+
+	private final AtomicLong balance;
+
+
+	/**
+	 * Create a new RetryBudget with the {@link #DEFAULT_MAX_RETRIES default maximum balance}.
+	 *
+	 * @param retryRatio the number of retries permitted per execution, e.g. 0.2
+	 */
+	public RetryBudget(double retryRatio) {
+		this(retryRatio, DEFAULT_MAX_RETRIES);
+	}
+
+	/**
+	 * Create a new RetryBudget.
+	 *
+	 * @param retryRatio the number of retries permitted per execution, e.g. 0.2
+	 * @param maxRetries the maximum balance, in retries
+	 */
+	public RetryBudget(double retryRatio, int maxRetries) {
+		Assert.isTrue(retryRatio >= 0, "Retry ratio must not be negative");
+		Assert.isTrue(maxRetries >= 0, "Max retries must not be negative");
+		this.retryRatio = retryRatio;
+		this.maxRetries = maxRetries;
+		this.deposit = Math.round(retryRatio * UNITS_PER_RETRY);
+		this.maxBalance = maxRetries * UNITS_PER_RETRY;
+		this.balance = new AtomicLong(this.maxBalance);
+	}
+
+
+	/**
+	 * Return the number of retries permitted per execution.
+	 */
+	public double getRetryRatio() {
+		return this.retryRatio;
+	}
+
+	/**
+	 * Return the maximum balance, in retries.
+	 */
+	public int getMaxRetries() {
+		return this.maxRetries;
+	}
+
+	/**
+	 * Return the number of retries currently available.
+	 */
+	public int getAvailableRetries() {
+		return (int) (this.balance.get() / UNITS_PER_RETRY);
+	}
+
+	/**
+	 * Deposit the share of an execution (not of its retries) into the budget.
+	 */
+	public void recordExecution() {
+		long current;
+		do {
+			current = this.balance.get();
+			if (current >= this.maxBalance) {
+				return;
+			}
+		}
+		while (!this.balance.compareAndSet(current, Math.min(current + this.deposit, this.maxBalance)));
+	}
+
+	/**
+	 * Withdraw a retry from the budget, if available.
+	 *
+	 * @return whether the retry is permitted
+	 */
+	public boolean tryAcquireRetry() {
+		long current;
+		do {
+			current = this.balance.get();
+			if (current < UNITS_PER_RETRY) {
+				return false;
+			}
+		}
+		while (!this.balance.compareAndSet(current, current - UNITS_PER_RETRY));
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "RetryBudget: ratio " + this.retryRatio + ", " + getAvailableRetries() + " of " +
+				this.maxRetries + " retries available";
+	}
+
+}
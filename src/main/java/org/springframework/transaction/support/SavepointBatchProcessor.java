@@ -0,0 +1,197 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.util.Assert;
+
+/**
+ * Processes many items within one transaction such that a failing item only
+ * rolls back its own work, as if each item ran under a savepoint of its own.
+ *
+ * <p>Since savepoints are expensive on some databases, the processor shares a
+ * savepoint between several items: up to the {@link #setMaxItemsPerSavepoint
+ * maximum items per savepoint}. If an item's callback throws a RuntimeException,
+ * the processor rolls back to the savepoint, records the item as failed and
+ * processes the other items of the savepoint again, halving the number of items
+ * per savepoint. Each group of items processed successfully doubles it again, up
+ * to the maximum, so that savepoints are only fine-grained around failing items.
+ * Item callbacks may therefore be invoked more than once per item.
+ *
+ * <p>The transaction gets {@linkplain TransactionStatus#flush() flushed} before
+ * releasing each savepoint, so that failures deferred until flush, e.g. with
+ * JPA, still surface under the savepoint. A failing flush of several items
+ * processes them again with half as many items per savepoint, until a single
+ * item's flush fails, recording that item as failed.
+ *
+ * <p>Requires a transaction that supports savepoints, see
+ * {@link org.springframework.transaction.SavepointManager}.
+ *
+ * @since 5.2
+ * @see TransactionOperations#executeWithSavepoints
+ * @see TransactionStatus#createSavepoint()
+ */
+public class SavepointBatchProcessor {
+
+	/** Default maximum number of items sharing a savepoint: 32. */
+	public static final int DEFAULT_MAX_ITEMS_PER_SAVEPOINT = 32;
+
+
+	private int maxItemsPerSavepoint = DEFAULT_MAX_ITEMS_PER_SAVEPOINT;
+
+
+	/**
+	 * Set the maximum number of items sharing a savepoint. A value of 1 creates
+	 * a savepoint per item. Default is {@link #DEFAULT_MAX_ITEMS_PER_SAVEPOINT}.
+	 */
+	public void setMaxItemsPerSavepoint(int maxItemsPerSavepoint) {
+		Assert.isTrue(maxItemsPerSavepoint > 0, "Max items per savepoint must be positive");
+		this.maxItemsPerSavepoint = maxItemsPerSavepoint;
+	}
+
+	/**
+	 * Return the maximum number of items sharing a savepoint.
+	 */
+	public int getMaxItemsPerSavepoint() {
+		return this.maxItemsPerSavepoint;
+	}
+
+
+	/**
+	 * Process the given items within the given transaction.
+	 *
+	 * @param status the transaction to process the items in
+	 * @param items  the items to process, consumed lazily
+	 * @param action the callback processing a single item
+	 * @return the outcome of the processing, including the failed items
+	 * @throws org.springframework.transaction.NestedTransactionNotSupportedException
+	 *                              if the transaction does not support savepoints
+	 * @throws TransactionException in case of savepoint errors
+	 */
+	public <T> BatchResult<T> process(TransactionStatus status, Iterable<? extends T> items,
+			TransactionItemCallback<? super T> action) throws TransactionException {
+
+		BatchResult<T> result = new BatchResult<>();
+		Iterator<? extends T> iterator = items.iterator();
+		// Items to process again after a failure, ahead of the remaining ones
+		Deque<T> retry = new ArrayDeque<>();
+		List<T> group = new ArrayList<>();
+		int groupSize = this.maxItemsPerSavepoint;
+		while (!retry.isEmpty() || iterator.hasNext()) {
+			group.clear();
+			while (group.size() < groupSize && !retry.isEmpty()) {
+				group.add(retry.poll());
+			}
+			while (group.size() < groupSize && iterator.hasNext()) {
+				group.add(iterator.next());
+			}
+			Object savepoint = status.createSavepoint();
+			result.savepoints++;
+			int index = 0;
+			try {
+				for (; index < group.size(); index++) {
+					action.doInTransaction(group.get(index), status);
+				}
+				status.flush();
+			} catch (RuntimeException ex) {
+				status.rollbackToSavepoint(savepoint);
+				status.releaseSavepoint(savepoint);
+				if (index == group.size()) {
+					// Flush failure: cannot tell which item caused it unless on its own
+					if (group.size() > 1) {
+						for (int i = group.size() - 1; i >= 0; i--) {
+							retry.addFirst(group.get(i));
+						}
+						groupSize = Math.max(group.size() / 2, 1);
+						continue;
+					}
+					index = 0;
+				}
+				result.failedItems.add(new ChunkedTransactionTemplate.FailedItem<>(group.get(index), ex));
+				for (int i = group.size() - 1; i >= 0; i--) {
+					if (i != index) {
+						retry.addFirst(group.get(i));
+					}
+				}
+				groupSize = Math.max(groupSize / 2, 1);
+				continue;
+			}
+			status.releaseSavepoint(savepoint);
+			result.processedItems += group.size();
+			groupSize = Math.min(groupSize * 2, this.maxItemsPerSavepoint);
+		}
+		return result;
+	}
+
+
+	/**
+	 * Outcome of {@link #process}.
+	 *
+	 * @param <T> the item type
+	 */
+	public static final class BatchResult<T> {
+
+		private long processedItems;
+
+		private int savepoints;
+
+		private final List<ChunkedTransactionTemplate.FailedItem<T>> failedItems = new ArrayList<>();
+
+		/**
+		 * Return the number of items processed successfully.
+		 */
+		public long getProcessedItemCount() {
+			return this.processedItems;
+		}
+
+		/**
+		 * Return the number of savepoints created.
+		 */
+		public int getSavepointCount() {
+			return this.savepoints;
+		}
+
+		/**
+		 * Return whether any item failed.
+		 */
+		public boolean hasFailures() {
+			return !this.failedItems.isEmpty();
+		}
+
+		/**
+		 * Return the failed items, in the order of their failure.
+		 */
+		public List<ChunkedTransactionTemplate.FailedItem<T>> getFailedItems() {
+			return Collections.unmodifiableList(this.failedItems);
+		}
+
+		@Override
+		public String toString() {
+			return "BatchResult: " + this.processedItems + " items processed under " + this.savepoints +
+					" savepoints, " + this.failedItems.size() + " items failed";
+		}
+	}
+
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+/**
+ * Marker interface for resources bound to the current transaction that may be
+ * used concurrently by the parent thread and by child tasks attached through a
+ * {@link TransactionContextSnapshot}, e.g. a thread-safe client for a read replica.
+ *
+ * <p>Typical resource holders such as JDBC connection holders or JPA entity
+ * manager holders are not thread-safe and therefore must not implement this
+ * interface; they are not visible to attached children, which obtain their
+ * own resources instead.
+ *
+ * @since 5.2
+ * @see TransactionSynchronizationManager#createReadOnlySnapshot()
+ */
+public interface SharedResourceHolder {
+
+}
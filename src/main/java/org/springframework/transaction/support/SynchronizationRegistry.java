@@ -0,0 +1,216 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ConcurrentReferenceHashMap;
+
+/**
+ * Ordered, de-duplicated registry of the {@link TransactionSynchronization}
+ * objects registered for the current transaction.
+ *
+ * <p>Synchronizations are placed at their sorted position when registered,
+ * according to {@link AnnotationAwareOrderComparator}, with synchronizations
+ * of equal order kept in registration order. {@link #getSnapshot()} returns
+ * an unmodifiable copy that is cached until the next registration, so that
+ * the repeated callback triggering during a single commit does not copy and
+ * re-sort the synchronizations every time.
+ *
+ * <p>Suspension and resumption only call back synchronizations that implement
+ * {@link TransactionSynchronization#suspend()} or {@link TransactionSynchronization#resume()},
+ * as determined once per synchronization class.
+ *
+ * <p>Note that the order of a synchronization is determined once, on
+ * registration. Not thread-safe: instances are confined to their owning thread.
+ *
+ * @since 5.2
+ * @see TransactionSynchronizationManager#registerSynchronization
+ * @see TransactionSynchronizationManager#getSynchronizations
+ */
+final class SynchronizationRegistry {
+
+	/**
+	 * Number of synchronizations up to which duplicates are detected through
+	 * a linear scan, before switching to a hash-based lookup.
+	 */
+	private static final int LINEAR_SCAN_THRESHOLD = 8;
+
+	/**
+	 * Whether synchronization classes implement the suspend or resume callback.
+	 */
+	private static final Map<Class<?>, Boolean> suspendCallbackCache = new ConcurrentReferenceHashMap<>(64);
+
+
+	private final List<TransactionSynchronization> synchronizations = new ArrayList<>();
+
+	@Nullable
+	private Set<TransactionSynchronization> index;
+
+	@Nullable
+	private List<TransactionSynchronization> snapshot;
+
+	private int suspendAwareCount;
+
+
+	/**
+	 * Register the given synchronization at its sorted position,
+	 * unless an equal synchronization has been registered before.
+	 *
+	 * @param synchronization the synchronization to register
+	 * @return {@code true} if the synchronization has been added,
+	 * {@code false} if it was already registered
+	 */
+	boolean add(TransactionSynchronization synchronization) {
+		if (contains(synchronization)) {
+			return false;
+		}
+		List<TransactionSynchronization> synchs = this.synchronizations;
+		int size = synchs.size();
+		if (size == 0 || AnnotationAwareOrderComparator.INSTANCE.compare(synchs.get(size - 1), synchronization) <= 0) {
+			// Common case: same or higher order value than all others -> simply append.
+			synchs.add(synchronization);
+		}
+		else {
+			synchs.add(insertionPoint(synchronization), synchronization);
+		}
+		if (hasSuspendCallbacks(synchronization.getClass())) {
+			this.suspendAwareCount++;
+		}
+		if (this.index != null) {
+			this.index.add(synchronization);
+		}
+		else if (synchs.size() > LINEAR_SCAN_THRESHOLD) {
+			this.index = new HashSet<>(synchs);
+		}
+		this.snapshot = null;
+		return true;
+	}
+
+	/**
+	 * Return whether the registry contains no synchronizations.
+	 */
+	boolean isEmpty() {
+		return this.synchronizations.isEmpty();
+	}
+
+	/**
+	 * Return the number of registered synchronizations.
+	 */
+	int size() {
+		return this.synchronizations.size();
+	}
+
+	/**
+	 * Return an unmodifiable snapshot of the registered synchronizations in
+	 * their sorted order. The same instance is returned until the registry
+	 * is modified, so callers must not rely on it reflecting later registrations.
+	 */
+	List<TransactionSynchronization> getSnapshot() {
+		List<TransactionSynchronization> snapshot = this.snapshot;
+		if (snapshot == null) {
+			snapshot = (this.synchronizations.isEmpty() ? Collections.emptyList() :
+					Collections.unmodifiableList(new ArrayList<>(this.synchronizations)));
+			this.snapshot = snapshot;
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Invoke {@link TransactionSynchronization#suspend()} on the synchronizations
+	 * implementing it, in their sorted order.
+	 */
+	void suspendSynchronizations() {
+		if (this.suspendAwareCount > 0) {
+			for (TransactionSynchronization synchronization : getSnapshot()) {
+				if (hasSuspendCallbacks(synchronization.getClass())) {
+					synchronization.suspend();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Invoke {@link TransactionSynchronization#resume()} on the synchronizations
+	 * implementing it, in their sorted order.
+	 */
+	void resumeSynchronizations() {
+		if (this.suspendAwareCount > 0) {
+			for (TransactionSynchronization synchronization : getSnapshot()) {
+				if (hasSuspendCallbacks(synchronization.getClass())) {
+					synchronization.resume();
+				}
+			}
+		}
+	}
+
+	private boolean contains(TransactionSynchronization synchronization) {
+		if (this.index != null) {
+			return this.index.contains(synchronization);
+		}
+		return this.synchronizations.contains(synchronization);
+	}
+
+	/**
+	 * Determine the index after the last synchronization with the same
+	 * or a lower order value than the given one, keeping equal-order
+	 * synchronizations in registration order.
+	 */
+	private int insertionPoint(TransactionSynchronization synchronization) {
+		List<TransactionSynchronization> synchs = this.synchronizations;
+		int low = 0;
+		int high = synchs.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (AnnotationAwareOrderComparator.INSTANCE.compare(synchs.get(mid), synchronization) <= 0) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Determine whether the given synchronization class implements
+	 * the suspend or resume callback, rather than inheriting a no-op.
+	 */
+	static boolean hasSuspendCallbacks(Class<?> synchronizationClass) {
+		Boolean result = suspendCallbackCache.get(synchronizationClass);
+		if (result == null) {
+			result = (isImplemented(synchronizationClass, "suspend") || isImplemented(synchronizationClass, "resume"));
+			suspendCallbackCache.put(synchronizationClass, result);
+		}
+		return result;
+	}
+
+	private static boolean isImplemented(Class<?> synchronizationClass, String methodName) {
+		Class<?> declaringClass = ClassUtils.getMethod(synchronizationClass, methodName).getDeclaringClass();
+		return (declaringClass != TransactionSynchronization.class &&
+				declaringClass != TransactionSynchronizationAdapter.class);
+	}
+
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.core.Ordered;
+import org.springframework.util.Assert;
+
+/**
+ * Times every {@link TransactionSynchronization} callback invoked through
+ * {@link TransactionSynchronizationUtils}, logging callbacks that exceed
+ * a configurable threshold and aggregating statistics per synchronization
+ * class, order and callback, in order to find the callbacks that inflate
+ * commit latency.
+ *
+ * <p>Activated through {@link TransactionSynchronizationUtils#setTimingMonitor}
+ * for all transaction managers in the class loader.
+ *
+ * @since 5.2
+ * @see TransactionSynchronizationUtils#setTimingMonitor
+ */
+public class SynchronizationTimingMonitor {
+
+	/** Default threshold for slow callbacks: 100 milliseconds. */
+	public static final long DEFAULT_THRESHOLD_MILLIS = 100;
+
+
+	/**
+	 * The synchronization callbacks that get timed.
+	 */
+	public enum Callback {
+
+		BEFORE_COMMIT, BEFORE_COMPLETION, AFTER_COMMIT, AFTER_COMPLETION
+	}
+
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	/** Thresholds per callback ordinal, replaced as a whole on change. */
+	private volatile long[] thresholdNanos = new long[Callback.values().length];
+
+	private final Map<Key, CallbackStats> stats = new ConcurrentHashMap<>(64);
+
+
+	/**
+	 * Create a new monitor with the {@link #DEFAULT_THRESHOLD_MILLIS default threshold}.
+	 */
+	public SynchronizationTimingMonitor() {
+		setThreshold(DEFAULT_THRESHOLD_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+
+	/**
+	 * Set the threshold above which callbacks get logged as slow, for all callbacks.
+	 */
+	public void setThreshold(long threshold, TimeUnit unit) {
+		for (Callback callback : Callback.values()) {
+			setThreshold(callback, threshold, unit);
+		}
+	}
+
+	/**
+	 * Set the threshold above which the given callback gets logged as slow.
+	 */
+	public synchronized void setThreshold(Callback callback, long threshold, TimeUnit unit) {
+		Assert.isTrue(threshold >= 0, "Threshold must not be negative");
+		long[] thresholds = this.thresholdNanos.clone();
+		thresholds[callback.ordinal()] = unit.toNanos(threshold);
+		this.thresholdNanos = thresholds;
+	}
+
+	/**
+	 * Return the threshold above which the given callback gets logged as slow.
+	 */
+	public long getThreshold(Callback callback, TimeUnit unit) {
+		return unit.convert(this.thresholdNanos[callback.ordinal()], TimeUnit.NANOSECONDS);
+	}
+
+
+	/**
+	 * Record an invocation of the given callback.
+	 *
+	 * @param synchronization the synchronization invoked
+	 * @param callback the callback invoked
+	 * @param nanos the time taken by the callback
+	 */
+	public void record(TransactionSynchronization synchronization, Callback callback, long nanos) {
+		int order = (synchronization instanceof Ordered ?
+				((Ordered) synchronization).getOrder() : Ordered.LOWEST_PRECEDENCE);
+		Key key = new Key(synchronization.getClass().getName(), order, callback);
+		CallbackStats callbackStats = this.stats.computeIfAbsent(key, CallbackStats::new);
+		callbackStats.record(nanos);
+		long threshold = this.thresholdNanos[callback.ordinal()];
+		if (nanos > threshold) {
+			callbackStats.slowCount.increment();
+			onSlowCallback(synchronization, key, nanos, threshold);
+		}
+	}
+
+	/**
+	 * Handle a callback that exceeded its threshold.
+	 * <p>The default implementation logs a warning.
+	 *
+	 * @param synchronization the synchronization invoked
+	 * @param key the attribution of the callback
+	 * @param nanos the time taken by the callback
+	 * @param thresholdNanos the threshold exceeded
+	 */
+	protected void onSlowCallback(TransactionSynchronization synchronization, Key key, long nanos, long thresholdNanos) {
+		if (logger.isWarnEnabled()) {
+			logger.warn("Slow TransactionSynchronization callback " + key + " took " +
+					TimeUnit.NANOSECONDS.toMillis(nanos) + " ms (threshold " +
+					TimeUnit.NANOSECONDS.toMillis(thresholdNanos) + " ms): " + synchronization);
+		}
+	}
+
+	/**
+	 * Return the statistics of all callbacks recorded so far,
+	 * sorted by total time in descending order.
+	 */
+	public List<CallbackStats> getReport() {
+		List<CallbackStats> report = new ArrayList<>(this.stats.values());
+		report.sort(Comparator.comparingLong(CallbackStats::getTotalNanos).reversed());
+		return report;
+	}
+
+	/**
+	 * Discard all statistics recorded so far.
+	 */
+	public void reset() {
+		this.stats.clear();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("SynchronizationTimingMonitor report:");
+		for (CallbackStats callbackStats : getReport()) {
+			sb.append("\n  ").append(callbackStats);
+		}
+		return sb.toString();
+	}
+
+
+	/**
+	 * Attribution of a callback: synchronization class, order and callback.
+	 */
+	public static final class Key {
+
+		private final String synchronizationClassName;
+
+		private final int order;
+
+		private final Callback callback;
+
+		Key(String synchronizationClassName, int order, Callback callback) {
+			this.synchronizationClassName = synchronizationClassName;
+			this.order = order;
+			this.callback = callback;
+		}
+
+		public String getSynchronizationClassName() {
+			return this.synchronizationClassName;
+		}
+
+		public int getOrder() {
+			return this.order;
+		}
+
+		public Callback getCallback() {
+			return this.callback;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key otherKey = (Key) other;
+			return (this.synchronizationClassName.equals(otherKey.synchronizationClassName) &&
+					this.order == otherKey.order && this.callback == otherKey.callback);
+		}
+
+		@Override
+		public int hashCode() {
+			return (this.synchronizationClassName.hashCode() * 31 + this.order) * 31 + this.callback.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return this.callback.name().toLowerCase() + " of " + this.synchronizationClassName +
+					" (order " + this.order + ")";
+		}
+	}
+
+
+	/**
+	 * Aggregated statistics of a callback.
+	 */
+	public static final class CallbackStats {
+
+		private final Key key;
+
+		private final LongAdder count = new LongAdder();
+
+		private final LongAdder totalNanos = new LongAdder();
+
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		private final LongAdder slowCount = new LongAdder();
+
+		CallbackStats(Key key) {
+			this.key = key;
+		}
+
+		void record(long nanos) {
+			this.count.increment();
+			this.totalNanos.add(nanos);
+			long max = this.maxNanos.get();
+			while (nanos > max && !this.maxNanos.compareAndSet(max, nanos)) {
+				max = this.maxNanos.get();
+			}
+		}
+
+		public Key getKey() {
+			return this.key;
+		}
+
+		public long getCount() {
+			return this.count.sum();
+		}
+
+		public long getTotalNanos() {
+			return this.totalNanos.sum();
+		}
+
+		public long getMaxNanos() {
+			return this.maxNanos.get();
+		}
+
+		/**
+		 * Return the number of invocations that exceeded the threshold.
+		 */
+		public long getSlowCount() {
+			return this.slowCount.sum();
+		}
+
+		@Override
+		public String toString() {
+			long count = getCount();
+			return this.key + ": count=" + count + ", total=" + TimeUnit.NANOSECONDS.toMillis(getTotalNanos()) +
+					" ms, mean=" + (count > 0 ? TimeUnit.NANOSECONDS.toMicros(getTotalNanos() / count) : 0) +
+					" us, max=" + TimeUnit.NANOSECONDS.toMillis(getMaxNanos()) + " ms, slow=" + getSlowCount();
+		}
+	}
+
+}
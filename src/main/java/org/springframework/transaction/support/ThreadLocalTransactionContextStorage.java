@@ -0,0 +1,54 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import org.springframework.core.NamedThreadLocal;
+import org.springframework.lang.Nullable;
+
+/**
+ * Default {@link TransactionContextStorage}, keeping the context in a
+ * non-inheritable thread-local variable.
+ *
+ * <p>Child threads never see the context of their parent implicitly;
+ * use a {@link TransactionContextSnapshot} for explicit propagation.
+ *
+ * @since 5.2
+ * @see TransactionSynchronizationManager#setContextStorage
+ */
+public class ThreadLocalTransactionContextStorage implements TransactionContextStorage {
+
+	private final ThreadLocal<TransactionContext> transactionContext =
+			new NamedThreadLocal<>("Transaction context");
+
+
+	@Override
+	@Nullable
+	public TransactionContext getContext() {
+		return this.transactionContext.get();
+	}
+
+	@Override
+	public void setContext(TransactionContext context) {
+		this.transactionContext.set(context);
+	}
+
+	@Override
+	public void removeContext() {
+		this.transactionContext.remove();
+	}
+
+}
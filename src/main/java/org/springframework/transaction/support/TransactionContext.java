@@ -0,0 +1,182 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+/**
+ * Mutable holder for all transaction state associated with a single thread:
+ * bound resources, registered synchronizations and the characteristics of
+ * the current transaction.
+ *
+ * <p>Kept in one slot of the configured {@link TransactionContextStorage} by
+ * {@link TransactionSynchronizationManager}, so that transaction begin and
+ * cleanup cost a single lookup instead of one per characteristic.
+ * Opaque to code outside of this package: storage strategies merely hold
+ * on to instances, and only the synchronization manager creates them.
+ *
+ * @since 5.2
+ * @see TransactionSynchronizationManager
+ * @see TransactionContextStorage
+ */
+public final class TransactionContext {
+
+	/**
+	 * Maximum number of recycled status objects kept per thread.
+	 */
+	static final int MAX_RECYCLED_STATUSES = 8;
+
+
+	final TransactionResourceMap resources = new TransactionResourceMap();
+
+	@Nullable
+	SynchronizationRegistry synchronizations;
+
+	@Nullable
+	String currentTransactionName;
+
+	boolean currentTransactionReadOnly;
+
+	@Nullable
+	Integer currentTransactionIsolationLevel;
+
+	boolean actualTransactionActive;
+
+	/**
+	 * Number of transactions currently suspended on this thread, as tracked for
+	 * {@link TransactionMetricsRecorder metrics}. Survives {@link #clear()}.
+	 */
+	int suspendDepth;
+
+	@Nullable
+	private DefaultTransactionStatus recycledStatuses;
+
+	private int recycledStatusCount;
+
+
+	TransactionContext() {
+	}
+
+
+	/**
+	 * Detach the synchronization state and transaction characteristics,
+	 * leaving this context without active synchronization. Bound resources
+	 * remain in place.
+	 */
+	SuspendedState detach() {
+		SynchronizationRegistry synchronizations = this.synchronizations;
+		Assert.state(synchronizations != null, "Transaction synchronization is not active");
+		SuspendedState state = new SuspendedState(synchronizations, this.currentTransactionName,
+				this.currentTransactionReadOnly, this.currentTransactionIsolationLevel, this.actualTransactionActive);
+		clear();
+		return state;
+	}
+
+	/**
+	 * Re-attach synchronization state and transaction characteristics
+	 * detached before.
+	 */
+	void attach(SuspendedState state) {
+		this.synchronizations = state.synchronizations;
+		this.currentTransactionName = state.currentTransactionName;
+		this.currentTransactionReadOnly = state.currentTransactionReadOnly;
+		this.currentTransactionIsolationLevel = state.currentTransactionIsolationLevel;
+		this.actualTransactionActive = state.actualTransactionActive;
+	}
+
+
+	/**
+	 * Reset the synchronization state and transaction characteristics,
+	 * keeping bound resources untouched. The resource map itself is never
+	 * released, so that it can be reused for subsequent transactions.
+	 */
+	void clear() {
+		this.synchronizations = null;
+		this.currentTransactionName = null;
+		this.currentTransactionReadOnly = false;
+		this.currentTransactionIsolationLevel = null;
+		this.actualTransactionActive = false;
+	}
+
+	/**
+	 * Take a recycled status object from the free list of this thread, if any.
+	 */
+	@Nullable
+	DefaultTransactionStatus pollRecycledStatus() {
+		DefaultTransactionStatus status = this.recycledStatuses;
+		if (status != null) {
+			this.recycledStatuses = status.nextRecycled;
+			this.recycledStatusCount--;
+			status.nextRecycled = null;
+		}
+		return status;
+	}
+
+	/**
+	 * Return the given completed status object to the free list of this thread,
+	 * unless the free list is full already.
+	 */
+	void recycleStatus(DefaultTransactionStatus status) {
+		status.recycle();
+		if (this.recycledStatusCount < MAX_RECYCLED_STATUSES) {
+			status.nextRecycled = this.recycledStatuses;
+			this.recycledStatuses = status;
+			this.recycledStatusCount++;
+		}
+	}
+
+	/**
+	 * Drop all recycled status objects held by this thread.
+	 */
+	void clearRecycledStatuses() {
+		this.recycledStatuses = null;
+		this.recycledStatusCount = 0;
+	}
+
+
+	/**
+	 * Synchronization state and transaction characteristics of a suspended
+	 * transaction, moved out of the context as a whole.
+	 */
+	static final class SuspendedState {
+
+		final SynchronizationRegistry synchronizations;
+
+		@Nullable
+		final String currentTransactionName;
+
+		final boolean currentTransactionReadOnly;
+
+		@Nullable
+		final Integer currentTransactionIsolationLevel;
+
+		final boolean actualTransactionActive;
+
+		SuspendedState(SynchronizationRegistry synchronizations, @Nullable String currentTransactionName,
+				boolean currentTransactionReadOnly, @Nullable Integer currentTransactionIsolationLevel,
+				boolean actualTransactionActive) {
+
+			this.synchronizations = synchronizations;
+			this.currentTransactionName = currentTransactionName;
+			this.currentTransactionReadOnly = currentTransactionReadOnly;
+			this.currentTransactionIsolationLevel = currentTransactionIsolationLevel;
+			this.actualTransactionActive = actualTransactionActive;
+		}
+	}
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Immutable snapshot of the resources and characteristics of a read-only
+ * transaction, for explicitly attaching them to child tasks running on other
+ * threads, e.g. for fanning out parallel reads within the same transaction
+ * against shared resources such as a thread-safe replica client.
+ *
+ * <p>Obtained via {@link TransactionSynchronizationManager#createReadOnlySnapshot()}.
+ * An attached child sees the bound resources of the parent transaction and
+ * reports it as read-only, but does not get transaction synchronization: child
+ * tasks can neither register synchronizations nor complete the transaction,
+ * which remains under the control of the parent. Child tasks need to finish
+ * before the parent transaction completes; the snapshot is invalidated on
+ * completion, rejecting any further {@link #attach()} calls.
+ *
+ * <p>Only resources implementing {@link SharedResourceHolder} are shared with
+ * attached children. Any other resources bound to the parent transaction, e.g.
+ * a JDBC connection holder, are left out of the snapshot, so that attached
+ * children obtain their own connections for their reads.
+ *
+ * @since 5.2
+ * @see TransactionSynchronizationManager#createReadOnlySnapshot()
+ */
+public final class TransactionContextSnapshot {
+
+	private final List<Map.Entry<Object, Object>> resources;
+
+	@Nullable
+	private final String transactionName;
+
+	@Nullable
+	private final Integer isolationLevel;
+
+	private final boolean actualTransactionActive;
+
+	private volatile boolean valid = true;
+
+
+	TransactionContextSnapshot(TransactionContext context) {
+		this.resources = new ArrayList<>(context.resources.size());
+		for (Map.Entry<Object, Object> entry : context.resources.entrySet()) {
+			if (entry.getValue() instanceof SharedResourceHolder) {
+				this.resources.add(entry);
+			}
+		}
+		this.transactionName = context.currentTransactionName;
+		this.isolationLevel = context.currentTransactionIsolationLevel;
+		this.actualTransactionActive = context.actualTransactionActive;
+	}
+
+
+	/**
+	 * Return whether the originating transaction is still in progress.
+	 */
+	public boolean isValid() {
+		return this.valid;
+	}
+
+	/**
+	 * Attach this snapshot to the current thread, replacing its transaction
+	 * context until the returned scope is closed.
+	 *
+	 * @return the scope to close once the child task has finished
+	 * @throws IllegalStateException if the originating transaction has completed
+	 * already, or if the current thread has active transaction synchronization
+	 */
+	public Scope attach() throws IllegalStateException {
+		if (!this.valid) {
+			throw new IllegalStateException(
+					"Originating transaction [" + this.transactionName + "] has completed already");
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			throw new IllegalStateException(
+					"Cannot attach transaction snapshot - transaction synchronization already active");
+		}
+		TransactionContext context = new TransactionContext();
+		for (Map.Entry<Object, Object> entry : this.resources) {
+			context.resources.put(entry.getKey(), entry.getValue());
+		}
+		context.currentTransactionName = this.transactionName;
+		context.currentTransactionReadOnly = true;
+		context.currentTransactionIsolationLevel = this.isolationLevel;
+		context.actualTransactionActive = this.actualTransactionActive;
+		TransactionContext previous = TransactionSynchronizationManager.exchangeContext(context);
+		return new Scope(context, previous);
+	}
+
+	/**
+	 * Wrap the given task so that it runs with this snapshot attached.
+	 *
+	 * @param task the task to wrap
+	 * @return the wrapped task
+	 */
+	public Runnable wrap(Runnable task) {
+		return () -> {
+			Scope scope = attach();
+			try {
+				task.run();
+			}
+			finally {
+				scope.close();
+			}
+		};
+	}
+
+	/**
+	 * Wrap the given task so that it runs with this snapshot attached.
+	 *
+	 * @param task the task to wrap
+	 * @return the wrapped task
+	 */
+	public <V> Callable<V> wrap(Callable<V> task) {
+		return () -> {
+			Scope scope = attach();
+			try {
+				return task.call();
+			}
+			finally {
+				scope.close();
+			}
+		};
+	}
+
+	/**
+	 * Return a synchronization that invalidates this snapshot
+	 * on completion of the originating transaction.
+	 */
+	TransactionSynchronization invalidationSynchronization() {
+		return new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCompletion(int status) {
+				valid = false;
+			}
+		};
+	}
+
+
+	/**
+	 * Scope of an attached snapshot, restoring the previous transaction
+	 * context of the thread when closed.
+	 */
+	public static final class Scope implements AutoCloseable {
+
+		private final TransactionContext context;
+
+		@Nullable
+		private final TransactionContext previous;
+
+		private boolean closed;
+
+		private Scope(TransactionContext context, @Nullable TransactionContext previous) {
+			this.context = context;
+			this.previous = previous;
+		}
+
+		/**
+		 * Detach the snapshot from the current thread.
+		 *
+		 * @throws IllegalStateException if called from a different thread
+		 * or with another transaction context installed in the meantime
+		 */
+		@Override
+		public void close() throws IllegalStateException {
+			if (this.closed) {
+				return;
+			}
+			TransactionContext current = TransactionSynchronizationManager.exchangeContext(this.previous);
+			if (current != this.context) {
+				TransactionSynchronizationManager.exchangeContext(current);
+				throw new IllegalStateException("Attached transaction snapshot is not current - " +
+						"scopes need to be closed on the attaching thread, in reverse order");
+			}
+			this.closed = true;
+		}
+	}
+
+}
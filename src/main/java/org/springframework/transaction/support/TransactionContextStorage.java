@@ -0,0 +1,63 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Strategy for storing the {@link TransactionContext} of the current unit of
+ * execution on behalf of {@link TransactionSynchronizationManager}.
+ *
+ * <p>The default {@link ThreadLocalTransactionContextStorage} associates the
+ * context with the current thread, which applies to platform threads as well as
+ * virtual threads. Alternative strategies may bind the context to an explicit
+ * carrier, e.g. a scoped value bound around a unit of work, as long as the
+ * context returned from {@link #getContext()} is only ever accessed by one
+ * thread at a time.
+ *
+ * <p>To be installed once on startup via
+ * {@link TransactionSynchronizationManager#setContextStorage}, before any
+ * transaction has been started.
+ *
+ * @since 5.2
+ * @see TransactionSynchronizationManager#setContextStorage
+ * @see TransactionContextSnapshot
+ */
+public interface TransactionContextStorage {
+
+	/**
+	 * Return the context for the current unit of execution, if any.
+	 *
+	 * @return the current context, or {@code null} if none has been set
+	 */
+	@Nullable
+	TransactionContext getContext();
+
+	/**
+	 * Associate the given context with the current unit of execution,
+	 * replacing any previous one.
+	 *
+	 * @param context the context to store
+	 */
+	void setContext(TransactionContext context);
+
+	/**
+	 * Remove the context from the current unit of execution.
+	 */
+	void removeContext();
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import org.springframework.transaction.TransactionStatus;
+
+/**
+ * Callback interface for processing a single item of a bulk operation within
+ * a transaction shared with other items. Used with
+ * {@link ChunkedTransactionTemplate#executeInChunks} and
+ * {@link SavepointBatchProcessor#process}.
+ *
+ * @since 5.2
+ * @see ChunkedTransactionTemplate
+ * @see SavepointBatchProcessor
+ * @param <T> the item type
+ */
+@FunctionalInterface
+public interface TransactionItemCallback<T> {
+
+	/**
+	 * Gets called for each item within a transactional context, possibly more
+	 * than once per item: after a failure of other items of the same transaction,
+	 * the remaining items get processed again.
+	 * <p>A RuntimeException thrown by the callback marks the item as failed,
+	 * without affecting the processing of the other items. Errors get propagated
+	 * to the caller of the template, rolling back the current transaction.
+	 *
+	 * @param item   the item to process
+	 * @param status associated transaction status
+	 */
+	void doInTransaction(T item, TransactionStatus status);
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import org.springframework.transaction.TransactionDefinition;
+
+/**
+ * Callback interface for recording the lifecycle of transactions driven by
+ * an {@link AbstractPlatformTransactionManager}: begin, completion with its
+ * outcome and duration, as well as suspension and resumption.
+ *
+ * <p>Called on the transaction's thread, within the transaction manager's
+ * hot path: implementations need to be thread-safe and cheap, e.g. updating
+ * lock-free counters only. Exceptions thrown by a recorder are propagated.
+ *
+ * @since 5.2
+ * @see AbstractPlatformTransactionManager#setMetricsRecorder
+ * @see DefaultTransactionMetrics
+ */
+public interface TransactionMetricsRecorder {
+
+	/**
+	 * Record a transaction scope that has been started through
+	 * {@code getTransaction}, either as a new transaction or
+	 * participating in an existing one.
+	 *
+	 * @param definition the definition of the scope
+	 * @param newTransaction whether a new physical transaction has been begun
+	 * @param beginNanos the time spent in {@code getTransaction}
+	 */
+	void transactionBegun(TransactionDefinition definition, boolean newTransaction, long beginNanos);
+
+	/**
+	 * Record a failure to start a transaction scope.
+	 *
+	 * @param definition the definition of the scope
+	 * @param ex the exception thrown by {@code getTransaction}
+	 */
+	void transactionBeginFailed(TransactionDefinition definition, Throwable ex);
+
+	/**
+	 * Record the completion of a transaction scope through {@code commit}
+	 * or {@code rollback}.
+	 *
+	 * @param definition the definition of the scope
+	 * @param newTransaction whether the scope had begun a new physical transaction
+	 * @param outcome the outcome of the completion
+	 * @param durationNanos the time since the start of {@code getTransaction}
+	 */
+	void transactionCompleted(TransactionDefinition definition, boolean newTransaction,
+			Outcome outcome, long durationNanos);
+
+	/**
+	 * Record the suspension of the current transaction or synchronization.
+	 *
+	 * @param depth the number of suspended transactions on the current thread,
+	 * including this one
+	 */
+	void transactionSuspended(int depth);
+
+	/**
+	 * Record the resumption of a previously suspended transaction or synchronization.
+	 *
+	 * @param depth the number of suspended transactions remaining on the current thread
+	 */
+	void transactionResumed(int depth);
+
+
+	/**
+	 * Outcome of a completed transaction scope.
+	 */
+	enum Outcome {
+
+		/**
+		 * Committed, or completed as a participant of a transaction that may commit.
+		 */
+		COMMITTED,
+
+		/**
+		 * Rolled back, or marked the transaction it participates in as rollback-only,
+		 * as requested.
+		 */
+		ROLLED_BACK,
+
+		/**
+		 * Commit requested but rolled back due to a rollback-only marker,
+		 * signalled through an {@link org.springframework.transaction.UnexpectedRollbackException}.
+		 */
+		UNEXPECTED_ROLLBACK,
+
+		/**
+		 * Completed with a heuristic decision of the transaction coordinator,
+		 * signalled through a {@link org.springframework.transaction.HeuristicCompletionException}.
+		 */
+		HEURISTIC,
+
+		/**
+		 * Failed with any other exception, leaving the outcome unclear.
+		 */
+		FAILED
+	}
+
+}
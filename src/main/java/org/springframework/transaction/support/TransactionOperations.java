@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2019 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,6 +18,7 @@ package org.springframework.transaction.support;
 
 import org.springframework.lang.Nullable;
 import org.springframework.transaction.TransactionException;
+import org.springframework.util.Assert;
 
 /**
  * Interface specifying basic transaction execution operations.
@@ -44,4 +45,27 @@ public interface TransactionOperations {
 	@Nullable
 	<T> T execute(TransactionCallback<T> action) throws TransactionException;
 
+	/**
+	 * Process the given items within a single transaction, rolling back only the
+	 * work of failing items through savepoints, as far as the callback throws a
+	 * RuntimeException for them. The transaction commits even if items failed.
+	 * <p>The default implementation delegates to {@link #execute} with a
+	 * {@link SavepointBatchProcessor} in its default configuration.
+	 * @param items the items to process, consumed lazily
+	 * @param action the callback processing a single item
+	 * @return the outcome of the processing, including the failed items
+	 * @throws TransactionException in case of initialization, rollback, or system errors,
+	 * or if the transaction does not support savepoints
+	 * @since 5.2
+	 * @see SavepointBatchProcessor#process
+	 */
+	default <T> SavepointBatchProcessor.BatchResult<T> executeWithSavepoints(
+			Iterable<? extends T> items, TransactionItemCallback<? super T> action) throws TransactionException {
+
+		SavepointBatchProcessor.BatchResult<T> result =
+				execute(status -> new SavepointBatchProcessor().process(status, items, action));
+		Assert.state(result != null, "No batch result");
+		return result;
+	}
+
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Small identity-based map for the resources bound to a single thread.
+ *
+ * <p>A transaction typically binds one or two resources (e.g. a DataSource
+ * and an EntityManagerFactory), so the first {@link #INLINE_CAPACITY} entries
+ * are kept in fixed inline slots and looked up by a linear identity scan.
+ * Further entries spill into an {@link IdentityHashMap}. The map is meant
+ * to be reused for subsequent transactions on the same thread: removing
+ * entries never releases the inline slots or the spill table, so binding
+ * and unbinding resources does not allocate in the steady state.
+ *
+ * <p>Keys are compared by identity, in line with resource keys being
+ * resource factories that are unwrapped to their raw target before binding.
+ * Not thread-safe: instances are confined to their owning thread.
+ *
+ * @since 5.2
+ * @see TransactionSynchronizationManager#bindResource
+ * @see TransactionSynchronizationUtils#unwrapResourceIfNecessary
+ */
+final class TransactionResourceMap extends AbstractMap<Object, Object> {
+
+	/**
+	 * Number of entries held in inline slots before spilling into a hash table.
+	 */
+	static final int INLINE_CAPACITY = 4;
+
+
+	private final Object[] inlineKeys = new Object[INLINE_CAPACITY];
+
+	private final Object[] inlineValues = new Object[INLINE_CAPACITY];
+
+	private int inlineSize;
+
+	@Nullable
+	private IdentityHashMap<Object, Object> overflow;
+
+	@Nullable
+	private EntrySet entrySet;
+
+
+	@Override
+	public int size() {
+		return (this.inlineSize + (this.overflow != null ? this.overflow.size() : 0));
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return (this.inlineSize == 0 && (this.overflow == null || this.overflow.isEmpty()));
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return (indexOf(key) >= 0 || (this.overflow != null && this.overflow.containsKey(key)));
+	}
+
+	@Override
+	@Nullable
+	public Object get(Object key) {
+		int index = indexOf(key);
+		if (index >= 0) {
+			return this.inlineValues[index];
+		}
+		return (this.overflow != null ? this.overflow.get(key) : null);
+	}
+
+	@Override
+	@Nullable
+	public Object put(Object key, Object value) {
+		int index = indexOf(key);
+		if (index >= 0) {
+			Object oldValue = this.inlineValues[index];
+			this.inlineValues[index] = value;
+			return oldValue;
+		}
+		if (this.overflow != null && this.overflow.containsKey(key)) {
+			return this.overflow.put(key, value);
+		}
+		if (this.inlineSize < INLINE_CAPACITY) {
+			this.inlineKeys[this.inlineSize] = key;
+			this.inlineValues[this.inlineSize] = value;
+			this.inlineSize++;
+			return null;
+		}
+		if (this.overflow == null) {
+			this.overflow = new IdentityHashMap<>();
+		}
+		return this.overflow.put(key, value);
+	}
+
+	@Override
+	@Nullable
+	public Object remove(Object key) {
+		int index = indexOf(key);
+		if (index >= 0) {
+			Object oldValue = this.inlineValues[index];
+			int last = this.inlineSize - 1;
+			// Shift remaining entries to keep insertion order for debug output
+			System.arraycopy(this.inlineKeys, index + 1, this.inlineKeys, index, last - index);
+			System.arraycopy(this.inlineValues, index + 1, this.inlineValues, index, last - index);
+			this.inlineKeys[last] = null;
+			this.inlineValues[last] = null;
+			this.inlineSize = last;
+			return oldValue;
+		}
+		return (this.overflow != null ? this.overflow.remove(key) : null);
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < this.inlineSize; i++) {
+			this.inlineKeys[i] = null;
+			this.inlineValues[i] = null;
+		}
+		this.inlineSize = 0;
+		if (this.overflow != null) {
+			this.overflow.clear();
+		}
+	}
+
+	@Override
+	public Set<Entry<Object, Object>> entrySet() {
+		EntrySet entrySet = this.entrySet;
+		if (entrySet == null) {
+			entrySet = new EntrySet();
+			this.entrySet = entrySet;
+		}
+		return entrySet;
+	}
+
+	private int indexOf(@Nullable Object key) {
+		for (int i = 0; i < this.inlineSize; i++) {
+			if (this.inlineKeys[i] == key) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Read-only view over the inline entries followed by the spilled entries.
+	 */
+	private class EntrySet extends AbstractSet<Entry<Object, Object>> {
+
+		@Override
+		public int size() {
+			return TransactionResourceMap.this.size();
+		}
+
+		@Override
+		public Iterator<Entry<Object, Object>> iterator() {
+			Iterator<Entry<Object, Object>> overflowIterator = (overflow != null ?
+					overflow.entrySet().iterator() : null);
+			return new Iterator<Entry<Object, Object>>() {
+
+				private int index = 0;
+
+				@Override
+				public boolean hasNext() {
+					return (this.index < inlineSize || (overflowIterator != null && overflowIterator.hasNext()));
+				}
+
+				@Override
+				public Entry<Object, Object> next() {
+					if (this.index < inlineSize) {
+						Entry<Object, Object> entry =
+								new SimpleImmutableEntry<>(inlineKeys[this.index], inlineValues[this.index]);
+						this.index++;
+						return entry;
+					}
+					if (overflowIterator != null) {
+						Map.Entry<Object, Object> entry = overflowIterator.next();
+						return new SimpleImmutableEntry<>(entry.getKey(), entry.getValue());
+					}
+					throw new NoSuchElementException();
+				}
+			};
+		}
+	}
+
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.io.Serializable;
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.util.Assert;
+
+/**
+ * Policy for re-executing a transaction that failed for a transient reason,
+ * such as a deadlock or a serialization failure, applied by
+ * {@link TransactionTemplate} and the transaction aspects.
+ *
+ * <p>Retries only apply to the outermost transaction: an execution that
+ * participates in an existing transaction, or runs within an outer one,
+ * leaves a retry to the outermost execution, since the failure typically
+ * affects the entire transaction. Before each retry, the policy waits for
+ * an exponentially growing backoff with full jitter, i.e. a random delay of
+ * up to the current backoff, spreading the retries of concurrent transactions
+ * that failed together. An optional {@link RetryBudget} further limits the
+ * retries to a fraction of the executions.
+ *
+ * <p>Failures are considered transient if a {@link TransientDataAccessException},
+ * a {@link SQLTransactionRollbackException} or an {@link SQLException} of SQL
+ * state class "40" (transaction rollback) is found in the exception's causes.
+ * Subclasses may override {@link #isRetryable}.
+ *
+ * @since 5.2
+ * @see org.springframework.transaction.interceptor.TransactionAttribute#getRetryPolicy()
+ * @see TransactionTemplate#setRetryPolicy
+ */
+@SuppressWarnings("serial")
+public class TransactionRetryPolicy implements Serializable {
+
+	/** Default backoff before the first retry: 10 milliseconds. */
+	public static final Duration DEFAULT_INITIAL_BACKOFF = Duration.ofMillis(10);
+
+	/** Default maximum backoff: 1 second. */
+	public static final Duration DEFAULT_MAX_BACKOFF = Duration.ofSeconds(1);
+
+
+	private final int maxAttempts;
+
+	private final long initialBackoffMillis;
+
+	private final long maxBackoffMillis;
+
+	@Nullable
+	private final RetryBudget retryBudget;
+
+
+	/**
+	 * Create a new TransactionRetryPolicy with default backoff and without budget.
+	 *
+	 * @param maxAttempts the maximum number of executions, including the first one
+	 */
+	public TransactionRetryPolicy(int maxAttempts) {
+		this(maxAttempts, DEFAULT_INITIAL_BACKOFF, DEFAULT_MAX_BACKOFF, null);
+	}
+
+	/**
+	 * Create a new TransactionRetryPolicy.
+	 *
+	 * @param maxAttempts    the maximum number of executions, including the first one
+	 * @param initialBackoff the maximum delay before the first retry, doubling per retry
+	 * @param maxBackoff     the upper bound for the maximum delay before a retry
+	 * @param retryBudget    the budget to draw retries from, possibly shared with
+	 *                       other policies, or {@code null} for none
+	 */
+	public TransactionRetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff,
+			@Nullable RetryBudget retryBudget) {
+
+		Assert.isTrue(maxAttempts > 0, "Max attempts must be positive");
+		Assert.isTrue(!initialBackoff.isNegative(), "Initial backoff must not be negative");
+		Assert.isTrue(maxBackoff.compareTo(initialBackoff) >= 0, "Max backoff must not be less than initial backoff");
+		this.maxAttempts = maxAttempts;
+		this.initialBackoffMillis = initialBackoff.toMillis();
+		this.maxBackoffMillis = maxBackoff.toMillis();
+		this.retryBudget = retryBudget;
+	}
+
+
+	/**
+	 * Return the maximum number of executions, including the first one.
+	 */
+	public int getMaxAttempts() {
+		return this.maxAttempts;
+	}
+
+	/**
+	 * Return the maximum delay before the first retry.
+	 */
+	public Duration getInitialBackoff() {
+		return Duration.ofMillis(this.initialBackoffMillis);
+	}
+
+	/**
+	 * Return the upper bound for the maximum delay before a retry.
+	 */
+	public Duration getMaxBackoff() {
+		return Duration.ofMillis(this.maxBackoffMillis);
+	}
+
+	/**
+	 * Return the budget to draw retries from, if any.
+	 */
+	@Nullable
+	public RetryBudget getRetryBudget() {
+		return this.retryBudget;
+	}
+
+
+	/**
+	 * Determine whether an execution with the given definition on the current
+	 * thread starts the outermost transaction and may therefore be retried.
+	 *
+	 * @param definition the definition of the transaction to execute
+	 */
+	public boolean appliesTo(TransactionDefinition definition) {
+		if (this.maxAttempts <= 1 || TransactionSynchronizationManager.isActualTransactionActive()) {
+			return false;
+		}
+		int propagation = definition.getPropagationBehavior();
+		return (propagation == TransactionDefinition.PROPAGATION_REQUIRED ||
+				propagation == TransactionDefinition.PROPAGATION_REQUIRES_NEW ||
+				propagation == TransactionDefinition.PROPAGATION_NESTED);
+	}
+
+	/**
+	 * Record the start of an execution (not of a retry) with the budget, if any.
+	 */
+	public void recordExecution() {
+		if (this.retryBudget != null) {
+			this.retryBudget.recordExecution();
+		}
+	}
+
+	/**
+	 * Decide whether to retry after the given failure of a rolled back transaction
+	 * and, if so, wait for the backoff.
+	 *
+	 * @param ex       the failure
+	 * @param attempts the number of executions so far
+	 * @return {@code true} to retry, {@code false} to propagate the failure
+	 * (also if interrupted while waiting)
+	 */
+	public boolean awaitRetry(Throwable ex, int attempts) {
+		if (attempts >= this.maxAttempts || !isRetryable(ex) ||
+				(this.retryBudget != null && !this.retryBudget.tryAcquireRetry())) {
+			return false;
+		}
+		long backoff = getBackoffMillis(attempts);
+		if (backoff > 0) {
+			try {
+				Thread.sleep(backoff);
+			} catch (InterruptedException ex2) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Determine the delay before the retry following the given number of executions:
+	 * a random value between zero and the exponentially growing backoff.
+	 *
+	 * @param attempts the number of executions so far
+	 */
+	protected long getBackoffMillis(int attempts) {
+		long backoff = this.initialBackoffMillis;
+		for (int i = 1; i < attempts && backoff < this.maxBackoffMillis; i++) {
+			backoff <<= 1;
+		}
+		return ThreadLocalRandom.current().nextLong(Math.min(backoff, this.maxBackoffMillis) + 1);
+	}
+
+	/**
+	 * Determine whether the given failure is transient, i.e. worth a retry.
+	 *
+	 * @param ex the failure
+	 */
+	protected boolean isRetryable(Throwable ex) {
+		Throwable cause = ex;
+		while (cause != null) {
+			if (cause instanceof TransientDataAccessException || cause instanceof SQLTransactionRollbackException) {
+				return true;
+			}
+			if (cause instanceof SQLException) {
+				String sqlState = ((SQLException) cause).getSQLState();
+				if (sqlState != null && sqlState.startsWith("40")) {
+					return true;
+				}
+			}
+			cause = (cause.getCause() != cause ? cause.getCause() : null);
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "TransactionRetryPolicy: " + this.maxAttempts + " attempts, backoff " + this.initialBackoffMillis +
+				"-" + this.maxBackoffMillis + " ms" + (this.retryBudget != null ? ", " + this.retryBudget : "");
+	}
+
+}
@@ -16,19 +16,13 @@
 
 package org.springframework.transaction.support;
 
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import org.springframework.core.NamedThreadLocal;
-import org.springframework.core.annotation.AnnotationAwareOrderComparator;
 import org.springframework.lang.Nullable;
 import org.springframework.util.Assert;
 
@@ -37,7 +31,8 @@ import org.springframework.util.Assert;
  * To be used by resource management code but not by typical application code.
  *
  * <p>Supports one resource per key without overwriting, that is, a resource needs
- * to be removed before a new one can be set for the same key.
+ * to be removed before a new one can be set for the same key. Resource keys
+ * are compared by identity, after unwrapping any proxy around them.
  * Supports a list of transaction synchronizations if synchronization is active.
  *
  * <p>Resource management code should check for thread-bound resources, e.g. JDBC
@@ -64,6 +59,15 @@ import org.springframework.util.Assert;
  * within a JTA transaction, e.g. a JDBC Connection or a Hibernate Session for
  * any given DataSource or SessionFactory, respectively.
  *
+ * <p>The per-thread transaction context, including its resource map and any
+ * recycled transaction status objects, is created on first use and kept for
+ * subsequent transactions on the same thread, avoiding a re-allocation per
+ * transaction. As a consequence, long-lived pool threads keep a reference to
+ * classes of the application that used them; {@link #clear()} drops recycled
+ * status objects, and {@link #releaseContext()} removes the context from the
+ * thread altogether, e.g. from a thread pool's {@code afterExecute} hook or on
+ * application shutdown.
+ *
  * @author Juergen Hoeller
  * @see #isSynchronizationActive
  * @see #registerSynchronization
@@ -79,27 +83,169 @@ public abstract class TransactionSynchronizationManager {
 	private static final Log logger = LogFactory.getLog(TransactionSynchronizationManager.class);
 
 	/**
-	 * threadLocal的资源map，该map用于绑定
+	 * 线程副本的事务上下文的存储策略，上下文包括资源map、同步器、事务名称、是否只读、事务隔离级别、事务是否活跃等。
+	 * 所有状态集中在一个对象中，事务开始与清理时只需访问一次存储。默认为ThreadLocal存储。
+	 */
+	private static volatile TransactionContextStorage contextStorage = new ThreadLocalTransactionContextStorage();
+
+
+	//-------------------------------------------------------------------------
+	// Management of the transaction context storage
+	//-------------------------------------------------------------------------
+
+	/**
+	 * Set the strategy for storing the transaction context of the current
+	 * unit of execution. Default is a {@link ThreadLocalTransactionContextStorage}.
+	 * <p>Applies globally; to be called once on startup, before any transaction
+	 * has been started, since contexts held by the previous strategy will not
+	 * be visible through the new one.
+	 *
+	 * @param storage the storage strategy to use
+	 * @since 5.2
+	 */
+	public static void setContextStorage(TransactionContextStorage storage) {
+		Assert.notNull(storage, "TransactionContextStorage must not be null");
+		contextStorage = storage;
+	}
+
+	/**
+	 * Return the strategy for storing the transaction context of the current
+	 * unit of execution.
+	 *
+	 * @since 5.2
+	 */
+	public static TransactionContextStorage getContextStorage() {
+		return contextStorage;
+	}
+
+	/**
+	 * Capture the resources and characteristics of the current read-only
+	 * transaction, for attaching them to child tasks that perform further
+	 * read-only work within the same transaction on other threads.
+	 * <p>Only bound resources implementing {@link SharedResourceHolder} are
+	 * captured; other resources remain exclusive to the current thread.
+	 * The snapshot is invalidated when the current transaction completes.
+	 *
+	 * @return the snapshot of the current transaction context
+	 * @throws IllegalStateException if transaction synchronization is not active
+	 * or the current transaction is not read-only
+	 * @since 5.2
+	 * @see TransactionContextSnapshot#attach()
+	 */
+	public static TransactionContextSnapshot createReadOnlySnapshot() throws IllegalStateException {
+		TransactionContext context = peekContext();
+		if (context == null || context.synchronizations == null) {
+			throw new IllegalStateException("Transaction synchronization is not active");
+		}
+		if (!context.currentTransactionReadOnly) {
+			throw new IllegalStateException(
+					"Only read-only transactions may be shared with child tasks: " + context.currentTransactionName);
+		}
+		TransactionContextSnapshot snapshot = new TransactionContextSnapshot(context);
+		context.synchronizations.add(snapshot.invalidationSynchronization());
+		return snapshot;
+	}
+
+	/**
+	 * Return the transaction context for the current thread, if any,
+	 * without creating one.
 	 */
-	private static final ThreadLocal<Map<Object, Object>> resources =
-			new NamedThreadLocal<>("Transactional resources");
+	@Nullable
+	private static TransactionContext peekContext() {
+		return contextStorage.getContext();
+	}
+
 	/**
-	 * 以下一系列的线程副本资源，包括同步器、事务名称、是否只读、事务隔离级别事务是否活跃等。
+	 * Return the transaction context for the current thread, lazily creating
+	 * and binding it on first access. The context is kept for subsequent
+	 * transactions on the same thread rather than being dropped on cleanup,
+	 * until {@link #releaseContext()} is called.
 	 */
-	private static final ThreadLocal<Set<TransactionSynchronization>> synchronizations =
-			new NamedThreadLocal<>("Transaction synchronizations");
+	private static TransactionContext obtainContext() {
+		TransactionContextStorage storage = contextStorage;
+		TransactionContext context = storage.getContext();
+		if (context == null) {
+			context = new TransactionContext();
+			storage.setContext(context);
+		}
+		return context;
+	}
 
-	private static final ThreadLocal<String> currentTransactionName =
-			new NamedThreadLocal<>("Current transaction name");
+	/**
+	 * Remove the transaction context from the current thread, releasing its
+	 * resource map and recycled transaction status objects. A new context is
+	 * created on the next transaction started on this thread.
+	 * <p>To be called when a thread leaves the application, e.g. from a thread
+	 * pool's {@code afterExecute} hook or on shutdown, so that pool threads do
+	 * not keep the application's classes reachable.
+	 *
+	 * @throws IllegalStateException if transaction synchronization is active
+	 * or resources are bound to the current thread
+	 * @since 5.2
+	 */
+	public static void releaseContext() throws IllegalStateException {
+		TransactionContextStorage storage = contextStorage;
+		TransactionContext context = storage.getContext();
+		if (context == null) {
+			return;
+		}
+		if (context.synchronizations != null) {
+			throw new IllegalStateException("Cannot release transaction context - synchronization is active");
+		}
+		if (!context.resources.isEmpty()) {
+			throw new IllegalStateException("Cannot release transaction context - resources bound to thread [" +
+					Thread.currentThread().getName() + "]: " + context.resources.keySet());
+		}
+		storage.removeContext();
+	}
+
+	/**
+	 * Take a recycled transaction status from the current thread's free list.
+	 *
+	 * @return a completed status object for reinitialization, or {@code null} if none
+	 */
+	@Nullable
+	static DefaultTransactionStatus pollRecycledTransactionStatus() {
+		TransactionContext context = peekContext();
+		return (context != null ? context.pollRecycledStatus() : null);
+	}
 
-	private static final ThreadLocal<Boolean> currentTransactionReadOnly =
-			new NamedThreadLocal<>("Current transaction read-only status");
+	/**
+	 * Return the given completed transaction status to the current thread's free list.
+	 */
+	static void recycleTransactionStatus(DefaultTransactionStatus status) {
+		obtainContext().recycleStatus(status);
+	}
 
-	private static final ThreadLocal<Integer> currentTransactionIsolationLevel =
-			new NamedThreadLocal<>("Current transaction isolation level");
+	/**
+	 * Adjust the number of transactions suspended on the current thread.
+	 *
+	 * @param delta the adjustment, e.g. 1 on suspension and -1 on resumption
+	 * @return the adjusted number, never below 0
+	 */
+	static int adjustSuspendDepth(int delta) {
+		TransactionContext context = obtainContext();
+		context.suspendDepth = Math.max(context.suspendDepth + delta, 0);
+		return context.suspendDepth;
+	}
 
-	private static final ThreadLocal<Boolean> actualTransactionActive =
-			new NamedThreadLocal<>("Actual transaction active");
+	/**
+	 * Replace the transaction context for the current thread with the given one.
+	 *
+	 * @param context the context to install, or {@code null} to remove the current one
+	 * @return the previous context, or {@code null} if none
+	 */
+	@Nullable
+	static TransactionContext exchangeContext(@Nullable TransactionContext context) {
+		TransactionContextStorage storage = contextStorage;
+		TransactionContext previous = storage.getContext();
+		if (context != null) {
+			storage.setContext(context);
+		} else {
+			storage.removeContext();
+		}
+		return previous;
+	}
 
 
 	//-------------------------------------------------------------------------
@@ -117,8 +263,9 @@ public abstract class TransactionSynchronizationManager {
 	 * @see #hasResource
 	 */
 	public static Map<Object, Object> getResourceMap() {
-		Map<Object, Object> map = resources.get();
-		return (map != null ? Collections.unmodifiableMap(map) : Collections.emptyMap());
+		TransactionContext context = peekContext();
+		return (context != null && !context.resources.isEmpty() ?
+				Collections.unmodifiableMap(context.resources) : Collections.emptyMap());
 	}
 
 	/**
@@ -158,18 +305,15 @@ public abstract class TransactionSynchronizationManager {
 	 */
 	@Nullable
 	private static Object doGetResource(Object actualKey) {
-		Map<Object, Object> map = resources.get();
-		if (map == null) {
+		TransactionContext context = peekContext();
+		if (context == null) {
 			return null;
 		}
+		TransactionResourceMap map = context.resources;
 		Object value = map.get(actualKey);
 		// Transparently remove ResourceHolder that was marked as void...
 		if (value instanceof ResourceHolder && ((ResourceHolder) value).isVoid()) {
 			map.remove(actualKey);
-			// Remove entire ThreadLocal if empty...
-			if (map.isEmpty()) {
-				resources.remove();
-			}
 			value = null;
 		}
 		return value;
@@ -185,12 +329,8 @@ public abstract class TransactionSynchronizationManager {
 	public static void bindResource(Object key, Object value) throws IllegalStateException {
 		Object actualKey = TransactionSynchronizationUtils.unwrapResourceIfNecessary(key);
 		Assert.notNull(value, "Value must not be null");
-		Map<Object, Object> map = resources.get();
-		//如果资源map找不到，就创建一个
-		if (map == null) {
-			map = new HashMap<>();
-			resources.set(map);
-		}
+		//资源map随线程上下文一起创建并复用，无须每次事务重新分配
+		TransactionResourceMap map = obtainContext().resources;
 		//添加绑定！
 		Object oldValue = map.put(actualKey, value);
 		// Transparently suppress a ResourceHolder that was marked as void...
@@ -244,16 +384,13 @@ public abstract class TransactionSynchronizationManager {
 	 */
 	@Nullable
 	private static Object doUnbindResource(Object actualKey) {
-		Map<Object, Object> map = resources.get();
-		if (map == null) {
+		TransactionContext context = peekContext();
+		if (context == null) {
 			return null;
 		}
 		//移除线程资源之map资源中的map中key对应的value；
-		Object value = map.remove(actualKey);
-		// 如果线程资源中的map为空，移除线程资源之map；
-		if (map.isEmpty()) {
-			resources.remove();
-		}
+		//资源map即使为空也保留在线程上下文中，供后续事务复用；
+		Object value = context.resources.remove(actualKey);
 		// 透明地清除标记为void的ResourceHolder ...
 		if (value instanceof ResourceHolder && ((ResourceHolder) value).isVoid()) {
 			value = null;
@@ -277,7 +414,8 @@ public abstract class TransactionSynchronizationManager {
 	 * @see #registerSynchronization
 	 */
 	public static boolean isSynchronizationActive() {
-		return (synchronizations.get() != null);
+		TransactionContext context = peekContext();
+		return (context != null && context.synchronizations != null);
 	}
 
 	/**
@@ -287,12 +425,13 @@ public abstract class TransactionSynchronizationManager {
 	 */
 	public static void initSynchronization() throws IllegalStateException {
 		//通过线程副本资源，直接判断事务状态而无须担心因为资源竞争出现问题。
-		if (isSynchronizationActive()) {
+		TransactionContext context = obtainContext();
+		if (context.synchronizations != null) {
 			throw new IllegalStateException("Cannot activate transaction synchronization - already active");
 		}
 		logger.trace("Initializing transaction synchronization");
 		//即每个线程维护一个链式结构，初始化时创建一个空的链表。
-		synchronizations.set(new LinkedHashSet<>());
+		context.synchronizations = new SynchronizationRegistry();
 	}
 
 	/**
@@ -300,7 +439,8 @@ public abstract class TransactionSynchronizationManager {
 	 * Typically called by resource management code.
 	 * <p>Note that synchronizations can implement the
 	 * {@link org.springframework.core.Ordered} interface.
-	 * They will be executed in an order according to their order value (if any).
+	 * They will be executed in an order according to their order value (if any),
+	 * as determined at the time of registration.
 	 *
 	 * @param synchronization the synchronization object to register
 	 * @throws IllegalStateException if transaction synchronization is not active
@@ -310,37 +450,35 @@ public abstract class TransactionSynchronizationManager {
 			throws IllegalStateException {
 
 		Assert.notNull(synchronization, "TransactionSynchronization must not be null");
-		if (!isSynchronizationActive()) {
+		TransactionContext context = peekContext();
+		if (context == null || context.synchronizations == null) {
 			throw new IllegalStateException("Transaction synchronization is not active");
 		}
-		//在事务状态活跃的时候，将事务同步器添加进链表。
-		synchronizations.get().add(synchronization);
+		//在事务状态活跃的时候，将事务同步器按顺序插入注册表。
+		context.synchronizations.add(synchronization);
 	}
 
 	/**
 	 * Return an unmodifiable snapshot list of all registered synchronizations
 	 * for the current thread.
+	 * <p>The snapshot is cached until the next registration, so repeated calls
+	 * during a single commit neither copy nor re-sort the synchronizations.
 	 *
 	 * @return unmodifiable List of TransactionSynchronization instances
 	 * @throws IllegalStateException if synchronization is not active
 	 * @see TransactionSynchronization
 	 */
 	public static List<TransactionSynchronization> getSynchronizations() throws IllegalStateException {
-		Set<TransactionSynchronization> synchs = synchronizations.get();
+		TransactionContext context = peekContext();
+		SynchronizationRegistry synchs = (context != null ? context.synchronizations : null);
 		if (synchs == null) {
 			throw new IllegalStateException("Transaction synchronization is not active");
 		}
 		// Return unmodifiable snapshot, to avoid ConcurrentModificationExceptions
 		// while iterating and invoking synchronization callbacks that in turn
 		// might register further synchronizations.
-		if (synchs.isEmpty()) {
-			return Collections.emptyList();
-		} else {
-			// Sort lazily here, not in registerSynchronization.
-			List<TransactionSynchronization> sortedSynchs = new ArrayList<>(synchs);
-			AnnotationAwareOrderComparator.sort(sortedSynchs);
-			return Collections.unmodifiableList(sortedSynchs);
-		}
+		// Sorted on registration already, and only copied again after changes.
+		return synchs.getSnapshot();
 	}
 
 	/**
@@ -349,11 +487,46 @@ public abstract class TransactionSynchronizationManager {
 	 * @throws IllegalStateException if synchronization is not active
 	 */
 	public static void clearSynchronization() throws IllegalStateException {
-		if (!isSynchronizationActive()) {
+		TransactionContext context = peekContext();
+		if (context == null || context.synchronizations == null) {
 			throw new IllegalStateException("Cannot deactivate transaction synchronization - not active");
 		}
 		logger.trace("Clearing transaction synchronization");
-		synchronizations.remove();
+		context.synchronizations = null;
+	}
+
+	/**
+	 * Suspend the current synchronization state: invoke the suspend callbacks
+	 * of the synchronizations implementing them, then move the synchronizations
+	 * and transaction characteristics out of the current context at once,
+	 * leaving synchronization inactive.
+	 *
+	 * @return the suspended state, for {@link #resumeSynchronization}
+	 * @throws IllegalStateException if synchronization is not active
+	 */
+	static TransactionContext.SuspendedState suspendSynchronization() throws IllegalStateException {
+		TransactionContext context = peekContext();
+		if (context == null || context.synchronizations == null) {
+			throw new IllegalStateException("Cannot suspend transaction synchronization - not active");
+		}
+		context.synchronizations.suspendSynchronizations();
+		return context.detach();
+	}
+
+	/**
+	 * Reinstate the given suspended synchronization state in the current context,
+	 * then invoke the resume callbacks of the synchronizations implementing them.
+	 *
+	 * @param state the state returned from {@link #suspendSynchronization}
+	 * @throws IllegalStateException if synchronization is already active
+	 */
+	static void resumeSynchronization(TransactionContext.SuspendedState state) throws IllegalStateException {
+		TransactionContext context = obtainContext();
+		if (context.synchronizations != null) {
+			throw new IllegalStateException("Cannot activate transaction synchronization - already active");
+		}
+		context.attach(state);
+		state.synchronizations.resumeSynchronizations();
 	}
 
 
@@ -370,7 +543,10 @@ public abstract class TransactionSynchronizationManager {
 	 * @see org.springframework.transaction.TransactionDefinition#getName()
 	 */
 	public static void setCurrentTransactionName(@Nullable String name) {
-		currentTransactionName.set(name);
+		TransactionContext context = (name != null ? obtainContext() : peekContext());
+		if (context != null) {
+			context.currentTransactionName = name;
+		}
 	}
 
 	/**
@@ -382,7 +558,8 @@ public abstract class TransactionSynchronizationManager {
 	 */
 	@Nullable
 	public static String getCurrentTransactionName() {
-		return currentTransactionName.get();
+		TransactionContext context = peekContext();
+		return (context != null ? context.currentTransactionName : null);
 	}
 
 	/**
@@ -394,7 +571,10 @@ public abstract class TransactionSynchronizationManager {
 	 * @see org.springframework.transaction.TransactionDefinition#isReadOnly()
 	 */
 	public static void setCurrentTransactionReadOnly(boolean readOnly) {
-		currentTransactionReadOnly.set(readOnly ? Boolean.TRUE : null);
+		TransactionContext context = (readOnly ? obtainContext() : peekContext());
+		if (context != null) {
+			context.currentTransactionReadOnly = readOnly;
+		}
 	}
 
 	/**
@@ -411,7 +591,8 @@ public abstract class TransactionSynchronizationManager {
 	 * @see TransactionSynchronization#beforeCommit(boolean)
 	 */
 	public static boolean isCurrentTransactionReadOnly() {
-		return (currentTransactionReadOnly.get() != null);
+		TransactionContext context = peekContext();
+		return (context != null && context.currentTransactionReadOnly);
 	}
 
 	/**
@@ -432,7 +613,10 @@ public abstract class TransactionSynchronizationManager {
 	 * @see org.springframework.transaction.TransactionDefinition#getIsolationLevel()
 	 */
 	public static void setCurrentTransactionIsolationLevel(@Nullable Integer isolationLevel) {
-		currentTransactionIsolationLevel.set(isolationLevel);
+		TransactionContext context = (isolationLevel != null ? obtainContext() : peekContext());
+		if (context != null) {
+			context.currentTransactionIsolationLevel = isolationLevel;
+		}
 	}
 
 	/**
@@ -451,7 +635,8 @@ public abstract class TransactionSynchronizationManager {
 	 */
 	@Nullable
 	public static Integer getCurrentTransactionIsolationLevel() {
-		return currentTransactionIsolationLevel.get();
+		TransactionContext context = peekContext();
+		return (context != null ? context.currentTransactionIsolationLevel : null);
 	}
 
 	/**
@@ -459,19 +644,53 @@ public abstract class TransactionSynchronizationManager {
 	 * @param active
 	 */
 	public static void setActualTransactionActive(boolean active) {
-		actualTransactionActive.set(active ? Boolean.TRUE : null);
+		TransactionContext context = (active ? obtainContext() : peekContext());
+		if (context != null) {
+			context.actualTransactionActive = active;
+		}
 	}
 
 	/**
 	 * 返回当前事务是否活跃
 	 */
 	public static boolean isActualTransactionActive() {
-		return (actualTransactionActive.get() != null);
+		TransactionContext context = peekContext();
+		return (context != null && context.actualTransactionActive);
 	}
 
 
+	/**
+	 * Expose all characteristics of a new transaction and activate transaction
+	 * synchronization for the current thread in one step, avoiding a separate
+	 * thread-local access per characteristic.
+	 * <p>Equivalent to calling the individual setters followed by
+	 * {@link #initSynchronization()}.
+	 *
+	 * @param name           the name of the transaction, or {@code null} if none
+	 * @param readOnly       whether the transaction is read-only
+	 * @param isolationLevel the isolation level to expose, or {@code null} if default
+	 * @param active         whether an actual transaction is active
+	 * @throws IllegalStateException if synchronization is already active
+	 * @see AbstractPlatformTransactionManager#prepareSynchronization
+	 */
+	static void initSynchronization(@Nullable String name, boolean readOnly,
+			@Nullable Integer isolationLevel, boolean active) throws IllegalStateException {
+
+		TransactionContext context = obtainContext();
+		if (context.synchronizations != null) {
+			throw new IllegalStateException("Cannot activate transaction synchronization - already active");
+		}
+		logger.trace("Initializing transaction synchronization");
+		context.actualTransactionActive = active;
+		context.currentTransactionIsolationLevel = isolationLevel;
+		context.currentTransactionReadOnly = readOnly;
+		context.currentTransactionName = name;
+		context.synchronizations = new SynchronizationRegistry();
+	}
+
 	/**
 	 * 清除当前线程的：“整个”：事务同步状态：
+	 * 同时丢弃当前线程缓存的可复用事务状态对象；绑定的资源保持不变。
 	 *
 	 * @see #clearSynchronization()
 	 * @see #setCurrentTransactionName
@@ -480,11 +699,11 @@ public abstract class TransactionSynchronizationManager {
 	 * @see #setActualTransactionActive
 	 */
 	public static void clear() {
-		synchronizations.remove();
-		currentTransactionName.remove();
-		currentTransactionReadOnly.remove();
-		currentTransactionIsolationLevel.remove();
-		actualTransactionActive.remove();
+		TransactionContext context = peekContext();
+		if (context != null) {
+			context.clear();
+			context.clearRecycledStatuses();
+		}
 	}
 
 }
@@ -43,6 +43,27 @@ public abstract class TransactionSynchronizationUtils {
 	private static final boolean aopAvailable = ClassUtils.isPresent(
 			"org.springframework.aop.scope.ScopedObject", TransactionSynchronizationUtils.class.getClassLoader());
 
+	@Nullable
+	private static volatile SynchronizationTimingMonitor timingMonitor;
+
+
+	/**
+	 * Set a monitor for timing all synchronization callbacks triggered through
+	 * this class, or {@code null} to switch timing off (the default).
+	 * @since 5.2
+	 */
+	public static void setTimingMonitor(@Nullable SynchronizationTimingMonitor monitor) {
+		timingMonitor = monitor;
+	}
+
+	/**
+	 * Return the monitor for timing synchronization callbacks, if any.
+	 * @since 5.2
+	 */
+	@Nullable
+	public static SynchronizationTimingMonitor getTimingMonitor() {
+		return timingMonitor;
+	}
 
 	/**
 	 * Check whether the given resource transaction managers refers to the given
@@ -92,8 +113,21 @@ public abstract class TransactionSynchronizationUtils {
 	 * @see TransactionSynchronization#beforeCommit(boolean)
 	 */
 	public static void triggerBeforeCommit(boolean readOnly) {
+		SynchronizationTimingMonitor monitor = timingMonitor;
 		for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
-			synchronization.beforeCommit(readOnly);
+			if (monitor == null) {
+				synchronization.beforeCommit(readOnly);
+			}
+			else {
+				long start = System.nanoTime();
+				try {
+					synchronization.beforeCommit(readOnly);
+				}
+				finally {
+					record(monitor, synchronization, SynchronizationTimingMonitor.Callback.BEFORE_COMMIT,
+							System.nanoTime() - start);
+				}
+			}
 		}
 	}
 
@@ -102,13 +136,19 @@ public abstract class TransactionSynchronizationUtils {
 	 * @see TransactionSynchronization#beforeCompletion()
 	 */
 	public static void triggerBeforeCompletion() {
+		SynchronizationTimingMonitor monitor = timingMonitor;
 		for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+			long start = (monitor != null ? System.nanoTime() : 0);
 			try {
 				synchronization.beforeCompletion();
 			}
 			catch (Throwable tsex) {
 				logger.error("TransactionSynchronization.beforeCompletion threw exception", tsex);
 			}
+			if (monitor != null) {
+				record(monitor, synchronization, SynchronizationTimingMonitor.Callback.BEFORE_COMPLETION,
+						System.nanoTime() - start);
+			}
 		}
 	}
 
@@ -130,9 +170,47 @@ public abstract class TransactionSynchronizationUtils {
 	 */
 	public static void invokeAfterCommit(@Nullable List<TransactionSynchronization> synchronizations) {
 		if (synchronizations != null) {
+			SynchronizationTimingMonitor monitor = timingMonitor;
 			for (TransactionSynchronization synchronization : synchronizations) {
+				if (monitor == null) {
+					synchronization.afterCommit();
+				}
+				else {
+					long start = System.nanoTime();
+					try {
+						synchronization.afterCommit();
+					}
+					finally {
+						record(monitor, synchronization, SynchronizationTimingMonitor.Callback.AFTER_COMMIT,
+								System.nanoTime() - start);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Invoke the {@code afterCommit} methods of the given synchronizations,
+	 * logging rather than propagating exceptions: for callbacks that run
+	 * asynchronously, with nobody to propagate them to.
+	 * @param synchronizations a List of TransactionSynchronization objects
+	 * @since 5.2
+	 * @see #invokeAfterCommit
+	 */
+	static void invokeAfterCommitLoggingExceptions(List<TransactionSynchronization> synchronizations) {
+		SynchronizationTimingMonitor monitor = timingMonitor;
+		for (TransactionSynchronization synchronization : synchronizations) {
+			long start = (monitor != null ? System.nanoTime() : 0);
+			try {
 				synchronization.afterCommit();
 			}
+			catch (Throwable tsex) {
+				logger.error("TransactionSynchronization.afterCommit threw exception", tsex);
+			}
+			if (monitor != null) {
+				record(monitor, synchronization, SynchronizationTimingMonitor.Callback.AFTER_COMMIT,
+						System.nanoTime() - start);
+			}
 		}
 	}
 
@@ -166,17 +244,39 @@ public abstract class TransactionSynchronizationUtils {
 			int completionStatus) {
 
 		if (synchronizations != null) {
+			SynchronizationTimingMonitor monitor = timingMonitor;
 			for (TransactionSynchronization synchronization : synchronizations) {
+				long start = (monitor != null ? System.nanoTime() : 0);
 				try {
 					synchronization.afterCompletion(completionStatus);
 				}
 				catch (Throwable tsex) {
 					logger.error("TransactionSynchronization.afterCompletion threw exception", tsex);
 				}
+				if (monitor != null) {
+					record(monitor, synchronization, SynchronizationTimingMonitor.Callback.AFTER_COMPLETION,
+							System.nanoTime() - start);
+				}
 			}
 		}
 	}
 
+	/**
+	 * Record the duration of a callback with the given monitor, logging rather
+	 * than propagating a monitor failure: it must neither abort the invocation
+	 * of further callbacks nor mask an exception thrown by the callback itself.
+	 */
+	private static void record(SynchronizationTimingMonitor monitor, TransactionSynchronization synchronization,
+			SynchronizationTimingMonitor.Callback callback, long nanos) {
+
+		try {
+			monitor.record(synchronization, callback, nanos);
+		}
+		catch (Throwable ex) {
+			logger.error("SynchronizationTimingMonitor threw exception", ex);
+		}
+	}
+
 
 	/**
 	 * Inner class to avoid hard-coded dependency on AOP module.
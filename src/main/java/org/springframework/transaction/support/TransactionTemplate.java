@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2018 the original author or authors.
+ * Copyright 2002-2019 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -72,6 +72,9 @@ public class TransactionTemplate extends DefaultTransactionDefinition
 	@Nullable
 	private PlatformTransactionManager transactionManager;
 
+	@Nullable
+	private TransactionRetryPolicy retryPolicy;
+
 
 	public TransactionTemplate() {
 	}
@@ -114,6 +117,27 @@ public class TransactionTemplate extends DefaultTransactionDefinition
 		return this.transactionManager;
 	}
 
+	/**
+	 * 设置事务因瞬时故障（如死锁）失败后的重试策略。
+	 * 仅当本模板开启最外层事务时才会重试，回调可能因此被执行多次。
+	 *
+	 * @since 5.2
+	 * @see TransactionRetryPolicy#appliesTo
+	 */
+	public void setRetryPolicy(@Nullable TransactionRetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	/**
+	 * 返回重试策略（如果有）。
+	 *
+	 * @since 5.2
+	 */
+	@Nullable
+	public TransactionRetryPolicy getRetryPolicy() {
+		return this.retryPolicy;
+	}
+
 	@Override
 	public void afterPropertiesSet() {
 		if (this.transactionManager == null) {
@@ -125,6 +149,30 @@ public class TransactionTemplate extends DefaultTransactionDefinition
 	@Override
 	@Nullable
 	public <T> T execute(TransactionCallback<T> action) throws TransactionException {
+		TransactionRetryPolicy retryPolicy = this.retryPolicy;
+		if (retryPolicy == null || !retryPolicy.appliesTo(this)) {
+			return doExecute(action);
+		}
+		retryPolicy.recordExecution();
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return doExecute(action);
+			} catch (RuntimeException ex) {
+				if (!retryPolicy.awaitRetry(ex, attempt)) {
+					throw ex;
+				}
+				if (logger.isDebugEnabled()) {
+					logger.debug("Retrying transaction after transient failure in attempt " + attempt + ": " + ex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 在一个事务中执行回调，不做重试。
+	 */
+	@Nullable
+	private <T> T doExecute(TransactionCallback<T> action) throws TransactionException {
 		Assert.state(this.transactionManager != null, "No PlatformTransactionManager set");
 
 		if (this.transactionManager instanceof CallbackPreferringPlatformTransactionManager) {
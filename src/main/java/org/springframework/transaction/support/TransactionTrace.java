@@ -0,0 +1,260 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.TransactionDefinition;
+
+/**
+ * Timing breakdown of a single transaction scope, from {@code getTransaction}
+ * to the end of {@code commit} or {@code rollback}, split into {@link Phase phases}.
+ *
+ * <p>Created for sampled scopes by a {@link TransactionTracer} and filled in
+ * by {@link AbstractPlatformTransactionManager} on the transaction's thread;
+ * handed to the {@link TransactionTraceSink} once completed.
+ *
+ * @since 5.2
+ * @see AbstractPlatformTransactionManager#setTransactionTracer
+ */
+public final class TransactionTrace {
+
+	/**
+	 * Consecutive phases of a transaction scope.
+	 */
+	public enum Phase {
+
+		/**
+		 * {@code getTransaction}: suspension of an outer transaction, {@code doBegin}
+		 * and initialization of synchronization.
+		 */
+		BEGIN,
+
+		/**
+		 * The transactional code, until {@code commit} or {@code rollback} gets called.
+		 */
+		BODY,
+
+		/**
+		 * Commit preparation, {@code beforeCommit} and {@code beforeCompletion}
+		 * callbacks (only the latter for a rollback).
+		 */
+		BEFORE_COMMIT,
+
+		/**
+		 * The actual commit or rollback, or the release of a savepoint.
+		 */
+		COMMIT,
+
+		/**
+		 * {@code afterCommit} and {@code afterCompletion} callbacks, cleanup
+		 * and the resumption of an outer transaction.
+		 */
+		AFTER_COMPLETION
+	}
+
+
+	private final TransactionTracer tracer;
+
+	@Nullable
+	private final String name;
+
+	private final int propagationBehavior;
+
+	private final String threadName;
+
+	private final long startTimeMillis;
+
+	private final long startNanos;
+
+	private final long[] phaseEndNanos = new long[Phase.values().length];
+
+	private boolean newTransaction;
+
+	@Nullable
+	private String joinpointIdentification;
+
+	@Nullable
+	private String exceptionName;
+
+	@Nullable
+	private TransactionMetricsRecorder.Outcome outcome;
+
+
+	TransactionTrace(TransactionTracer tracer, TransactionDefinition definition) {
+		this.tracer = tracer;
+		this.name = definition.getName();
+		this.propagationBehavior = definition.getPropagationBehavior();
+		this.threadName = Thread.currentThread().getName();
+		this.startTimeMillis = System.currentTimeMillis();
+		this.startNanos = System.nanoTime();
+	}
+
+
+	TransactionTracer getTracer() {
+		return this.tracer;
+	}
+
+	long getStartNanos() {
+		return this.startNanos;
+	}
+
+	void setNewTransaction(boolean newTransaction) {
+		this.newTransaction = newTransaction;
+	}
+
+	/**
+	 * Mark the end of the given phase at the current time.
+	 */
+	void markPhaseEnd(Phase phase) {
+		this.phaseEndNanos[phase.ordinal()] = System.nanoTime();
+	}
+
+	/**
+	 * Mark the completion of the scope with the given outcome,
+	 * ending all phases that have not ended yet.
+	 */
+	void complete(TransactionMetricsRecorder.Outcome outcome) {
+		this.outcome = outcome;
+		markPhaseEnd(Phase.AFTER_COMPLETION);
+	}
+
+	/**
+	 * Set the identification of the transactional method, if known.
+	 *
+	 * @param joinpointIdentification the fully qualified method name
+	 */
+	public void setJoinpointIdentification(@Nullable String joinpointIdentification) {
+		this.joinpointIdentification = joinpointIdentification;
+	}
+
+	/**
+	 * Set the exception that the transactional code has thrown, if any.
+	 */
+	public void setException(@Nullable Throwable ex) {
+		this.exceptionName = (ex != null ? ex.getClass().getName() : null);
+	}
+
+
+	/**
+	 * Return the name of the transaction definition, if any.
+	 */
+	@Nullable
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Return the propagation behavior of the scope.
+	 */
+	public int getPropagationBehavior() {
+		return this.propagationBehavior;
+	}
+
+	/**
+	 * Return whether the scope began a new physical transaction.
+	 */
+	public boolean isNewTransaction() {
+		return this.newTransaction;
+	}
+
+	/**
+	 * Return the name of the thread that ran the scope.
+	 */
+	public String getThreadName() {
+		return this.threadName;
+	}
+
+	/**
+	 * Return the wall clock time at which the scope started.
+	 */
+	public long getStartTimeMillis() {
+		return this.startTimeMillis;
+	}
+
+	/**
+	 * Return the identification of the transactional method, if known.
+	 */
+	@Nullable
+	public String getJoinpointIdentification() {
+		return this.joinpointIdentification;
+	}
+
+	/**
+	 * Return the class name of the exception thrown by the transactional code, if any.
+	 */
+	@Nullable
+	public String getExceptionName() {
+		return this.exceptionName;
+	}
+
+	/**
+	 * Return the outcome of the scope, or {@code null} if not completed yet.
+	 */
+	@Nullable
+	public TransactionMetricsRecorder.Outcome getOutcome() {
+		return this.outcome;
+	}
+
+	/**
+	 * Return the time spent in the given phase, in the given unit.
+	 * Phases that a scope skipped, e.g. the commit phases on rollback,
+	 * take no time.
+	 */
+	public long getDuration(Phase phase, TimeUnit unit) {
+		long start = (phase.ordinal() > 0 ? getPhaseEnd(phase.ordinal() - 1) : this.startNanos);
+		return unit.convert(getPhaseEnd(phase.ordinal()) - start, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Return the total time of the scope, in the given unit.
+	 */
+	public long getTotalDuration(TimeUnit unit) {
+		return unit.convert(getPhaseEnd(this.phaseEndNanos.length - 1) - this.startNanos, TimeUnit.NANOSECONDS);
+	}
+
+	private long getPhaseEnd(int index) {
+		for (int i = index; i >= 0; i--) {
+			if (this.phaseEndNanos[i] != 0) {
+				return this.phaseEndNanos[i];
+			}
+		}
+		return this.startNanos;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("TransactionTrace [");
+		sb.append(this.joinpointIdentification != null ? this.joinpointIdentification : this.name);
+		sb.append("] propagation=").append(DefaultTransactionDefinition.constants.toCode(
+				this.propagationBehavior, DefaultTransactionDefinition.PREFIX_PROPAGATION));
+		sb.append(", new=").append(this.newTransaction);
+		sb.append(", outcome=").append(this.outcome);
+		if (this.exceptionName != null) {
+			sb.append(", exception=").append(this.exceptionName);
+		}
+		sb.append(", thread=").append(this.threadName);
+		sb.append(", total=").append(getTotalDuration(TimeUnit.MICROSECONDS)).append("us");
+		for (Phase phase : Phase.values()) {
+			sb.append(", ").append(phase.name().toLowerCase()).append('=');
+			sb.append(getDuration(phase, TimeUnit.MICROSECONDS)).append("us");
+		}
+		return sb.toString();
+	}
+
+}
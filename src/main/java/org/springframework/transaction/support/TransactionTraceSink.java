@@ -0,0 +1,40 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+/**
+ * Destination for completed {@link TransactionTrace transaction traces},
+ * e.g. a log, a tracing system or an in-memory buffer.
+ *
+ * <p>Called on the transaction's thread once the transaction scope has
+ * completed. Implementations should hand traces off quickly; exceptions
+ * get logged and do not affect the transaction.
+ *
+ * @since 5.2
+ * @see TransactionTracer
+ */
+@FunctionalInterface
+public interface TransactionTraceSink {
+
+	/**
+	 * Accept the given completed trace.
+	 *
+	 * @param trace the trace, not to be modified anymore
+	 */
+	void accept(TransactionTrace trace);
+
+}
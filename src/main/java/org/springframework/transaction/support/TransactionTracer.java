@@ -0,0 +1,119 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.util.Assert;
+
+/**
+ * Samples transaction scopes for {@link TransactionTrace tracing} and hands
+ * the completed traces to a {@link TransactionTraceSink}.
+ *
+ * <p>With a low sample rate, tracing can remain switched on in production:
+ * scopes that are not sampled only cost a random number.
+ *
+ * @since 5.2
+ * @see AbstractPlatformTransactionManager#setTransactionTracer
+ */
+public class TransactionTracer {
+
+	private static final Log logger = LogFactory.getLog(TransactionTracer.class);
+
+
+	private final TransactionTraceSink sink;
+
+	private final double sampleRate;
+
+
+	/**
+	 * Create a new tracer, tracing all transaction scopes.
+	 *
+	 * @param sink the sink to hand completed traces to
+	 */
+	public TransactionTracer(TransactionTraceSink sink) {
+		this(sink, 1.0);
+	}
+
+	/**
+	 * Create a new tracer, tracing the given share of transaction scopes.
+	 *
+	 * @param sink the sink to hand completed traces to
+	 * @param sampleRate the share of scopes to trace, between 0 and 1
+	 */
+	public TransactionTracer(TransactionTraceSink sink, double sampleRate) {
+		Assert.notNull(sink, "TransactionTraceSink must not be null");
+		Assert.isTrue(sampleRate >= 0 && sampleRate <= 1, "Sample rate must be between 0 and 1");
+		this.sink = sink;
+		this.sampleRate = sampleRate;
+	}
+
+
+	/**
+	 * Return the sink that completed traces are handed to.
+	 */
+	public final TransactionTraceSink getSink() {
+		return this.sink;
+	}
+
+	/**
+	 * Return the share of transaction scopes to trace.
+	 */
+	public final double getSampleRate() {
+		return this.sampleRate;
+	}
+
+	/**
+	 * Start a trace for the given scope if sampled.
+	 *
+	 * @param definition the definition of the scope
+	 * @return the trace, or {@code null} if not sampled
+	 */
+	@Nullable
+	TransactionTrace startTrace(TransactionDefinition definition) {
+		return (isSampled(definition) ? new TransactionTrace(this, definition) : null);
+	}
+
+	/**
+	 * Determine whether to trace the given scope.
+	 * <p>The default implementation samples randomly at the configured rate.
+	 *
+	 * @param definition the definition of the scope
+	 */
+	protected boolean isSampled(TransactionDefinition definition) {
+		return (this.sampleRate >= 1 ||
+				(this.sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < this.sampleRate));
+	}
+
+	/**
+	 * Hand the given completed trace to the sink, logging any failure to do so.
+	 */
+	void emit(TransactionTrace trace) {
+		try {
+			this.sink.accept(trace);
+		}
+		catch (RuntimeException ex) {
+			logger.warn("Failed to emit " + trace, ex);
+		}
+	}
+
+}
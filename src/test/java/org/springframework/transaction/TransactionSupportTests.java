@@ -321,6 +321,144 @@ public class TransactionSupportTests {
 		assertEquals(template2, template3);
 	}
 
+	@Test
+	public void participatingScopesWithRecycling() {
+		TestTransactionManager tm = new TestTransactionManager(true, true);
+		tm.setTransactionStatusRecycling(true);
+		TransactionStatus status1 = tm.getTransaction(new DefaultTransactionDefinition());
+		assertFalse(status1.isNewTransaction());
+		tm.commit(status1);
+		assertTrue(status1.isCompleted());
+
+		TransactionStatus status2 = tm.getTransaction(
+				new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_SUPPORTS));
+		assertSame(status1, status2);
+		tm.rollback(status2);
+
+		assertTrue("no begin", !tm.begin);
+		assertTrue("no commit", !tm.commit);
+		assertTrue("no rollback", !tm.rollback);
+		assertTrue("triggered rollbackOnly", tm.rollbackOnly);
+	}
+
+	@Test
+	public void participatingRollbackWithoutGlobalRollbackOnParticipationFailure() {
+		TestTransactionManager tm = new TestTransactionManager(true, true);
+		tm.setGlobalRollbackOnParticipationFailure(false);
+		TransactionStatus status = tm.getTransaction(new DefaultTransactionDefinition());
+		tm.rollback(status);
+
+		assertTrue("completed", status.isCompleted());
+		assertTrue("no rollback", !tm.rollback);
+		assertTrue("no rollbackOnly", !tm.rollbackOnly);
+	}
+
+	@Test
+	public void participatingCommitPreparationFailureWithoutRollbackOnCommitFailure() {
+		TestTransactionManager tm = new TestTransactionManager(true, true) {
+			@Override
+			protected void prepareForCommit(DefaultTransactionStatus status) {
+				throw new TransactionSystemException("prepare failed");
+			}
+		};
+		TransactionStatus status = tm.getTransaction(new DefaultTransactionDefinition());
+		try {
+			tm.commit(status);
+			fail("Should have thrown TransactionSystemException");
+		}
+		catch (TransactionSystemException ex) {
+			// expected
+		}
+
+		assertTrue("completed", status.isCompleted());
+		assertTrue("no rollback", !tm.rollback);
+		assertTrue("no rollbackOnly", !tm.rollbackOnly);
+	}
+
+	@Test
+	public void participatingCommitPreparationFailureWithRollbackOnCommitFailure() {
+		TestTransactionManager tm = new TestTransactionManager(true, true) {
+			@Override
+			protected void prepareForCommit(DefaultTransactionStatus status) {
+				throw new TransactionSystemException("prepare failed");
+			}
+		};
+		tm.setRollbackOnCommitFailure(true);
+		TransactionStatus status = tm.getTransaction(new DefaultTransactionDefinition());
+		try {
+			tm.commit(status);
+			fail("Should have thrown TransactionSystemException");
+		}
+		catch (TransactionSystemException ex) {
+			// expected
+		}
+
+		assertTrue("no rollback", !tm.rollback);
+		assertTrue("triggered rollbackOnly", tm.rollbackOnly);
+	}
+
+	@Test
+	public void transactionStatusRecycling() {
+		TestTransactionManager tm = new TestTransactionManager(false, true);
+		tm.setTransactionStatusRecycling(true);
+		DefaultTransactionStatus status1 = (DefaultTransactionStatus)
+				tm.getTransaction(new DefaultTransactionDefinition());
+		status1.setRollbackOnly();
+		tm.commit(status1);
+		assertTrue("Must have been rolled back", tm.rollback);
+		assertTrue("Must have been recycled", status1.isRecycled());
+		try {
+			tm.commit(status1);
+			fail("Should have thrown IllegalTransactionStateException");
+		}
+		catch (IllegalTransactionStateException ex) {
+			// expected
+		}
+		try {
+			status1.setRollbackOnly();
+			fail("Should have thrown IllegalTransactionStateException");
+		}
+		catch (IllegalTransactionStateException ex) {
+			// expected
+		}
+
+		DefaultTransactionStatus status2 = (DefaultTransactionStatus)
+				tm.getTransaction(new DefaultTransactionDefinition());
+		assertSame(status1, status2);
+		assertFalse(status2.isRecycled());
+		assertFalse(status2.isCompleted());
+		assertFalse(status2.isRollbackOnly());
+		assertTrue(status2.isNewTransaction());
+		tm.commit(status2);
+		assertTrue("Must have been committed", tm.commit);
+	}
+
+	@Test
+	public void clearDropsRecycledTransactionStatuses() {
+		TestTransactionManager tm = new TestTransactionManager(false, true);
+		tm.setTransactionStatusRecycling(true);
+		DefaultTransactionStatus status1 = (DefaultTransactionStatus)
+				tm.getTransaction(new DefaultTransactionDefinition());
+		tm.commit(status1);
+		assertTrue("Must have been recycled", status1.isRecycled());
+
+		TransactionSynchronizationManager.clear();
+		DefaultTransactionStatus status2 = (DefaultTransactionStatus)
+				tm.getTransaction(new DefaultTransactionDefinition());
+		assertNotSame(status1, status2);
+		tm.commit(status2);
+	}
+
+	@Test
+	public void transactionStatusNotRecycledByDefault() {
+		TestTransactionManager tm = new TestTransactionManager(false, true);
+		DefaultTransactionStatus status1 = (DefaultTransactionStatus)
+				tm.getTransaction(new DefaultTransactionDefinition());
+		tm.commit(status1);
+		assertFalse(status1.isRecycled());
+		assertNotSame(status1, tm.getTransaction(new DefaultTransactionDefinition()));
+	}
+
 
 	@After
 	public void clear() {
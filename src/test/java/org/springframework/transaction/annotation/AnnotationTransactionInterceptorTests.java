@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2018 the original author or authors.
+ * Copyright 2002-2019 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,12 +16,16 @@
 
 package org.springframework.transaction.annotation;
 
+import org.aopalliance.intercept.MethodInterceptor;
 import org.junit.Test;
 
 import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DeadlockLoserDataAccessException;
 import org.springframework.tests.transaction.CallCountingTransactionManager;
 import org.springframework.transaction.interceptor.TransactionInterceptor;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import static org.junit.Assert.*;
 
@@ -262,6 +266,63 @@ public class AnnotationTransactionInterceptorTests {
 		assertGetTransactionAndCommitCount(5);
 	}
 
+	@Test
+	public void withRetry() {
+		ProxyFactory proxyFactory = new ProxyFactory();
+		TestWithRetry target = new TestWithRetry();
+		proxyFactory.setTarget(target);
+		proxyFactory.addAdvice(this.ti);
+		int[] interceptions = new int[1];
+		proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+			interceptions[0]++;
+			return invocation.proceed();
+		});
+
+		TestWithRetry proxy = (TestWithRetry) proxyFactory.getProxy();
+
+		assertEquals(3, proxy.failTwice());
+		assertEquals(3, interceptions[0]);
+		assertEquals(3, this.ptm.begun);
+		assertEquals(2, this.ptm.rollbacks);
+		assertEquals(1, this.ptm.commits);
+
+		try {
+			proxy.failAlways();
+			fail("Should throw DeadlockLoserDataAccessException");
+		}
+		catch (DeadlockLoserDataAccessException ex) {
+			assertEquals(6, this.ptm.begun);
+			assertEquals(5, this.ptm.rollbacks);
+		}
+
+		try {
+			proxy.failNonTransient();
+			fail("Should throw DataIntegrityViolationException");
+		}
+		catch (DataIntegrityViolationException ex) {
+			assertEquals(7, this.ptm.begun);
+		}
+	}
+
+	@Test
+	public void withRetryWithinExistingTransaction() {
+		ProxyFactory proxyFactory = new ProxyFactory();
+		TestWithRetry target = new TestWithRetry();
+		proxyFactory.setTarget(target);
+		proxyFactory.addAdvice(this.ti);
+
+		TestWithRetry proxy = (TestWithRetry) proxyFactory.getProxy();
+
+		try {
+			new TransactionTemplate(this.ptm).execute(status -> proxy.failTwice());
+			fail("Should throw DeadlockLoserDataAccessException");
+		}
+		catch (DeadlockLoserDataAccessException ex) {
+			// Left to the outermost transaction
+			assertEquals(1, target.invocations);
+		}
+	}
+
 	private void assertGetTransactionAndCommitCount(int expectedCount) {
 		assertEquals(expectedCount, this.ptm.begun);
 		assertEquals(expectedCount, this.ptm.commits);
@@ -370,6 +431,29 @@ public class AnnotationTransactionInterceptorTests {
 	}
 
 
+	@Transactional(retryMaxAttempts = 3, retryBackoff = 0, retryMaxBackoff = 0, retryBudget = -1)
+	public static class TestWithRetry {
+
+		int invocations;
+
+		public int failTwice() {
+			assertTrue(TransactionSynchronizationManager.isActualTransactionActive());
+			if (++this.invocations < 3) {
+				throw new DeadlockLoserDataAccessException("Deadlock", null);
+			}
+			return this.invocations;
+		}
+
+		public void failAlways() {
+			throw new DeadlockLoserDataAccessException("Deadlock", null);
+		}
+
+		public void failNonTransient() {
+			throw new DataIntegrityViolationException("Constraint violated");
+		}
+	}
+
+
 	public interface BaseInterface {
 
 		void doSomething();
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.event;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.util.SerializationUtils;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link MappedFileEventJournal}.
+ */
+public class MappedFileEventJournalTests {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+
+	@Test
+	public void pendingEntriesSurviveReopening() throws Exception {
+		File file = this.folder.newFile("outbox.journal");
+		MappedFileEventJournal journal = new MappedFileEventJournal(file, 4096);
+		long first = journal.append("listener#a", "one");
+		long second = journal.append("listener#b", 2);
+		journal.append("listener#a", "three");
+		journal.sync();
+		journal.complete(second);
+		journal.close();
+
+		MappedFileEventJournal reopened = new MappedFileEventJournal(file, 4096);
+		assertEquals(2, reopened.getPendingCount());
+		List<EventJournal.Entry> entries = reopened.getPendingEntries();
+		assertEquals(2, entries.size());
+		assertEquals(first, entries.get(0).getId());
+		assertEquals("listener#a", entries.get(0).getListenerId());
+		assertEquals("one", entries.get(0).getPayload());
+		assertEquals("three", entries.get(1).getPayload());
+	}
+
+	@Test
+	public void startsOverOnceNothingPending() throws Exception {
+		File file = this.folder.newFile("outbox.journal");
+		MappedFileEventJournal journal = new MappedFileEventJournal(file, 256);
+		for (int i = 0; i < 100; i++) {
+			journal.complete(journal.append("listener", i));
+		}
+		journal.append("listener", "last");
+		journal.close();
+
+		List<EventJournal.Entry> entries = new MappedFileEventJournal(file, 256).getPendingEntries();
+		assertEquals(1, entries.size());
+		assertEquals("last", entries.get(0).getPayload());
+	}
+
+	@Test
+	public void compactsAroundLongPendingEntries() throws Exception {
+		File file = this.folder.newFile("outbox.journal");
+		MappedFileEventJournal journal = new MappedFileEventJournal(file, 256);
+		long poison = journal.append("listener", "poison");
+		for (int i = 0; i < 100; i++) {
+			journal.complete(journal.append("listener", i));
+		}
+		long last = journal.append("listener", "last");
+		journal.close();
+
+		MappedFileEventJournal reopened = new MappedFileEventJournal(file, 256);
+		List<EventJournal.Entry> entries = reopened.getPendingEntries();
+		assertEquals(2, entries.size());
+		assertEquals(poison, entries.get(0).getId());
+		assertEquals("poison", entries.get(0).getPayload());
+		assertEquals(last, entries.get(1).getId());
+		assertEquals("last", entries.get(1).getPayload());
+		assertFalse(new File(file.getPath() + ".compact").exists());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void fullJournal() throws Exception {
+		MappedFileEventJournal journal = new MappedFileEventJournal(this.folder.newFile("outbox.journal"), 256);
+		for (int i = 0; i < 100; i++) {
+			journal.append("listener", i);
+		}
+	}
+
+	@Test
+	public void corruptEntryEndsRecovery() throws Exception {
+		File file = this.folder.newFile("outbox.journal");
+		MappedFileEventJournal journal = new MappedFileEventJournal(file, 4096);
+		journal.append("listener", "intact");
+		long torn = journal.append("listener", "torn");
+		journal.close();
+		// Header of 17 bytes, followed by the listener id and the payload
+		int tornOffset = 17 + 2 + "listener".length() + SerializationUtils.serialize("intact").length;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(tornOffset + 28);
+			raf.write(0xFF);
+		}
+
+		MappedFileEventJournal reopened = new MappedFileEventJournal(file, 4096);
+		assertEquals(1, reopened.getPendingCount());
+		assertEquals("intact", reopened.getPendingEntries().get(0).getPayload());
+		long next = reopened.append("listener", "next");
+		assertEquals(torn, next);
+	}
+
+}
@@ -23,6 +23,7 @@ import java.lang.annotation.Target;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -31,6 +32,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import org.springframework.beans.factory.BeanInitializationException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
@@ -40,6 +42,7 @@ import org.springframework.context.event.EventListener;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 import org.springframework.tests.transaction.CallCountingTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionSynchronizationAdapter;
@@ -75,6 +78,7 @@ public class TransactionalEventListenerTests {
 		if (this.context != null) {
 			this.context.close();
 		}
+		OutboxConfiguration.journal = new InMemoryEventJournal();
 	}
 
 
@@ -306,6 +310,161 @@ public class TransactionalEventListenerTests {
 		getEventCollector().assertNoEventReceived();
 	}
 
+	@Test
+	public void afterCommitBatch() {
+		load(BatchTestListener.class);
+		this.transactionTemplate.execute(status -> {
+			getContext().publishEvent("test1");
+			getContext().publishEvent("test2");
+			getContext().publishEvent("test3");
+			assertEquals(1, TransactionSynchronizationManager.getSynchronizations().size());
+			getEventCollector().assertNoEventReceived();
+			return null;
+		});
+		getEventCollector().assertEvents(EventCollector.AFTER_COMMIT, "test1", "test2", "test3");
+		getEventCollector().assertTotalEventsCount(3);
+	}
+
+	@Test
+	public void afterCommitBatchNotDeliveredOnRollback() {
+		load(BatchTestListener.class);
+		this.transactionTemplate.execute(status -> {
+			getContext().publishEvent("test");
+			status.setRollbackOnly();
+			return null;
+		});
+		getEventCollector().assertNoEventReceived();
+	}
+
+	@Test
+	public void beforeCommitBatch() {
+		load(BatchTestListener.class);
+		this.transactionTemplate.execute(status -> {
+			getContext().publishEvent(1);
+			getContext().publishEvent(2);
+			return null;
+		});
+		getEventCollector().assertEvents(EventCollector.BEFORE_COMMIT, "1", "2");
+		getEventCollector().assertTotalEventsCount(2);
+	}
+
+	@Test
+	public void afterCommitBatchOnExecutor() {
+		doLoad(BatchExecutorConfiguration.class, BatchTestListener.class);
+		this.transactionTemplate.execute(status -> {
+			getContext().publishEvent("test1");
+			getContext().publishEvent("test2");
+			return null;
+		});
+		getEventCollector().assertNoEventReceived();
+		List<Runnable> tasks = getContext().getBean(BatchExecutorConfiguration.class).tasks;
+		assertEquals(1, tasks.size());
+		tasks.get(0).run();
+		getEventCollector().assertEvents(EventCollector.AFTER_COMMIT, "test1", "test2");
+	}
+
+	@Test
+	public void batchesOfSuspendedTransactionKeptApart() {
+		load(BatchTestListener.class);
+		TransactionTemplate requiresNew = new TransactionTemplate(new CallCountingTransactionManager());
+		requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		this.transactionTemplate.execute(status -> {
+			getContext().publishEvent("outer");
+			requiresNew.execute(inner -> {
+				getContext().publishEvent("inner");
+				return null;
+			});
+			getEventCollector().assertEvents(EventCollector.AFTER_COMMIT, "inner");
+			return null;
+		});
+		getEventCollector().assertEvents(EventCollector.AFTER_COMMIT, "inner", "outer");
+	}
+
+	@Test
+	public void afterCommitCoalescing() {
+		load(CoalescingTestListener.class);
+		this.transactionTemplate.execute(status -> {
+			getContext().publishEvent("a1");
+			getContext().publishEvent("b1");
+			getContext().publishEvent("a2");
+			getContext().publishEvent("c1");
+			getContext().publishEvent("a3");
+			return null;
+		});
+		getEventCollector().assertEvents(EventCollector.AFTER_COMMIT, "b1", "c1", "a3");
+		getEventCollector().assertTotalEventsCount(3);
+	}
+
+	@Test
+	public void coalescingKeepsEventsWithoutKey() {
+		load(CoalescingTestListener.class);
+		this.transactionTemplate.execute(status -> {
+			getContext().publishEvent("x");
+			getContext().publishEvent("x");
+			getContext().publishEvent("a1");
+			getContext().publishEvent("a2");
+			return null;
+		});
+		getEventCollector().assertEvents(EventCollector.AFTER_COMMIT, "x", "x", "a2");
+	}
+
+	@Test
+	public void outboxCommit() {
+		doLoad(OutboxConfiguration.class, OutboxTestListener.class);
+		EventJournal journal = getContext().getBean(EventJournal.class);
+		this.transactionTemplate.execute(status -> {
+			getContext().publishEvent("test1");
+			getContext().publishEvent("test2");
+			return null;
+		});
+		getEventCollector().assertEvents(EventCollector.AFTER_COMMIT, "test1", "test2");
+		assertTrue(journal.getPendingEntries().isEmpty());
+	}
+
+	@Test
+	public void outboxRollback() {
+		doLoad(OutboxConfiguration.class, OutboxTestListener.class);
+		EventJournal journal = getContext().getBean(EventJournal.class);
+		this.transactionTemplate.execute(status -> {
+			getContext().publishEvent("test");
+			status.setRollbackOnly();
+			return null;
+		});
+		getEventCollector().assertNoEventReceived();
+		assertTrue(journal.getPendingEntries().isEmpty());
+	}
+
+	@Test
+	public void outboxKeepsFailedEventsForReplay() {
+		doLoad(OutboxConfiguration.class, OutboxTestListener.class);
+		EventJournal journal = getContext().getBean(EventJournal.class);
+		this.transactionTemplate.execute(status -> {
+			getContext().publishEvent("test");
+			getContext().publishEvent(BaseTransactionalTestListener.FAIL_MSG);
+			return null;
+		});
+		getEventCollector().assertEvents(EventCollector.AFTER_COMMIT, "test", BaseTransactionalTestListener.FAIL_MSG);
+		List<EventJournal.Entry> entries = journal.getPendingEntries();
+		assertEquals(1, entries.size());
+		assertEquals(BaseTransactionalTestListener.FAIL_MSG, entries.get(0).getPayload());
+	}
+
+	@Test
+	public void outboxReplayedOnRefresh() {
+		OutboxConfiguration.journal.append(
+				"transactionalEventListenerTests.OutboxTestListener#handleAfterCommit(java.lang.String)", "replayed");
+		doLoad(OutboxConfiguration.class, OutboxTestListener.class);
+		getEventCollector().assertEvents(EventCollector.AFTER_COMMIT, "replayed");
+		assertTrue(OutboxConfiguration.journal.getPendingEntries().isEmpty());
+	}
+
+	@Test
+	public void outboxRequiresJournal() {
+		this.thrown.expect(BeanInitializationException.class);
+		this.thrown.expectMessage("Outbox requires an EventJournal");
+		load(OutboxTestListener.class);
+	}
+
 
 	protected EventCollector getEventCollector() {
 		return eventCollector;
@@ -343,6 +502,49 @@ public class TransactionalEventListenerTests {
 	}
 
 
+	@Configuration
+	static class BatchExecutorConfiguration {
+
+		final List<Runnable> tasks = new ArrayList<>();
+
+		@Bean
+		public TransactionalEventListenerFactory transactionalEventListenerFactory() {
+			TransactionalEventListenerFactory factory = new TransactionalEventListenerFactory();
+			factory.setBatchExecutor(this.tasks::add);
+			return factory;
+		}
+
+		@Bean
+		public EventCollector eventCollector() {
+			return new EventCollector();
+		}
+	}
+
+
+	@Configuration
+	static class OutboxConfiguration {
+
+		static EventJournal journal = new InMemoryEventJournal();
+
+		@Bean
+		public EventJournal eventJournal() {
+			return journal;
+		}
+
+		@Bean
+		public TransactionalEventListenerFactory transactionalEventListenerFactory() {
+			TransactionalEventListenerFactory factory = new TransactionalEventListenerFactory();
+			factory.setOutboxJournal(journal);
+			return factory;
+		}
+
+		@Bean
+		public EventCollector eventCollector() {
+			return new EventCollector();
+		}
+	}
+
+
 	@EnableTransactionManagement
 	@Configuration
 	static class TransactionalConfiguration {
@@ -515,6 +717,41 @@ public class TransactionalEventListenerTests {
 	}
 
 
+	@Component
+	static class BatchTestListener extends BaseTransactionalTestListener {
+
+		@TransactionalEventListener(batch = true)
+		public void handleAfterCommit(String data) {
+			handleEvent(EventCollector.AFTER_COMMIT, data);
+		}
+
+		@TransactionalEventListener(phase = BEFORE_COMMIT, batch = true)
+		public void handleBeforeCommit(Integer data) {
+			handleEvent(EventCollector.BEFORE_COMMIT, data.toString());
+		}
+	}
+
+
+	@Component
+	static class CoalescingTestListener extends BaseTransactionalTestListener {
+
+		@TransactionalEventListener(coalesceKey = "length() > 1 ? substring(0, 1) : null")
+		public void handleAfterCommit(String data) {
+			handleEvent(EventCollector.AFTER_COMMIT, data);
+		}
+	}
+
+
+	@Component
+	static class OutboxTestListener extends BaseTransactionalTestListener {
+
+		@TransactionalEventListener(outbox = true)
+		public void handleAfterCommit(String data) {
+			handleEvent(EventCollector.AFTER_COMMIT, data);
+		}
+	}
+
+
 	@TransactionalEventListener(phase = AFTER_COMMIT, condition = "!'SKIP'.equals(#p0)")
 	@Target(ElementType.METHOD)
 	@Retention(RetentionPolicy.RUNTIME)
@@ -546,4 +783,33 @@ public class TransactionalEventListenerTests {
 		}
 	}
 
+
+	static class InMemoryEventJournal implements EventJournal {
+
+		private final Map<Long, Entry> entries = new LinkedHashMap<>();
+
+		private long nextId;
+
+		@Override
+		public synchronized long append(String listenerId, Object payload) {
+			long id = this.nextId++;
+			this.entries.put(id, new Entry(id, listenerId, payload));
+			return id;
+		}
+
+		@Override
+		public void sync() {
+		}
+
+		@Override
+		public synchronized void complete(long entryId) {
+			this.entries.remove(entryId);
+		}
+
+		@Override
+		public synchronized List<Entry> getPendingEntries() {
+			return new ArrayList<>(this.entries.values());
+		}
+	}
+
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.interceptor;
+
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+
+import org.springframework.tests.sample.beans.ITestBean;
+import org.springframework.tests.sample.beans.TestBean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link BoundedTransactionAttributeCache} and its use by
+ * {@link AbstractFallbackTransactionAttributeSource}.
+ */
+public class BoundedTransactionAttributeCacheTests {
+
+	@Test
+	public void evictsOldestEntriesBeyondMaxSize() {
+		BoundedTransactionAttributeCache cache = new BoundedTransactionAttributeCache(2);
+		TransactionAttribute attr1 = new DefaultTransactionAttribute();
+		TransactionAttribute attr2 = new DefaultTransactionAttribute();
+		TransactionAttribute attr3 = new DefaultTransactionAttribute();
+		cache.put(String.class, "key1", attr1);
+		cache.put(String.class, "key2", attr2);
+		cache.put(Integer.class, "key3", attr3);
+
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		assertNull(cache.get(String.class, "key1"));
+		assertSame(attr2, cache.get(String.class, "key2"));
+		assertSame(attr3, cache.get(Integer.class, "key3"));
+		assertNull(cache.get(Integer.class, "key2"));
+		assertEquals(2, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertNull(cache.get(Integer.class, "key3"));
+	}
+
+	@Test
+	public void replacingEntryDoesNotGrowCache() {
+		BoundedTransactionAttributeCache cache = new BoundedTransactionAttributeCache(1);
+		TransactionAttribute attr = new DefaultTransactionAttribute();
+		cache.put(String.class, "key", new DefaultTransactionAttribute());
+		cache.put(String.class, "key", attr);
+		assertEquals(1, cache.size());
+		assertEquals(0, cache.getEvictionCount());
+		assertSame(attr, cache.get(String.class, "key"));
+	}
+
+	@Test
+	public void unboundedByDefault() {
+		BoundedTransactionAttributeCache cache = new BoundedTransactionAttributeCache();
+		assertEquals(BoundedTransactionAttributeCache.UNBOUNDED, cache.getMaxSize());
+		for (int i = 0; i < 10000; i++) {
+			cache.put(String.class, i, new DefaultTransactionAttribute());
+		}
+		assertEquals(10000, cache.size());
+		assertEquals(0, cache.getEvictionCount());
+		assertNotNull(cache.get(String.class, 0));
+
+		MapTransactionAttributeSource tas = new MapTransactionAttributeSource();
+		assertEquals(BoundedTransactionAttributeCache.UNBOUNDED,
+				((BoundedTransactionAttributeCache) tas.getAttributeCache()).getMaxSize());
+	}
+
+	@Test
+	public void attributeSourceUsesConfiguredCache() throws Exception {
+		Method getName = ITestBean.class.getMethod("getName");
+		Method getAge = ITestBean.class.getMethod("getAge");
+		MapTransactionAttributeSource tas = new MapTransactionAttributeSource();
+		TransactionAttribute txAttr = new DefaultTransactionAttribute();
+		tas.register(getName, txAttr);
+		BoundedTransactionAttributeCache cache = new BoundedTransactionAttributeCache(1);
+		tas.setAttributeCache(cache);
+		assertSame(cache, tas.getAttributeCache());
+
+		assertSame(txAttr, tas.getTransactionAttribute(getName, TestBean.class));
+		assertSame(txAttr, tas.getTransactionAttribute(getName, TestBean.class));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+
+		// Non-transactional methods are cached as well, evicting the previous entry
+		assertNull(tas.getTransactionAttribute(getAge, TestBean.class));
+		assertNull(tas.getTransactionAttribute(getAge, TestBean.class));
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(2, cache.getHitCount());
+	}
+
+}
@@ -163,6 +163,38 @@ public class RuleBasedTransactionAttributeTests {
 		assertFalse(rta.rollbackOn(new MyBusinessWarningException()));
 	}
 
+	@Test
+	public void testRulesRecompiledOnModification() {
+		RuleBasedTransactionAttribute rta = new RuleBasedTransactionAttribute();
+		List<RollbackRuleAttribute> list = new LinkedList<>();
+		list.add(new RollbackRuleAttribute(MyBusinessException.class));
+		rta.setRollbackRules(list);
+		assertTrue(rta.rollbackOn(new MyBusinessWarningException()));
+		assertTrue(rta.rollbackOn(new MyBusinessWarningException()));
+
+		list.add(new NoRollbackRuleAttribute(MyBusinessWarningException.class));
+		assertFalse(rta.rollbackOn(new MyBusinessWarningException()));
+		assertTrue(rta.rollbackOn(new MyBusinessException()));
+
+		rta.getRollbackRules().set(1, new RollbackRuleAttribute(MyBusinessWarningException.class));
+		assertTrue(rta.rollbackOn(new MyBusinessWarningException()));
+	}
+
+	@Test
+	public void testCustomRuleEvaluatedPerException() {
+		List<RollbackRuleAttribute> list = new LinkedList<>();
+		list.add(new NoRollbackRuleAttribute(MyRuntimeException.class) {
+			@Override
+			public int getDepth(Throwable ex) {
+				return ("ignore".equals(ex.getMessage()) ? super.getDepth(ex) : -1);
+			}
+		});
+		RuleBasedTransactionAttribute rta = new RuleBasedTransactionAttribute(TransactionDefinition.PROPAGATION_REQUIRED, list);
+
+		assertFalse(rta.rollbackOn(new MyRuntimeException("ignore")));
+		assertTrue(rta.rollbackOn(new MyRuntimeException("fail")));
+	}
+
 
 	@SuppressWarnings("serial")
 	private static class MyBusinessException extends Exception {}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.interceptor;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import org.springframework.tests.sample.beans.ITestBean;
+import org.springframework.tests.sample.beans.TestBean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link TransactionAttributeIndex} and its use by
+ * {@link AbstractFallbackTransactionAttributeSource}.
+ */
+public class TransactionAttributeIndexTests {
+
+	@Test
+	public void indexCoversClassAndInterfaceMethods() throws Exception {
+		Method interfaceMethod = ITestBean.class.getMethod("getName");
+		Method classMethod = TestBean.class.getMethod("getName");
+		Method otherMethod = TestBean.class.getMethod("getAge");
+		MapTransactionAttributeSource tas = new MapTransactionAttributeSource();
+		TransactionAttribute txAttr = new DefaultTransactionAttribute();
+		tas.register(classMethod, txAttr);
+
+		TransactionAttributeIndex index = TransactionAttributeIndex.build(tas, Arrays.asList(TestBean.class, TestBean.class));
+		assertEquals(Collections.singleton(TestBean.class), index.getTargetClasses());
+		assertSame(txAttr, index.getTransactionAttribute(interfaceMethod, TestBean.class));
+		assertSame(txAttr, index.getTransactionAttribute(classMethod, TestBean.class));
+		assertTrue(index.contains(otherMethod, TestBean.class));
+		assertNull(index.getTransactionAttribute(otherMethod, TestBean.class));
+		assertFalse(index.contains(Object.class.getMethod("toString"), TestBean.class));
+		assertFalse(index.contains(classMethod, Object.class));
+	}
+
+	@Test
+	public void attributeSourceConsultsIndexFirst() throws Exception {
+		Method getName = ITestBean.class.getMethod("getName");
+		Method getAge = ITestBean.class.getMethod("getAge");
+		CountingAttributeSource tas = new CountingAttributeSource();
+		TransactionAttribute txAttr = new DefaultTransactionAttribute();
+		tas.register(TestBean.class.getMethod("getName"), txAttr);
+
+		tas.setAttributeIndex(TransactionAttributeIndex.build(tas, Collections.singleton(TestBean.class), null));
+		int lookups = tas.lookups.get();
+		assertTrue(lookups > 0);
+		// Building the index bypasses the cache
+		assertEquals(0, tas.getAttributeCache().size());
+
+		assertSame(txAttr, tas.getTransactionAttribute(getName, TestBean.class));
+		assertNull(tas.getTransactionAttribute(getAge, TestBean.class));
+		assertEquals(lookups, tas.lookups.get());
+		assertEquals(0, tas.getAttributeCache().size());
+
+		// Classes outside of the index get resolved on demand
+		assertNull(tas.getTransactionAttribute(getName, ITestBean.class));
+		assertTrue(tas.lookups.get() > lookups);
+	}
+
+
+	private static class CountingAttributeSource extends MapTransactionAttributeSource {
+
+		final AtomicInteger lookups = new AtomicInteger();
+
+		@Override
+		protected TransactionAttribute findTransactionAttribute(Method method) {
+			this.lookups.incrementAndGet();
+			return super.findTransactionAttribute(method);
+		}
+	}
+
+}
@@ -17,6 +17,7 @@
 package org.springframework.transaction.interceptor;
 
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.util.Properties;
 
 import org.junit.Test;
@@ -94,4 +95,59 @@ public class TransactionAttributeSourceTests {
 		assertNull(ta);
 	}
 
+	@Test
+	public void nameMatchTransactionAttributeSourceWithIndexedPatterns() throws Exception {
+		NameMatchTransactionAttributeSource tas = new NameMatchTransactionAttributeSource();
+		Properties attributes = new Properties();
+		attributes.put("to*", "PROPAGATION_SUPPORTS");
+		attributes.put("*Case", "PROPAGATION_REQUIRES_NEW");
+		attributes.put("toUpper*", "PROPAGATION_MANDATORY");
+		attributes.put("*dex*", "PROPAGATION_NEVER");
+		attributes.put("c*To*", "PROPAGATION_NESTED");
+		tas.setProperties(attributes);
+
+		assertEquals(TransactionDefinition.PROPAGATION_SUPPORTS,
+				tas.getTransactionAttribute(String.class.getMethod("toCharArray"), null).getPropagationBehavior());
+		assertEquals(TransactionDefinition.PROPAGATION_MANDATORY,
+				tas.getTransactionAttribute(String.class.getMethod("toUpperCase"), null).getPropagationBehavior());
+		assertEquals(TransactionDefinition.PROPAGATION_NEVER,
+				tas.getTransactionAttribute(String.class.getMethod("lastIndexOf", int.class), null).getPropagationBehavior());
+		assertEquals(TransactionDefinition.PROPAGATION_NESTED,
+				tas.getTransactionAttribute(String.class.getMethod("compareTo", String.class), null).getPropagationBehavior());
+		assertEquals(TransactionDefinition.PROPAGATION_NESTED,
+				tas.getTransactionAttribute(String.class.getMethod("compareToIgnoreCase", String.class), null).getPropagationBehavior());
+		assertNull(tas.getTransactionAttribute(String.class.getMethod("trim"), null));
+
+		// Resolved attributes get reset when adding further mappings
+		tas.addTransactionalMethod("trim", new DefaultTransactionAttribute(TransactionDefinition.PROPAGATION_REQUIRED));
+		assertEquals(TransactionDefinition.PROPAGATION_REQUIRED,
+				tas.getTransactionAttribute(String.class.getMethod("trim"), null).getPropagationBehavior());
+	}
+
+	@Test
+	public void nameMatchTransactionAttributeSourceIndexMatchesLinearScan() throws Exception {
+		Properties attributes = new Properties();
+		String[] patterns = {"*", "to*", "*Case", "*ase", "to*Case", "*o*", "*Of", "*index*", "*dex*",
+				"**", "s*b*", "equals*", "equals", "*quals", "*In*", "c*"};
+		for (int i = 0; i < patterns.length; i++) {
+			attributes.put(patterns[i], "PROPAGATION_REQUIRED,timeout_" + i);
+		}
+		NameMatchTransactionAttributeSource indexed = new NameMatchTransactionAttributeSource();
+		indexed.setProperties(attributes);
+		@SuppressWarnings("serial")
+		NameMatchTransactionAttributeSource linear = new NameMatchTransactionAttributeSource() {
+			@Override
+			protected boolean isMatch(String methodName, String mappedName) {
+				return super.isMatch(methodName, mappedName);
+			}
+		};
+		linear.setProperties(attributes);
+
+		for (Method method : String.class.getMethods()) {
+			TransactionAttribute expected = linear.getTransactionAttribute(method, String.class);
+			assertEquals(method.getName(), String.valueOf(expected),
+					String.valueOf(indexed.getTransactionAttribute(method, String.class)));
+		}
+	}
+
 }
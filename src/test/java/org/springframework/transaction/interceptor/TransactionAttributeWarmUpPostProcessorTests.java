@@ -0,0 +1,120 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.interceptor;
+
+import org.junit.Test;
+
+import org.springframework.aop.support.AopUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.tests.transaction.CallCountingTransactionManager;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link TransactionAttributeWarmUpPostProcessor}.
+ */
+public class TransactionAttributeWarmUpPostProcessorTests {
+
+	@Test
+	public void attributeSourceIsWarmedUpBeforeProxyCreation() throws Exception {
+		AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(WarmUpConfig.class);
+		AnnotationTransactionAttributeSource tas = ctx.getBean(AnnotationTransactionAttributeSource.class);
+		TransactionAttributeIndex index = tas.getAttributeIndex();
+		assertNotNull(index);
+		assertTrue(index.getTargetClasses().contains(TransactionalService.class));
+		assertTrue(index.getTargetClasses().contains(PlainService.class));
+		assertNotNull(index.getTransactionAttribute(
+				TransactionalService.class.getMethod("doWork"), TransactionalService.class));
+		assertTrue(ctx.getBean(TransactionAttributeWarmUpPostProcessor.class).getLastWarmUpMillis() >= 0);
+
+		TransactionalService service = ctx.getBean(TransactionalService.class);
+		assertTrue(AopUtils.isAopProxy(service));
+		assertFalse(AopUtils.isAopProxy(ctx.getBean(PlainService.class)));
+		CallCountingTransactionManager txManager = ctx.getBean(CallCountingTransactionManager.class);
+		service.doWork();
+		assertEquals(1, txManager.begun);
+		assertEquals(1, txManager.commits);
+		ctx.close();
+	}
+
+	@Test
+	public void serialWarmUp() {
+		TransactionAttributeWarmUpPostProcessor postProcessor = new TransactionAttributeWarmUpPostProcessor();
+		postProcessor.setParallelism(1);
+		AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext();
+		postProcessor.setBeanFactory(ctx.getBeanFactory());
+		ctx.getBeanFactory().addBeanPostProcessor(postProcessor);
+		ctx.register(TxConfig.class);
+		ctx.refresh();
+		TransactionAttributeIndex index = ctx.getBean(AnnotationTransactionAttributeSource.class).getAttributeIndex();
+		assertNotNull(index);
+		assertTrue(index.getTargetClasses().contains(TransactionalService.class));
+		ctx.close();
+	}
+
+
+	@Configuration
+	@EnableTransactionManagement
+	static class TxConfig {
+
+		@Bean
+		public CallCountingTransactionManager txManager() {
+			return new CallCountingTransactionManager();
+		}
+
+		@Bean
+		public TransactionalService transactionalService() {
+			return new TransactionalService();
+		}
+
+		@Bean
+		public PlainService plainService() {
+			return new PlainService();
+		}
+	}
+
+
+	@Configuration
+	static class WarmUpConfig extends TxConfig {
+
+		@Bean
+		public static TransactionAttributeWarmUpPostProcessor transactionAttributeWarmUpPostProcessor() {
+			return new TransactionAttributeWarmUpPostProcessor();
+		}
+	}
+
+
+	public static class TransactionalService {
+
+		@Transactional
+		public void doWork() {
+		}
+	}
+
+
+	public static class PlainService {
+
+		public void doWork() {
+		}
+	}
+
+}
@@ -17,7 +17,10 @@
 package org.springframework.transaction.interceptor;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -27,10 +30,16 @@ import org.springframework.aop.framework.ProxyFactory;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.NoSuchBeanDefinitionException;
 import org.springframework.lang.Nullable;
+import org.springframework.tests.sample.beans.ITestBean;
+import org.springframework.tests.sample.beans.TestBean;
+import org.springframework.tests.transaction.CallCountingTransactionManager;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionException;
 import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionMetricsRecorder;
+import org.springframework.transaction.support.TransactionTrace;
+import org.springframework.transaction.support.TransactionTracer;
 import org.springframework.util.SerializationTestUtils;
 
 import static org.junit.Assert.*;
@@ -258,6 +267,146 @@ public class TransactionInterceptorTests extends AbstractTransactionAspectTests
 	}
 
 
+	@Test
+	public void invocationPlanResolvedOncePerMethod() throws Exception {
+		DefaultTransactionAttribute txatt = new DefaultTransactionAttribute();
+		AtomicInteger lookups = new AtomicInteger();
+		TransactionAttributeSource tas = (method, targetClass) -> {
+			lookups.incrementAndGet();
+			return (method.equals(getNameMethod) ? txatt : null);
+		};
+		BeanFactory beanFactory = mock(BeanFactory.class);
+		PlatformTransactionManager ptm = mock(PlatformTransactionManager.class);
+		TransactionStatus status = mock(TransactionStatus.class);
+		given(beanFactory.getBean(PlatformTransactionManager.class)).willReturn(ptm);
+		given(ptm.getTransaction(txatt)).willReturn(status);
+
+		TransactionInterceptor ti = new TransactionInterceptor();
+		ti.setBeanFactory(beanFactory);
+		ti.setTransactionAttributeSource(tas);
+		ProxyFactory pf = new ProxyFactory(new TestBean());
+		pf.addAdvice(ti);
+		ITestBean itb = (ITestBean) pf.getProxy();
+
+		itb.getName();
+		itb.getName();
+		itb.setName("name");
+		itb.setName("name");
+		assertEquals(2, lookups.get());
+		verify(beanFactory, times(1)).getBean(PlatformTransactionManager.class);
+		verify(ptm, times(2)).commit(status);
+
+		// Configuration changes drop previously resolved plans
+		ti.setTransactionAttributeSource(tas);
+		itb.getName();
+		assertEquals(3, lookups.get());
+	}
+
+	@Test
+	public void invocationPlanWithCustomTransactionManagerResolution() throws Exception {
+		DefaultTransactionAttribute txatt = new DefaultTransactionAttribute();
+		MapTransactionAttributeSource tas = new MapTransactionAttributeSource();
+		tas.register(getNameMethod, txatt);
+		PlatformTransactionManager ptm = mock(PlatformTransactionManager.class);
+		TransactionStatus status = mock(TransactionStatus.class);
+		given(ptm.getTransaction(txatt)).willReturn(status);
+		AtomicInteger resolutions = new AtomicInteger();
+
+		@SuppressWarnings("serial")
+		TransactionInterceptor ti = new TransactionInterceptor() {
+			@Override
+			protected PlatformTransactionManager determineTransactionManager(@Nullable TransactionAttribute txAttr) {
+				resolutions.incrementAndGet();
+				return ptm;
+			}
+		};
+		ti.setTransactionAttributeSource(tas);
+		ProxyFactory pf = new ProxyFactory(new TestBean());
+		pf.addAdvice(ti);
+		ITestBean itb = (ITestBean) pf.getProxy();
+
+		itb.getName();
+		itb.getName();
+		assertEquals(2, resolutions.get());
+		verify(ptm, times(2)).commit(status);
+	}
+
+	@Test
+	public void transactionInfoRecycling() throws Exception {
+		DefaultTransactionAttribute txatt = new DefaultTransactionAttribute();
+		MapTransactionAttributeSource tas = new MapTransactionAttributeSource();
+		tas.register(getNameMethod, txatt);
+		PlatformTransactionManager ptm = mock(PlatformTransactionManager.class);
+		TransactionStatus status = mock(TransactionStatus.class);
+		given(ptm.getTransaction(txatt)).willReturn(status);
+
+		TransactionInterceptor ti = new TransactionInterceptor(ptm, tas);
+		ti.setTransactionInfoRecycling(true);
+		List<TransactionAspectSupport.TransactionInfo> infos = new ArrayList<>();
+		TestBean target = new TestBean() {
+			@Override
+			public String getName() {
+				infos.add(TransactionAspectSupport.currentTransactionInfo());
+				return super.getName();
+			}
+		};
+		ProxyFactory pf = new ProxyFactory(target);
+		pf.addAdvice(ti);
+		ITestBean itb = (ITestBean) pf.getProxy();
+
+		itb.getName();
+		itb.getName();
+		verify(ptm, times(2)).commit(status);
+		assertEquals(2, infos.size());
+		assertSame(infos.get(0), infos.get(1));
+		try {
+			infos.get(0).getTransactionStatus();
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void transactionTraceWithJoinpointIdentification() throws Exception {
+		MapTransactionAttributeSource tas = new MapTransactionAttributeSource();
+		tas.register(getNameMethod, new DefaultTransactionAttribute());
+		tas.register(setNameMethod, new DefaultTransactionAttribute());
+		CallCountingTransactionManager ptm = new CallCountingTransactionManager();
+		List<TransactionTrace> traces = new ArrayList<>();
+		ptm.setTransactionTracer(new TransactionTracer(traces::add));
+
+		TestBean target = new TestBean() {
+			@Override
+			public void setName(String name) {
+				throw new IllegalStateException(name);
+			}
+		};
+		ProxyFactory pf = new ProxyFactory(target);
+		pf.addAdvice(new TransactionInterceptor(ptm, tas));
+		ITestBean itb = (ITestBean) pf.getProxy();
+		itb.getName();
+		try {
+			itb.setName("failure");
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+
+		assertEquals(2, traces.size());
+		assertEquals(target.getClass().getName() + ".getName", traces.get(0).getJoinpointIdentification());
+		assertEquals(TransactionMetricsRecorder.Outcome.COMMITTED, traces.get(0).getOutcome());
+		assertNull(traces.get(0).getExceptionName());
+		assertEquals(target.getClass().getName() + ".setName", traces.get(1).getJoinpointIdentification());
+		assertEquals(TransactionMetricsRecorder.Outcome.ROLLED_BACK, traces.get(1).getOutcome());
+		assertEquals(IllegalStateException.class.getName(), traces.get(1).getExceptionName());
+		assertEquals(1, ptm.commits);
+		assertEquals(1, ptm.rollbacks);
+	}
+
+
 	private TransactionInterceptor createTransactionInterceptor(BeanFactory beanFactory,
 			String transactionManagerName, PlatformTransactionManager transactionManager) {
 
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.UnexpectedRollbackException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link AbstractGroupCommitTransactionManager}.
+ */
+public class AbstractGroupCommitTransactionManagerTests {
+
+	private final GroupCommitTransactionManager tm = new GroupCommitTransactionManager();
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+
+	@After
+	public void shutdown() {
+		this.executor.shutdownNow();
+	}
+
+
+	@Test
+	public void concurrentCommitsCoalesced() throws Exception {
+		this.tm.setGroupCommitNames("ingest*");
+		this.tm.setMaxGroupSize(4);
+		this.tm.setMaxGroupLatency(Duration.ofSeconds(10));
+		TransactionTemplate template = new TransactionTemplate(this.tm);
+		template.setName("ingestRow");
+		CyclicBarrier barrier = new CyclicBarrier(4);
+		AtomicInteger afterCommits = new AtomicInteger();
+
+		List<Future<Object>> results = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			results.add(this.executor.submit(() -> template.execute(status -> {
+				TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+					@Override
+					public void afterCommit() {
+						afterCommits.incrementAndGet();
+					}
+				});
+				// Inner scopes participate in the member transaction
+				template.execute(inner -> {
+					assertFalse(inner.isNewTransaction());
+					return null;
+				});
+				await(barrier);
+				return null;
+			})));
+		}
+		for (Future<Object> result : results) {
+			result.get();
+		}
+
+		assertEquals(1, this.tm.groupsBegun.get());
+		assertEquals(1, this.tm.groupCommits.get());
+		assertEquals(0, this.tm.groupRollbacks.get());
+		assertEquals(4, afterCommits.get());
+	}
+
+	@Test
+	public void rollbackOfMemberRollsBackGroup() throws Exception {
+		this.tm.setGroupCommitNames("ingest*");
+		this.tm.setMaxGroupSize(2);
+		this.tm.setMaxGroupLatency(Duration.ofSeconds(10));
+		TransactionTemplate template = new TransactionTemplate(this.tm);
+		template.setName("ingestRow");
+		CyclicBarrier barrier = new CyclicBarrier(2);
+
+		Future<Object> committing = this.executor.submit(() -> template.execute(status -> {
+			await(barrier);
+			return null;
+		}));
+		Future<Object> rollingBack = this.executor.submit(() -> template.execute(status -> {
+			await(barrier);
+			status.setRollbackOnly();
+			return null;
+		}));
+
+		rollingBack.get();
+		try {
+			committing.get();
+			fail("Should have thrown UnexpectedRollbackException");
+		}
+		catch (ExecutionException ex) {
+			assertTrue(ex.getCause() instanceof UnexpectedRollbackException);
+		}
+		assertEquals(0, this.tm.groupCommits.get());
+		assertEquals(1, this.tm.groupRollbacks.get());
+	}
+
+	@Test
+	public void ineligibleTransactionsCommittedRightAway() {
+		this.tm.setGroupCommitNames("ingest*");
+		this.tm.setMaxGroupLatency(Duration.ofSeconds(10));
+		TransactionTemplate template = new TransactionTemplate(this.tm);
+		template.setName("other");
+		template.execute(status -> null);
+		template.execute(status -> null);
+
+		assertEquals(2, this.tm.groupsBegun.get());
+		assertEquals(2, this.tm.groupCommits.get());
+	}
+
+	@Test
+	public void lonelyMemberCommittedAfterLatency() {
+		this.tm.setGroupCommitNames("ingest*");
+		this.tm.setMaxGroupLatency(Duration.ofMillis(20));
+		TransactionTemplate template = new TransactionTemplate(this.tm);
+		template.setName("ingestRow");
+		long start = System.nanoTime();
+		template.execute(status -> null);
+
+		assertTrue(System.nanoTime() - start >= Duration.ofMillis(20).toNanos());
+		assertEquals(1, this.tm.groupCommits.get());
+	}
+
+	@Test
+	public void requiresNewStartsNewMember() {
+		this.tm.setGroupCommitNames("ingest*");
+		this.tm.setMaxGroupLatency(Duration.ZERO);
+		TransactionTemplate template = new TransactionTemplate(this.tm);
+		template.setName("ingestRow");
+		TransactionTemplate requiresNew = new TransactionTemplate(this.tm);
+		requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		template.execute(status -> {
+			Object group = TransactionSynchronizationManager.getResource(this.tm);
+			requiresNew.execute(inner -> {
+				assertTrue(inner.isNewTransaction());
+				assertNotSame(group, TransactionSynchronizationManager.getResource(this.tm));
+				return null;
+			});
+			assertSame(group, TransactionSynchronizationManager.getResource(this.tm));
+			return null;
+		});
+
+		assertEquals(2, this.tm.groupCommits.get());
+		assertFalse(TransactionSynchronizationManager.hasResource(this.tm));
+	}
+
+	@Test
+	public void eligibleRequiresNewDoesNotJoinGroupOfOuterMember() throws Exception {
+		this.tm.setGroupCommitNames("ingest*");
+		this.tm.setMaxGroupLatency(Duration.ofMillis(20));
+		TransactionTemplate template = new TransactionTemplate(this.tm);
+		template.setName("ingestRow");
+		TransactionTemplate requiresNew = new TransactionTemplate(this.tm);
+		requiresNew.setName("ingestAudit");
+		requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+		Future<Object> result = this.executor.submit(() -> template.execute(status -> {
+			Object group = TransactionSynchronizationManager.getResource(this.tm);
+			requiresNew.execute(inner -> {
+				assertTrue(inner.isNewTransaction());
+				assertNotSame(group, TransactionSynchronizationManager.getResource(this.tm));
+				return null;
+			});
+			return null;
+		}));
+		result.get(10, TimeUnit.SECONDS);
+
+		assertEquals(2, this.tm.groupsBegun.get());
+		assertEquals(2, this.tm.groupCommits.get());
+	}
+
+	@Test
+	public void stragglingMemberRollsBackGroupAfterMaxWait() throws Exception {
+		this.tm.setGroupCommitNames("ingest*");
+		this.tm.setMaxGroupSize(2);
+		this.tm.setMaxGroupLatency(Duration.ofSeconds(10));
+		this.tm.setMaxGroupWait(Duration.ofMillis(50));
+		TransactionTemplate template = new TransactionTemplate(this.tm);
+		template.setName("ingestRow");
+		CyclicBarrier barrier = new CyclicBarrier(2);
+		CountDownLatch release = new CountDownLatch(1);
+
+		Future<Object> finishing = this.executor.submit(() -> template.execute(status -> {
+			await(barrier);
+			return null;
+		}));
+		Future<Object> straggling = this.executor.submit(() -> template.execute(status -> {
+			await(barrier);
+			try {
+				release.await();
+			}
+			catch (InterruptedException ex) {
+				throw new IllegalStateException(ex);
+			}
+			return null;
+		}));
+
+		try {
+			finishing.get(10, TimeUnit.SECONDS);
+			fail("Should have thrown UnexpectedRollbackException");
+		}
+		catch (ExecutionException ex) {
+			assertTrue(ex.getCause() instanceof UnexpectedRollbackException);
+		}
+		// Physical rollback deferred while the straggler still uses the resource
+		assertEquals(0, this.tm.groupRollbacks.get());
+		release.countDown();
+		try {
+			straggling.get(10, TimeUnit.SECONDS);
+			fail("Should have thrown UnexpectedRollbackException");
+		}
+		catch (ExecutionException ex) {
+			assertTrue(ex.getCause() instanceof UnexpectedRollbackException);
+		}
+		assertEquals(0, this.tm.groupCommits.get());
+		assertEquals(1, this.tm.groupRollbacks.get());
+	}
+
+	@Test
+	public void incompatibleDefinitionStartsNewGroup() throws Exception {
+		this.tm.setGroupCommitNames("ingest*");
+		this.tm.setMaxGroupLatency(Duration.ofMillis(50));
+		TransactionTemplate template = new TransactionTemplate(this.tm);
+		template.setName("ingestRow");
+		TransactionTemplate readOnly = new TransactionTemplate(this.tm);
+		readOnly.setName("ingestLookup");
+		readOnly.setReadOnly(true);
+		CyclicBarrier barrier = new CyclicBarrier(2);
+
+		Future<Object> first = this.executor.submit(() -> template.execute(status -> {
+			await(barrier);
+			return null;
+		}));
+		Future<Object> second = this.executor.submit(() -> readOnly.execute(status -> {
+			await(barrier);
+			return null;
+		}));
+		first.get(10, TimeUnit.SECONDS);
+		second.get(10, TimeUnit.SECONDS);
+
+		assertEquals(2, this.tm.groupsBegun.get());
+		assertEquals(2, this.tm.groupCommits.get());
+	}
+
+	@Test
+	public void failedJoinOfOnlyMemberRollsBackGroup() {
+		this.tm.setGroupCommitNames("ingest*");
+		this.tm.setMaxGroupLatency(Duration.ofSeconds(10));
+		this.tm.joinFailure = new IllegalStateException("join failed");
+		TransactionTemplate template = new TransactionTemplate(this.tm);
+		template.setName("ingestRow");
+		try {
+			template.execute(status -> null);
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			assertSame(this.tm.joinFailure, ex);
+		}
+		template.setName("other");
+		try {
+			template.execute(status -> null);
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			assertSame(this.tm.joinFailure, ex);
+		}
+		assertEquals(2, this.tm.groupsBegun.get());
+		assertEquals(2, this.tm.groupRollbacks.get());
+
+		// The abandoned group is not joined by later transactions
+		this.tm.joinFailure = null;
+		this.tm.setMaxGroupLatency(Duration.ZERO);
+		template.setName("ingestRow");
+		template.execute(status -> null);
+		assertEquals(3, this.tm.groupsBegun.get());
+		assertEquals(1, this.tm.groupCommits.get());
+	}
+
+
+	private static void await(CyclicBarrier barrier) {
+		try {
+			barrier.await();
+		}
+		catch (Exception ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+
+	@SuppressWarnings("serial")
+	private static class GroupCommitTransactionManager extends AbstractGroupCommitTransactionManager {
+
+		final AtomicInteger groupsBegun = new AtomicInteger();
+
+		final AtomicInteger groupCommits = new AtomicInteger();
+
+		final AtomicInteger groupRollbacks = new AtomicInteger();
+
+		volatile RuntimeException joinFailure;
+
+		@Override
+		protected Object doBeginGroup(TransactionDefinition definition) {
+			return "group" + this.groupsBegun.incrementAndGet();
+		}
+
+		@Override
+		protected void doCommitGroup(Object groupResource) {
+			this.groupCommits.incrementAndGet();
+		}
+
+		@Override
+		protected void doRollbackGroup(Object groupResource) {
+			this.groupRollbacks.incrementAndGet();
+		}
+
+		@Override
+		protected void doJoinGroup(Object groupResource, TransactionDefinition definition) {
+			if (this.joinFailure != null) {
+				throw this.joinFailure;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import org.springframework.tests.transaction.CallCountingTransactionManager;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link AsyncCompletionSynchronization} dispatch through
+ * {@link AbstractPlatformTransactionManager#setAsyncCompletionExecutor}.
+ */
+public class AsyncCompletionSynchronizationTests {
+
+	private final List<String> events = new ArrayList<>();
+
+	private final List<Runnable> tasks = new ArrayList<>();
+
+	private final CallCountingTransactionManager tm = new CallCountingTransactionManager() {
+		@Override
+		protected void doCleanupAfterCompletion(Object transaction) {
+			events.add("cleanup");
+		}
+	};
+
+
+	@Test
+	public void asyncCallbacksDeferredInOrder() {
+		this.tm.setAsyncCompletionExecutor(this.tasks::add);
+		new TransactionTemplate(this.tm).execute(status -> {
+			TransactionSynchronizationManager.registerSynchronization(new AsyncSynchronization("a1"));
+			TransactionSynchronizationManager.registerSynchronization(new RecordingSynchronization("s"));
+			TransactionSynchronizationManager.registerSynchronization(new AsyncSynchronization("a2"));
+			return null;
+		});
+
+		assertEquals(1, this.tm.commits);
+		assertEquals(1, this.tasks.size());
+		assertEquals("[s.afterCommit, s.afterCompletion, cleanup]", this.events.toString());
+		this.events.clear();
+		this.tasks.get(0).run();
+		assertEquals("[a1.afterCommit, a2.afterCommit, a1.afterCompletion, a2.afterCompletion]", this.events.toString());
+	}
+
+	@Test
+	public void asyncCallbacksOnRollback() {
+		this.tm.setAsyncCompletionExecutor(this.tasks::add);
+		new TransactionTemplate(this.tm).execute(status -> {
+			TransactionSynchronizationManager.registerSynchronization(new AsyncSynchronization("a"));
+			status.setRollbackOnly();
+			return null;
+		});
+
+		assertEquals(1, this.tm.rollbacks);
+		assertEquals("[cleanup]", this.events.toString());
+		this.events.clear();
+		this.tasks.get(0).run();
+		assertEquals("[a.afterCompletion]", this.events.toString());
+	}
+
+	@Test
+	public void noTaskWithoutAsyncSynchronizations() {
+		this.tm.setAsyncCompletionExecutor(this.tasks::add);
+		new TransactionTemplate(this.tm).execute(status -> {
+			TransactionSynchronizationManager.registerSynchronization(new RecordingSynchronization("s"));
+			return null;
+		});
+
+		assertTrue(this.tasks.isEmpty());
+		assertEquals("[s.afterCommit, s.afterCompletion, cleanup]", this.events.toString());
+	}
+
+	@Test
+	public void rejectedTaskRunsInline() {
+		this.tm.setAsyncCompletionExecutor(task -> {
+			throw new RejectedExecutionException("queue full");
+		});
+		new TransactionTemplate(this.tm).execute(status -> {
+			TransactionSynchronizationManager.registerSynchronization(new AsyncSynchronization("a"));
+			return null;
+		});
+
+		assertEquals("[cleanup, a.afterCommit, a.afterCompletion]", this.events.toString());
+	}
+
+	@Test
+	public void asyncCallbacksTimedAndFailuresLogged() {
+		SynchronizationTimingMonitor monitor = new SynchronizationTimingMonitor();
+		TransactionSynchronizationUtils.setTimingMonitor(monitor);
+		try {
+			this.tm.setAsyncCompletionExecutor(this.tasks::add);
+			new TransactionTemplate(this.tm).execute(status -> {
+				TransactionSynchronizationManager.registerSynchronization(new AsyncSynchronization("a1") {
+					@Override
+					public void afterCommit() {
+						throw new IllegalStateException("afterCommit failure");
+					}
+				});
+				TransactionSynchronizationManager.registerSynchronization(new AsyncSynchronization("a2"));
+				return null;
+			});
+			this.tasks.get(0).run();
+		}
+		finally {
+			TransactionSynchronizationUtils.setTimingMonitor(null);
+		}
+
+		assertEquals("[cleanup, a2.afterCommit, a1.afterCompletion, a2.afterCompletion]", this.events.toString());
+		long afterCommits = monitor.getReport().stream()
+				.filter(stats -> stats.getKey().getCallback() == SynchronizationTimingMonitor.Callback.AFTER_COMMIT)
+				.mapToLong(SynchronizationTimingMonitor.CallbackStats::getCount).sum();
+		assertEquals(2, afterCommits);
+	}
+
+	@Test
+	public void synchronousWithoutExecutor() {
+		assertNull(this.tm.getAsyncCompletionExecutor());
+		new TransactionTemplate(this.tm).execute(status -> {
+			TransactionSynchronizationManager.registerSynchronization(new AsyncSynchronization("a"));
+			return null;
+		});
+
+		assertEquals("[a.afterCommit, a.afterCompletion, cleanup]", this.events.toString());
+	}
+
+
+	private class RecordingSynchronization extends TransactionSynchronizationAdapter {
+
+		private final String name;
+
+		RecordingSynchronization(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public void afterCommit() {
+			events.add(this.name + ".afterCommit");
+		}
+
+		@Override
+		public void afterCompletion(int status) {
+			events.add(this.name + ".afterCompletion");
+		}
+	}
+
+
+	private class AsyncSynchronization extends RecordingSynchronization implements AsyncCompletionSynchronization {
+
+		AsyncSynchronization(String name) {
+			super(name);
+		}
+	}
+
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.SavepointManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link ChunkedTransactionTemplate}.
+ */
+public class ChunkedTransactionTemplateTests {
+
+	private final InMemoryTransactionManager tm = new InMemoryTransactionManager();
+
+	private final ChunkedTransactionTemplate template = new ChunkedTransactionTemplate(this.tm);
+
+
+	@Test
+	public void commitsEveryChunkSizeItems() {
+		this.template.setChunkSize(4);
+		List<String> items = IntStream.range(0, 10).mapToObj(String::valueOf).collect(Collectors.toList());
+		ChunkedTransactionTemplate.ChunkResult<String> result = this.template.executeInChunks(items, this::write);
+
+		assertEquals(10, result.getCommittedItemCount());
+		assertEquals(3, result.getCommitCount());
+		assertFalse(result.hasFailures());
+		assertEquals(items, this.tm.committed);
+		assertEquals(3, this.tm.commits);
+	}
+
+	@Test
+	public void commitsAfterMaxChunkDuration() {
+		this.template.setMaxChunkDuration(Duration.ofMillis(1));
+		ChunkedTransactionTemplate.ChunkResult<String> result = this.template.executeInChunks(
+				Stream.of("a", "b", "c"), (item, status) -> {
+					write(item, status);
+					sleep(5);
+				});
+
+		assertEquals(3, result.getCommitCount());
+		assertEquals(Arrays.asList("a", "b", "c"), this.tm.committed);
+	}
+
+	@Test
+	public void failedItemIsolatedUnderSavepoint() {
+		ChunkedTransactionTemplate.ChunkResult<String> result = this.template.executeInChunks(
+				Arrays.asList("a", "b", "poison", "c", "d"), this::write);
+
+		assertEquals(Arrays.asList("a", "b", "c", "d"), this.tm.committed);
+		assertEquals(1, result.getCommitCount());
+		assertEquals(1, result.getFailedItems().size());
+		assertEquals("poison", result.getFailedItems().get(0).getItem());
+		assertTrue(result.getFailedItems().get(0).getException() instanceof IllegalArgumentException);
+		assertEquals(0, this.tm.rollbacks);
+	}
+
+	@Test
+	public void flushFailureBisectedUnderSavepoints() {
+		ChunkedTransactionTemplate.ChunkResult<String> result = this.template.executeInChunks(
+				Arrays.asList("a", "b", "deferred", "c", "d", "e"), this::write);
+
+		assertEquals(Arrays.asList("a", "b", "c", "d", "e"), this.tm.committed);
+		assertEquals(1, result.getCommitCount());
+		assertEquals(5, result.getCommittedItemCount());
+		assertEquals("deferred", result.getFailedItems().get(0).getItem());
+		assertTrue(result.getFailedItems().get(0).getException() instanceof DataIntegrityViolationException);
+		assertEquals(0, this.tm.rollbacks);
+	}
+
+	@Test
+	public void failedItemIsolatedWithoutSavepoints() {
+		this.tm.savepointsSupported = false;
+		this.template.setChunkSize(3);
+		ChunkedTransactionTemplate.ChunkResult<String> result = this.template.executeInChunks(
+				Arrays.asList("a", "b", "poison", "c", "d"), this::write);
+
+		assertEquals(Arrays.asList("a", "b", "c", "d"), this.tm.committed);
+		assertEquals(4, result.getCommittedItemCount());
+		assertEquals("poison", result.getFailedItems().get(0).getItem());
+		assertEquals(1, this.tm.rollbacks);
+	}
+
+	@Test
+	public void commitFailureBisectedInSeparateTransactions() {
+		this.tm.savepointsSupported = false;
+		ChunkedTransactionTemplate.ChunkResult<String> result = this.template.executeInChunks(
+				Arrays.asList("a", "b", "c", "deferred"), this::write);
+
+		assertEquals(Arrays.asList("a", "b", "c"), this.tm.committed);
+		assertEquals(3, result.getCommittedItemCount());
+		assertEquals(1, result.getFailedItems().size());
+		assertEquals("deferred", result.getFailedItems().get(0).getItem());
+		// Whole chunk, second half, and the failing item on its own
+		assertEquals(3, this.tm.rollbacks);
+	}
+
+	@Test
+	public void rollbackOnlyChunkBisected() {
+		this.tm.savepointsSupported = false;
+		ChunkedTransactionTemplate.ChunkResult<String> result = this.template.executeInChunks(
+				Arrays.asList("a", "veto", "b"), (item, status) -> {
+					write(item, status);
+					if (item.equals("veto")) {
+						status.setRollbackOnly();
+					}
+				});
+
+		assertEquals(Arrays.asList("a", "b"), this.tm.committed);
+		assertEquals("veto", result.getFailedItems().get(0).getItem());
+	}
+
+	@Test
+	public void errorPropagatedAfterRollback() {
+		try {
+			this.template.executeInChunks(Arrays.asList("a", "b"), (item, status) -> {
+				write(item, status);
+				if (item.equals("b")) {
+					throw new OutOfMemoryError();
+				}
+			});
+			fail("Should have thrown OutOfMemoryError");
+		}
+		catch (OutOfMemoryError err) {
+			// expected
+		}
+		assertTrue(this.tm.committed.isEmpty());
+		assertEquals(1, this.tm.rollbacks);
+	}
+
+
+	private void write(String item, TransactionStatus status) {
+		if (item.startsWith("poison")) {
+			throw new IllegalArgumentException(item);
+		}
+		InMemoryTransaction transaction = this.tm.current;
+		assertNotNull(transaction);
+		transaction.writes.add(item);
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	/**
+	 * Transaction manager applying the writes of a transaction on commit,
+	 * rejecting "deferred" items on flush and on commit.
+	 */
+	@SuppressWarnings("serial")
+	private static class InMemoryTransactionManager extends AbstractPlatformTransactionManager {
+
+		final List<String> committed = new ArrayList<>();
+
+		boolean savepointsSupported = true;
+
+		int commits;
+
+		int rollbacks;
+
+		@Nullable
+		InMemoryTransaction current;
+
+		@Override
+		protected Object doGetTransaction() {
+			return (this.savepointsSupported ? new SavepointCapableTransaction(this.current) :
+					new InMemoryTransaction(this.current));
+		}
+
+		@Override
+		protected boolean isExistingTransaction(Object transaction) {
+			return (((InMemoryTransaction) transaction).existing != null);
+		}
+
+		@Override
+		protected void doBegin(Object transaction, TransactionDefinition definition) {
+			this.current = (InMemoryTransaction) transaction;
+		}
+
+		@Override
+		protected void doCommit(DefaultTransactionStatus status) {
+			InMemoryTransaction transaction = (InMemoryTransaction) status.getTransaction();
+			transaction.flush();
+			this.committed.addAll(transaction.writes);
+			this.commits++;
+		}
+
+		@Override
+		protected void doRollback(DefaultTransactionStatus status) {
+			this.rollbacks++;
+		}
+
+		@Override
+		protected void doSetRollbackOnly(DefaultTransactionStatus status) {
+			((InMemoryTransaction) status.getTransaction()).rollbackOnly = true;
+		}
+
+		@Override
+		protected void doCleanupAfterCompletion(Object transaction) {
+			this.current = null;
+		}
+	}
+
+
+	private static class InMemoryTransaction implements SmartTransactionObject {
+
+		@Nullable
+		final InMemoryTransaction existing;
+
+		final List<String> writes = new ArrayList<>();
+
+		boolean rollbackOnly;
+
+		InMemoryTransaction(@Nullable InMemoryTransaction existing) {
+			this.existing = existing;
+		}
+
+		@Override
+		public boolean isRollbackOnly() {
+			return this.rollbackOnly;
+		}
+
+		@Override
+		public void flush() {
+			if (this.writes.contains("deferred")) {
+				throw new DataIntegrityViolationException("Deferred constraint violated");
+			}
+		}
+	}
+
+
+	private static class SavepointCapableTransaction extends InMemoryTransaction implements SavepointManager {
+
+		SavepointCapableTransaction(@Nullable InMemoryTransaction existing) {
+			super(existing);
+		}
+
+		@Override
+		public Object createSavepoint() {
+			return this.writes.size();
+		}
+
+		@Override
+		public void rollbackToSavepoint(Object savepoint) {
+			this.writes.subList((Integer) savepoint, this.writes.size()).clear();
+		}
+
+		@Override
+		public void releaseSavepoint(Object savepoint) {
+		}
+	}
+
+}
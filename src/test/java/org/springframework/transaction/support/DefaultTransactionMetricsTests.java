@@ -0,0 +1,182 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.springframework.tests.transaction.CallCountingTransactionManager;
+import org.springframework.transaction.HeuristicCompletionException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionMetrics.TransactionStats;
+import org.springframework.transaction.support.TransactionMetricsRecorder.Outcome;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link DefaultTransactionMetrics} and {@link LatencyHistogram},
+ * recording through {@link AbstractPlatformTransactionManager}.
+ */
+public class DefaultTransactionMetricsTests {
+
+	private final DefaultTransactionMetrics metrics = new DefaultTransactionMetrics();
+
+
+	@After
+	public void verifyTransactionSynchronizationManagerState() {
+		assertTrue(TransactionSynchronizationManager.getResourceMap().isEmpty());
+		assertFalse(TransactionSynchronizationManager.isSynchronizationActive());
+	}
+
+
+	@Test
+	public void commitAndRollbackPerTag() {
+		CallCountingTransactionManager tm = new CallCountingTransactionManager();
+		tm.setMetricsRecorder(this.metrics);
+		assertSame(this.metrics, tm.getMetricsRecorder());
+		TransactionTemplate outer = new TransactionTemplate(tm);
+		outer.setName("outer");
+		TransactionTemplate inner = new TransactionTemplate(tm);
+		inner.setName("inner");
+		inner.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+		outer.execute(outerStatus -> {
+			inner.execute(innerStatus -> {
+				innerStatus.setRollbackOnly();
+				return null;
+			});
+			return null;
+		});
+		outer.execute(status -> null);
+
+		TransactionStats outerStats = this.metrics.getStats("outer", TransactionDefinition.PROPAGATION_REQUIRED);
+		assertEquals(2, outerStats.getBegunCount());
+		assertEquals(2, outerStats.getNewTransactionCount());
+		assertEquals(2, outerStats.getCount(Outcome.COMMITTED));
+		assertEquals(0, outerStats.getCount(Outcome.ROLLED_BACK));
+		assertEquals(2, outerStats.getDuration().getCount());
+		assertEquals(2, outerStats.getBeginLatency().getCount());
+
+		TransactionStats innerStats = this.metrics.getStats("inner", TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		assertEquals(1, innerStats.getBegunCount());
+		assertEquals(1, innerStats.getCount(Outcome.ROLLED_BACK));
+		assertEquals(0, innerStats.getCount(Outcome.COMMITTED));
+		assertNull(this.metrics.getStats("inner", TransactionDefinition.PROPAGATION_REQUIRED));
+
+		assertEquals(1, this.metrics.getSuspendCount());
+		assertEquals(1, this.metrics.getResumeCount());
+		assertEquals(1, this.metrics.getMaxSuspendDepth());
+		assertEquals(3, tm.begun);
+	}
+
+	@Test
+	public void heuristicOutcome() {
+		CallCountingTransactionManager tm = new CallCountingTransactionManager() {
+			@Override
+			protected void doCommit(DefaultTransactionStatus status) {
+				throw new HeuristicCompletionException(HeuristicCompletionException.STATE_MIXED, null);
+			}
+		};
+		tm.setMetricsRecorder(this.metrics);
+		TransactionStatus status = tm.getTransaction(null);
+		try {
+			tm.commit(status);
+			fail("Should have thrown HeuristicCompletionException");
+		}
+		catch (HeuristicCompletionException ex) {
+			// expected
+		}
+		TransactionStats stats = this.metrics.getStats(null, TransactionDefinition.PROPAGATION_REQUIRED);
+		assertEquals(1, stats.getCount(Outcome.HEURISTIC));
+		assertEquals(0, stats.getCount(Outcome.COMMITTED));
+	}
+
+	@Test
+	public void recyclingKeepsTagsAndDurations() {
+		CallCountingTransactionManager tm = new CallCountingTransactionManager();
+		tm.setTransactionStatusRecycling(true);
+		tm.setMetricsRecorder(this.metrics);
+		for (int i = 0; i < 3; i++) {
+			DefaultTransactionDefinition definition = new DefaultTransactionDefinition();
+			definition.setName("tx" + (i % 2));
+			tm.commit(tm.getTransaction(definition));
+		}
+		assertEquals(2, this.metrics.getStats("tx0", TransactionDefinition.PROPAGATION_REQUIRED)
+				.getCount(Outcome.COMMITTED));
+		assertEquals(1, this.metrics.getStats("tx1", TransactionDefinition.PROPAGATION_REQUIRED)
+				.getCount(Outcome.COMMITTED));
+	}
+
+	@Test
+	public void maxTags() {
+		this.metrics.setMaxTags(1);
+		CallCountingTransactionManager tm = new CallCountingTransactionManager();
+		tm.setMetricsRecorder(this.metrics);
+		for (String name : new String[] {"tx1", "tx2", "tx3"}) {
+			DefaultTransactionDefinition definition = new DefaultTransactionDefinition();
+			definition.setName(name);
+			tm.rollback(tm.getTransaction(definition));
+		}
+		assertEquals(2, this.metrics.getStats().size());
+		assertEquals(1, this.metrics.getStats("tx1", TransactionDefinition.PROPAGATION_REQUIRED)
+				.getCount(Outcome.ROLLED_BACK));
+		assertEquals(2, this.metrics.getStats(null, TransactionDefinition.PROPAGATION_REQUIRED)
+				.getCount(Outcome.ROLLED_BACK));
+
+		this.metrics.reset();
+		assertTrue(this.metrics.getStats().isEmpty());
+	}
+
+	@Test
+	public void histogramPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getValueAtPercentile(99, TimeUnit.NANOSECONDS));
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000, histogram.getMax(TimeUnit.MICROSECONDS));
+		assertEquals(500.5, histogram.getMean(TimeUnit.MICROSECONDS), 0.01);
+		assertWithinRelativeError(500, histogram.getValueAtPercentile(50, TimeUnit.MICROSECONDS));
+		assertWithinRelativeError(990, histogram.getValueAtPercentile(99, TimeUnit.MICROSECONDS));
+		assertEquals(1000, histogram.getValueAtPercentile(100, TimeUnit.MICROSECONDS));
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax(TimeUnit.NANOSECONDS));
+	}
+
+	@Test
+	public void histogramBuckets() {
+		for (long value : new long[] {0, 1, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE}) {
+			int index = LatencyHistogram.bucketIndex(value);
+			assertTrue(value <= LatencyHistogram.bucketUpperBound(index));
+			if (index > 0) {
+				assertTrue(value > LatencyHistogram.bucketUpperBound(index - 1));
+			}
+		}
+	}
+
+	private static void assertWithinRelativeError(long expected, long actual) {
+		assertTrue("Expected about " + expected + " but was " + actual,
+				actual >= expected && actual <= expected * (1 + 1.0 / LatencyHistogram.SUB_BUCKETS));
+	}
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.springframework.transaction.NestedTransactionNotSupportedException;
+import org.springframework.transaction.SavepointManager;
+import org.springframework.transaction.TransactionStatus;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link SavepointBatchProcessor}.
+ */
+public class SavepointBatchProcessorTests {
+
+	private final WriteLog log = new WriteLog();
+
+	private final TransactionStatus status = new DefaultTransactionStatus(this.log, true, false, false, false, null);
+
+	private final SavepointBatchProcessor processor = new SavepointBatchProcessor();
+
+
+	@Test
+	public void itemsShareSavepoints() {
+		this.processor.setMaxItemsPerSavepoint(4);
+		SavepointBatchProcessor.BatchResult<String> result = this.processor.process(
+				this.status, Arrays.asList("0", "1", "2", "3", "4", "5", "6", "7", "8", "9"), this::write);
+
+		assertEquals(10, result.getProcessedItemCount());
+		assertEquals(3, result.getSavepointCount());
+		assertFalse(result.hasFailures());
+		assertEquals(10, this.log.writes.size());
+		assertEquals(0, this.log.activeSavepoints);
+	}
+
+	@Test
+	public void failingItemRolledBackOnly() {
+		this.processor.setMaxItemsPerSavepoint(4);
+		SavepointBatchProcessor.BatchResult<String> result = this.processor.process(
+				this.status, Arrays.asList("0", "1", "2", "poison", "4", "5", "6", "7"), this::write);
+
+		assertEquals(Arrays.asList("0", "1", "2", "4", "5", "6", "7"), this.log.writes);
+		assertEquals(7, result.getProcessedItemCount());
+		assertEquals(1, result.getFailedItems().size());
+		assertEquals("poison", result.getFailedItems().get(0).getItem());
+		assertTrue(result.getFailedItems().get(0).getException() instanceof IllegalArgumentException);
+		// Failed group of 4, then 2 items, then back to groups of 4
+		assertEquals(4, result.getSavepointCount());
+		assertEquals(0, this.log.activeSavepoints);
+	}
+
+	@Test
+	public void savepointsShrinkAroundFailures() {
+		this.processor.setMaxItemsPerSavepoint(8);
+		SavepointBatchProcessor.BatchResult<String> result = this.processor.process(
+				this.status, Arrays.asList("a", "poison1", "poison2", "b"), this::write);
+
+		assertEquals(Arrays.asList("a", "b"), this.log.writes);
+		assertEquals(2, result.getFailedItems().size());
+		assertEquals("poison1", result.getFailedItems().get(0).getItem());
+		assertEquals("poison2", result.getFailedItems().get(1).getItem());
+		assertEquals(3, result.getSavepointCount());
+	}
+
+	@Test
+	public void failureOnFlushIsolatedPerItem() {
+		this.processor.setMaxItemsPerSavepoint(4);
+		SavepointBatchProcessor.BatchResult<String> result = this.processor.process(
+				this.status, Arrays.asList("a", "flushPoison", "b", "c"), this::write);
+
+		assertEquals(Arrays.asList("a", "b", "c"), this.log.writes);
+		assertEquals(3, result.getProcessedItemCount());
+		assertEquals(1, result.getFailedItems().size());
+		assertEquals("flushPoison", result.getFailedItems().get(0).getItem());
+		assertTrue(result.getFailedItems().get(0).getException() instanceof IllegalStateException);
+		assertEquals(0, this.log.activeSavepoints);
+	}
+
+	@Test
+	public void executeWithSavepoints() {
+		TransactionOperations operations = new TransactionOperations() {
+			@Override
+			public <T> T execute(TransactionCallback<T> action) {
+				return action.doInTransaction(status);
+			}
+		};
+		SavepointBatchProcessor.BatchResult<String> result =
+				operations.executeWithSavepoints(Arrays.asList("a", "poison", "b"), this::write);
+
+		assertEquals(Arrays.asList("a", "b"), this.log.writes);
+		assertEquals(2, result.getProcessedItemCount());
+		assertEquals(1, result.getFailedItems().size());
+	}
+
+	@Test(expected = NestedTransactionNotSupportedException.class)
+	public void savepointsRequired() {
+		TransactionStatus status = new DefaultTransactionStatus(new Object(), true, false, false, false, null);
+		this.processor.process(status, Arrays.asList("a", "b"), this::write);
+	}
+
+
+	private void write(String item, TransactionStatus status) {
+		if (item.startsWith("poison")) {
+			throw new IllegalArgumentException(item);
+		}
+		this.log.writes.add(item);
+	}
+
+
+	private static class WriteLog implements SavepointManager, SmartTransactionObject {
+
+		final List<String> writes = new ArrayList<>();
+
+		int activeSavepoints;
+
+		/** Number of writes flushed, i.e. checked for deferred failures. */
+		int flushed;
+
+		@Override
+		public Object createSavepoint() {
+			this.activeSavepoints++;
+			return this.writes.size();
+		}
+
+		@Override
+		public void rollbackToSavepoint(Object savepoint) {
+			this.writes.subList((Integer) savepoint, this.writes.size()).clear();
+			this.flushed = Math.min(this.flushed, this.writes.size());
+		}
+
+		@Override
+		public void releaseSavepoint(Object savepoint) {
+			this.activeSavepoints--;
+		}
+
+		@Override
+		public boolean isRollbackOnly() {
+			return false;
+		}
+
+		@Override
+		public void flush() {
+			for (int i = this.flushed; i < this.writes.size(); i++) {
+				if (this.writes.get(i).startsWith("flushPoison")) {
+					throw new IllegalStateException(this.writes.get(i));
+				}
+			}
+			this.flushed = this.writes.size();
+		}
+	}
+
+}
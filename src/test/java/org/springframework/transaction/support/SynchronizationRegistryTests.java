@@ -0,0 +1,194 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+import org.springframework.tests.transaction.CallCountingTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link SynchronizationRegistry}.
+ */
+public class SynchronizationRegistryTests {
+
+	@Test
+	public void sortedOnRegistration() {
+		SynchronizationRegistry registry = new SynchronizationRegistry();
+		OrderedSynchronization s1 = new OrderedSynchronization(5);
+		OrderedSynchronization s2 = new OrderedSynchronization(1);
+		TransactionSynchronization s3 = new TransactionSynchronizationAdapter() {};
+		OrderedSynchronization s4 = new OrderedSynchronization(5);
+		OrderedSynchronization s5 = new OrderedSynchronization(Ordered.HIGHEST_PRECEDENCE);
+		registry.add(s1);
+		registry.add(s2);
+		registry.add(s3);
+		registry.add(s4);
+		registry.add(s5);
+
+		List<TransactionSynchronization> snapshot = registry.getSnapshot();
+		assertEquals(5, snapshot.size());
+		assertSame(s5, snapshot.get(0));
+		assertSame(s2, snapshot.get(1));
+		assertSame(s1, snapshot.get(2));
+		assertSame(s4, snapshot.get(3));
+		assertSame(s3, snapshot.get(4));
+	}
+
+	@Test
+	public void matchesLazySortForManyRegistrations() {
+		SynchronizationRegistry registry = new SynchronizationRegistry();
+		List<TransactionSynchronization> expected = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			OrderedSynchronization synchronization = new OrderedSynchronization((i * 37) % 11);
+			expected.add(synchronization);
+			assertTrue(registry.add(synchronization));
+		}
+		AnnotationAwareOrderComparator.sort(expected);
+		assertEquals(expected, registry.getSnapshot());
+	}
+
+	@Test
+	public void duplicatesIgnored() {
+		SynchronizationRegistry registry = new SynchronizationRegistry();
+		List<TransactionSynchronization> synchs = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			TransactionSynchronization synchronization = new TransactionSynchronizationAdapter() {};
+			synchs.add(synchronization);
+			assertTrue(registry.add(synchronization));
+		}
+		for (TransactionSynchronization synchronization : synchs) {
+			assertFalse(registry.add(synchronization));
+		}
+		assertEquals(20, registry.size());
+	}
+
+	@Test
+	public void snapshotCachedUntilModified() {
+		SynchronizationRegistry registry = new SynchronizationRegistry();
+		assertTrue(registry.getSnapshot().isEmpty());
+
+		TransactionSynchronization s1 = new TransactionSynchronizationAdapter() {};
+		registry.add(s1);
+		List<TransactionSynchronization> snapshot = registry.getSnapshot();
+		assertSame(snapshot, registry.getSnapshot());
+
+		registry.add(s1);
+		assertSame(snapshot, registry.getSnapshot());
+
+		registry.add(new TransactionSynchronizationAdapter() {});
+		List<TransactionSynchronization> newSnapshot = registry.getSnapshot();
+		assertNotSame(snapshot, newSnapshot);
+		assertEquals(1, snapshot.size());
+		assertEquals(2, newSnapshot.size());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void snapshotIsUnmodifiable() {
+		SynchronizationRegistry registry = new SynchronizationRegistry();
+		registry.add(new TransactionSynchronizationAdapter() {});
+		registry.getSnapshot().clear();
+	}
+
+	@Test
+	public void suspendCallbacksOnlyForImplementingSynchronizations() {
+		List<String> events = new ArrayList<>();
+		SynchronizationRegistry registry = new SynchronizationRegistry();
+		registry.add(new SuspendAwareSynchronization(events));
+		registry.add(new OrderedSynchronization(1));
+		registry.add(new TransactionSynchronization() {});
+
+		assertTrue(SynchronizationRegistry.hasSuspendCallbacks(SuspendAwareSynchronization.class));
+		assertTrue(SynchronizationRegistry.hasSuspendCallbacks(ResourceHolderSynchronization.class));
+		assertFalse(SynchronizationRegistry.hasSuspendCallbacks(OrderedSynchronization.class));
+		registry.suspendSynchronizations();
+		registry.resumeSynchronizations();
+		assertEquals("[suspend, resume]", events.toString());
+	}
+
+	@Test
+	public void suspensionMovesSynchronizationStateAside() {
+		List<String> events = new ArrayList<>();
+		TransactionTemplate outer = new TransactionTemplate(new CallCountingTransactionManager());
+		outer.setName("outer");
+		outer.setReadOnly(true);
+		TransactionTemplate inner = new TransactionTemplate(new CallCountingTransactionManager());
+		inner.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		inner.setName("inner");
+
+		outer.execute(status -> {
+			TransactionSynchronizationManager.registerSynchronization(new OrderedSynchronization(1));
+			TransactionSynchronizationManager.registerSynchronization(new SuspendAwareSynchronization(events));
+			List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+			inner.execute(innerStatus -> {
+				assertTrue(TransactionSynchronizationManager.getSynchronizations().isEmpty());
+				assertEquals("inner", TransactionSynchronizationManager.getCurrentTransactionName());
+				assertFalse(TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+				return null;
+			});
+			assertSame(synchronizations, TransactionSynchronizationManager.getSynchronizations());
+			assertEquals("outer", TransactionSynchronizationManager.getCurrentTransactionName());
+			assertTrue(TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+			assertTrue(TransactionSynchronizationManager.isActualTransactionActive());
+			return null;
+		});
+		assertEquals("[suspend, resume]", events.toString());
+	}
+
+
+	private static class SuspendAwareSynchronization extends TransactionSynchronizationAdapter {
+
+		private final List<String> events;
+
+		SuspendAwareSynchronization(List<String> events) {
+			this.events = events;
+		}
+
+		@Override
+		public void suspend() {
+			this.events.add("suspend");
+		}
+
+		@Override
+		public void resume() {
+			this.events.add("resume");
+		}
+	}
+
+
+	private static class OrderedSynchronization extends TransactionSynchronizationAdapter {
+
+		private final int order;
+
+		OrderedSynchronization(int order) {
+			this.order = order;
+		}
+
+		@Override
+		public int getOrder() {
+			return this.order;
+		}
+	}
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.springframework.tests.transaction.CallCountingTransactionManager;
+import org.springframework.transaction.support.SynchronizationTimingMonitor.CallbackStats;
+import org.springframework.transaction.support.SynchronizationTimingMonitor.Callback;
+import org.springframework.transaction.support.SynchronizationTimingMonitor.Key;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link SynchronizationTimingMonitor}.
+ */
+public class SynchronizationTimingMonitorTests {
+
+	private final List<Key> slowCallbacks = new ArrayList<>();
+
+	private final SynchronizationTimingMonitor monitor = new SynchronizationTimingMonitor() {
+		@Override
+		protected void onSlowCallback(TransactionSynchronization synchronization, Key key, long nanos, long thresholdNanos) {
+			slowCallbacks.add(key);
+		}
+	};
+
+
+	@After
+	public void removeMonitor() {
+		TransactionSynchronizationUtils.setTimingMonitor(null);
+	}
+
+
+	@Test
+	public void callbacksTimedPerClassOrderAndCallback() {
+		this.monitor.setThreshold(1, TimeUnit.HOURS);
+		this.monitor.setThreshold(Callback.AFTER_COMMIT, 0, TimeUnit.NANOSECONDS);
+		assertEquals(0, this.monitor.getThreshold(Callback.AFTER_COMMIT, TimeUnit.MILLISECONDS));
+		assertEquals(1, this.monitor.getThreshold(Callback.AFTER_COMPLETION, TimeUnit.HOURS));
+		TransactionSynchronizationUtils.setTimingMonitor(this.monitor);
+		assertSame(this.monitor, TransactionSynchronizationUtils.getTimingMonitor());
+
+		CallCountingTransactionManager tm = new CallCountingTransactionManager();
+		TransactionTemplate template = new TransactionTemplate(tm);
+		for (int i = 0; i < 2; i++) {
+			template.execute(status -> {
+				TransactionSynchronizationManager.registerSynchronization(new OrderedSynchronization(1));
+				TransactionSynchronizationManager.registerSynchronization(new OrderedSynchronization(2));
+				return null;
+			});
+		}
+
+		List<CallbackStats> report = this.monitor.getReport();
+		assertEquals(8, report.size());
+		for (CallbackStats stats : report) {
+			assertEquals(OrderedSynchronization.class.getName(), stats.getKey().getSynchronizationClassName());
+			assertEquals(2, stats.getCount());
+			assertTrue(stats.getMaxNanos() <= stats.getTotalNanos());
+			assertEquals(stats.getKey().getCallback() == Callback.AFTER_COMMIT ? 2 : 0, stats.getSlowCount());
+		}
+		assertEquals(4, this.slowCallbacks.size());
+		assertEquals(1, this.slowCallbacks.get(0).getOrder());
+		assertEquals(2, this.slowCallbacks.get(1).getOrder());
+		assertTrue(this.monitor.toString().contains("after_commit of " + OrderedSynchronization.class.getName()));
+
+		this.monitor.reset();
+		assertTrue(this.monitor.getReport().isEmpty());
+	}
+
+	@Test
+	public void noTimingByDefault() {
+		assertNull(TransactionSynchronizationUtils.getTimingMonitor());
+		CallCountingTransactionManager tm = new CallCountingTransactionManager();
+		new TransactionTemplate(tm).execute(status -> {
+			TransactionSynchronizationManager.registerSynchronization(new OrderedSynchronization(1));
+			return null;
+		});
+		assertTrue(this.monitor.getReport().isEmpty());
+	}
+
+	@Test
+	public void failingMonitorDoesNotAbortCallbacks() {
+		TransactionSynchronizationUtils.setTimingMonitor(new SynchronizationTimingMonitor() {
+			@Override
+			public void record(TransactionSynchronization synchronization, Callback callback, long nanos) {
+				throw new IllegalStateException("monitor failure");
+			}
+		});
+		List<Integer> completed = new ArrayList<>();
+		CallCountingTransactionManager tm = new CallCountingTransactionManager();
+		new TransactionTemplate(tm).execute(status -> {
+			for (int order = 1; order <= 2; order++) {
+				TransactionSynchronizationManager.registerSynchronization(new OrderedSynchronization(order) {
+					@Override
+					public void afterCompletion(int completionStatus) {
+						completed.add(getOrder());
+					}
+				});
+			}
+			return null;
+		});
+
+		assertEquals(1, tm.commits);
+		assertEquals(2, completed.size());
+	}
+
+
+	private static class OrderedSynchronization extends TransactionSynchronizationAdapter {
+
+		private final int order;
+
+		OrderedSynchronization(int order) {
+			this.order = order;
+		}
+
+		@Override
+		public int getOrder() {
+			return this.order;
+		}
+	}
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.springframework.tests.transaction.CallCountingTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link TransactionContextSnapshot} and pluggable
+ * {@link TransactionContextStorage} in {@link TransactionSynchronizationManager}.
+ */
+public class TransactionContextSnapshotTests {
+
+	private final CallCountingTransactionManager tm = new CallCountingTransactionManager();
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	private final SharedResourceHolder shared = new SharedResourceHolder() {
+	};
+
+
+	@After
+	public void shutdown() {
+		this.executor.shutdownNow();
+		assertFalse(TransactionSynchronizationManager.isSynchronizationActive());
+		assertTrue(TransactionSynchronizationManager.getResourceMap().isEmpty());
+	}
+
+
+	@Test
+	public void attachReadOnlySnapshotToChildTask() throws Exception {
+		Object key = new Object();
+		DefaultTransactionDefinition definition = new DefaultTransactionDefinition();
+		definition.setReadOnly(true);
+		definition.setName("readOnlyTx");
+		TransactionStatus status = this.tm.getTransaction(definition);
+		TransactionSynchronizationManager.bindResource(key, this.shared);
+		try {
+			TransactionContextSnapshot snapshot = TransactionSynchronizationManager.createReadOnlySnapshot();
+			Future<Object> result = this.executor.submit(snapshot.wrap(() -> {
+				assertTrue(TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+				assertTrue(TransactionSynchronizationManager.isActualTransactionActive());
+				assertFalse(TransactionSynchronizationManager.isSynchronizationActive());
+				assertEquals("readOnlyTx", TransactionSynchronizationManager.getCurrentTransactionName());
+				return TransactionSynchronizationManager.getResource(key);
+			}));
+			assertSame(this.shared, result.get());
+			Future<?> cleared = this.executor.submit(() -> {
+				assertNull(TransactionSynchronizationManager.getResource(key));
+				assertFalse(TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+			});
+			cleared.get();
+		}
+		finally {
+			TransactionSynchronizationManager.unbindResource(key);
+			this.tm.commit(status);
+		}
+	}
+
+	@Test
+	public void snapshotInvalidatedOnCompletion() {
+		DefaultTransactionDefinition definition = new DefaultTransactionDefinition();
+		definition.setReadOnly(true);
+		TransactionStatus status = this.tm.getTransaction(definition);
+		TransactionContextSnapshot snapshot = TransactionSynchronizationManager.createReadOnlySnapshot();
+		assertTrue(snapshot.isValid());
+		this.tm.commit(status);
+		assertFalse(snapshot.isValid());
+		try {
+			snapshot.attach();
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void snapshotRequiresReadOnlyTransaction() {
+		TransactionStatus status = this.tm.getTransaction(new DefaultTransactionDefinition());
+		try {
+			TransactionSynchronizationManager.createReadOnlySnapshot();
+		}
+		finally {
+			this.tm.commit(status);
+		}
+	}
+
+	@Test
+	public void snapshotSkipsUnsharedResources() throws Exception {
+		Object sharedKey = new Object();
+		Object connectionKey = new Object();
+		ResourceHolderSupport connectionHolder = new ResourceHolderSupport() {
+		};
+		DefaultTransactionDefinition definition = new DefaultTransactionDefinition();
+		definition.setReadOnly(true);
+		TransactionStatus status = this.tm.getTransaction(definition);
+		TransactionSynchronizationManager.bindResource(sharedKey, this.shared);
+		TransactionSynchronizationManager.bindResource(connectionKey, connectionHolder);
+		try {
+			TransactionContextSnapshot snapshot = TransactionSynchronizationManager.createReadOnlySnapshot();
+			Future<?> result = this.executor.submit(snapshot.wrap(() -> {
+				assertSame(this.shared, TransactionSynchronizationManager.getResource(sharedKey));
+				assertNull(TransactionSynchronizationManager.getResource(connectionKey));
+				assertTrue(TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+			}));
+			result.get();
+			assertSame(connectionHolder, TransactionSynchronizationManager.getResource(connectionKey));
+		}
+		finally {
+			TransactionSynchronizationManager.unbindResource(connectionKey);
+			TransactionSynchronizationManager.unbindResource(sharedKey);
+			this.tm.commit(status);
+		}
+	}
+
+	@Test
+	public void attachRestoresPreviousContext() throws Exception {
+		Object key = new Object();
+		Object otherKey = new Object();
+		DefaultTransactionDefinition definition = new DefaultTransactionDefinition();
+		definition.setReadOnly(true);
+		TransactionStatus status = this.tm.getTransaction(definition);
+		TransactionSynchronizationManager.bindResource(key, this.shared);
+		try {
+			TransactionContextSnapshot snapshot = TransactionSynchronizationManager.createReadOnlySnapshot();
+			Future<?> result = this.executor.submit(() -> {
+				TransactionSynchronizationManager.bindResource(otherKey, "other");
+				TransactionContextSnapshot.Scope scope = snapshot.attach();
+				try {
+					assertSame(this.shared, TransactionSynchronizationManager.getResource(key));
+					assertNull(TransactionSynchronizationManager.getResource(otherKey));
+				}
+				finally {
+					scope.close();
+				}
+				assertNull(TransactionSynchronizationManager.getResource(key));
+				assertEquals("other", TransactionSynchronizationManager.unbindResource(otherKey));
+			});
+			result.get();
+		}
+		finally {
+			TransactionSynchronizationManager.unbindResource(key);
+			this.tm.commit(status);
+		}
+	}
+
+	@Test
+	public void customContextStorage() {
+		TransactionContextStorage original = TransactionSynchronizationManager.getContextStorage();
+		CountingContextStorage storage = new CountingContextStorage();
+		TransactionSynchronizationManager.setContextStorage(storage);
+		try {
+			TransactionStatus status = this.tm.getTransaction(new DefaultTransactionDefinition());
+			assertTrue(TransactionSynchronizationManager.isSynchronizationActive());
+			this.tm.commit(status);
+			assertEquals(1, storage.sets);
+			assertNotNull(storage.getContext());
+		}
+		finally {
+			TransactionSynchronizationManager.setContextStorage(original);
+		}
+	}
+
+	@Test
+	public void releaseContextRemovesItFromStorage() {
+		TransactionContextStorage original = TransactionSynchronizationManager.getContextStorage();
+		CountingContextStorage storage = new CountingContextStorage();
+		TransactionSynchronizationManager.setContextStorage(storage);
+		try {
+			this.tm.commit(this.tm.getTransaction(new DefaultTransactionDefinition()));
+			assertNotNull(storage.getContext());
+			TransactionSynchronizationManager.releaseContext();
+			assertNull(storage.getContext());
+			this.tm.commit(this.tm.getTransaction(new DefaultTransactionDefinition()));
+			assertEquals(2, storage.sets);
+		}
+		finally {
+			TransactionSynchronizationManager.releaseContext();
+			TransactionSynchronizationManager.setContextStorage(original);
+		}
+	}
+
+	@Test
+	public void releaseContextRejectedWhileInUse() {
+		Object key = new Object();
+		TransactionStatus status = this.tm.getTransaction(new DefaultTransactionDefinition());
+		try {
+			TransactionSynchronizationManager.releaseContext();
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+		finally {
+			this.tm.commit(status);
+		}
+		TransactionSynchronizationManager.bindResource(key, this.shared);
+		try {
+			TransactionSynchronizationManager.releaseContext();
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+		finally {
+			TransactionSynchronizationManager.unbindResource(key);
+		}
+	}
+
+
+	private static class CountingContextStorage extends ThreadLocalTransactionContextStorage {
+
+		int sets;
+
+		@Override
+		public void setContext(TransactionContext context) {
+			this.sets++;
+			super.setContext(context);
+		}
+	}
+
+}
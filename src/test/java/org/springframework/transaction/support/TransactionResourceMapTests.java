@@ -0,0 +1,129 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link TransactionResourceMap} and its use by
+ * {@link TransactionSynchronizationManager}.
+ */
+public class TransactionResourceMapTests {
+
+	@After
+	public void verifyNoResourcesLeft() {
+		assertTrue(TransactionSynchronizationManager.getResourceMap().isEmpty());
+	}
+
+
+	@Test
+	public void inlineEntries() {
+		TransactionResourceMap map = new TransactionResourceMap();
+		Object key1 = new Object();
+		Object key2 = new Object();
+		assertTrue(map.isEmpty());
+
+		assertNull(map.put(key1, "value1"));
+		assertNull(map.put(key2, "value2"));
+		assertEquals(2, map.size());
+		assertEquals("value1", map.get(key1));
+		assertEquals("value2", map.get(key2));
+		assertEquals("value1", map.put(key1, "value1a"));
+		assertEquals("value1a", map.get(key1));
+
+		assertEquals("value1a", map.remove(key1));
+		assertNull(map.get(key1));
+		assertEquals("value2", map.get(key2));
+		assertEquals("value2", map.remove(key2));
+		assertTrue(map.isEmpty());
+	}
+
+	@Test
+	public void spillBeyondInlineCapacity() {
+		TransactionResourceMap map = new TransactionResourceMap();
+		List<Object> keys = new ArrayList<>();
+		for (int i = 0; i < TransactionResourceMap.INLINE_CAPACITY * 3; i++) {
+			Object key = new Object();
+			keys.add(key);
+			assertNull(map.put(key, i));
+		}
+		assertEquals(keys.size(), map.size());
+		assertEquals(keys.size(), map.entrySet().size());
+		int count = 0;
+		for (Map.Entry<Object, Object> entry : map.entrySet()) {
+			assertSame(keys.get((Integer) entry.getValue()), entry.getKey());
+			count++;
+		}
+		assertEquals(keys.size(), count);
+
+		for (int i = 0; i < keys.size(); i++) {
+			assertEquals(i, map.get(keys.get(i)));
+		}
+		for (int i = 0; i < keys.size(); i += 2) {
+			assertEquals(i, map.remove(keys.get(i)));
+		}
+		for (int i = 0; i < keys.size(); i++) {
+			assertEquals((i % 2 == 0 ? null : i), map.get(keys.get(i)));
+		}
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertFalse(map.entrySet().iterator().hasNext());
+	}
+
+	@Test
+	public void keysComparedByIdentity() {
+		TransactionResourceMap map = new TransactionResourceMap();
+		String key = "key";
+		map.put(key, "value");
+		assertFalse(map.containsKey(new String("key")));
+		assertNull(map.get(new String("key")));
+		assertTrue(map.containsKey(key));
+	}
+
+	@Test
+	public void resourceMapReusedAcrossBindings() {
+		Object key = new Object();
+		TransactionSynchronizationManager.bindResource(key, "value");
+		Map<Object, Object> resources = TransactionSynchronizationManager.getResourceMap();
+		assertEquals(1, resources.size());
+		assertEquals("value", TransactionSynchronizationManager.unbindResource(key));
+		assertTrue(resources.isEmpty());
+
+		TransactionSynchronizationManager.bindResource(key, "value2");
+		// The unmodifiable view from before still reflects the same reused map
+		assertEquals("value2", resources.get(key));
+		assertEquals("value2", TransactionSynchronizationManager.unbindResource(key));
+	}
+
+	@Test
+	public void voidResourceHolderRemovedOnAccess() {
+		Object key = new Object();
+		ResourceHolderSupport holder = new ResourceHolderSupport() {};
+		TransactionSynchronizationManager.bindResource(key, holder);
+		holder.unbound();
+		assertFalse(TransactionSynchronizationManager.hasResource(key));
+		assertNull(TransactionSynchronizationManager.unbindResourceIfPossible(key));
+	}
+
+}
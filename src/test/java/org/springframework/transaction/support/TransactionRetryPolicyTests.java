@@ -0,0 +1,145 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.CannotSerializeTransactionException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DeadlockLoserDataAccessException;
+import org.springframework.tests.transaction.CallCountingTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionSystemException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link TransactionRetryPolicy} and {@link RetryBudget}.
+ */
+public class TransactionRetryPolicyTests {
+
+	private final CallCountingTransactionManager tm = new CallCountingTransactionManager();
+
+
+	@Test
+	public void transientFailuresRetryable() {
+		TransactionRetryPolicy policy = new TransactionRetryPolicy(3);
+		assertTrue(policy.isRetryable(new DeadlockLoserDataAccessException("Deadlock", null)));
+		assertTrue(policy.isRetryable(new CannotSerializeTransactionException("Serialization failure")));
+		assertTrue(policy.isRetryable(new CannotAcquireLockException("Lock wait timeout")));
+		assertTrue(policy.isRetryable(new TransactionSystemException("Could not commit",
+				new SQLException("Serialization failure", "40001"))));
+		assertTrue(policy.isRetryable(new TransactionSystemException("Could not commit",
+				new SQLTransactionRollbackException("Rolled back"))));
+		assertFalse(policy.isRetryable(new DataIntegrityViolationException("Constraint violated")));
+		assertFalse(policy.isRetryable(new TransactionSystemException("Could not commit",
+				new SQLException("Connection lost", "08006"))));
+		assertFalse(policy.isRetryable(new IllegalStateException()));
+	}
+
+	@Test
+	public void backoffBoundedAndGrowing() {
+		TransactionRetryPolicy policy = new TransactionRetryPolicy(
+				10, Duration.ofMillis(10), Duration.ofMillis(40), null);
+		for (int i = 0; i < 100; i++) {
+			assertTrue(policy.getBackoffMillis(1) <= 10);
+			assertTrue(policy.getBackoffMillis(3) <= 40);
+			assertTrue(policy.getBackoffMillis(64) <= 40);
+			assertTrue(policy.getBackoffMillis(64) >= 0);
+		}
+	}
+
+	@Test
+	public void appliesToOutermostTransactionOnly() {
+		TransactionRetryPolicy policy = new TransactionRetryPolicy(3);
+		assertTrue(policy.appliesTo(new DefaultTransactionDefinition()));
+		assertTrue(policy.appliesTo(new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW)));
+		assertFalse(policy.appliesTo(new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_SUPPORTS)));
+		assertFalse(new TransactionRetryPolicy(1).appliesTo(new DefaultTransactionDefinition()));
+
+		new TransactionTemplate(this.tm).execute(status -> {
+			assertFalse(policy.appliesTo(new DefaultTransactionDefinition()));
+			return null;
+		});
+	}
+
+	@Test
+	public void budgetLimitsRetries() {
+		RetryBudget budget = new RetryBudget(0.5, 2);
+		assertTrue(budget.tryAcquireRetry());
+		assertTrue(budget.tryAcquireRetry());
+		assertFalse(budget.tryAcquireRetry());
+
+		budget.recordExecution();
+		assertFalse(budget.tryAcquireRetry());
+		budget.recordExecution();
+		assertTrue(budget.tryAcquireRetry());
+
+		for (int i = 0; i < 10; i++) {
+			budget.recordExecution();
+		}
+		assertEquals(2, budget.getAvailableRetries());
+	}
+
+	@Test
+	public void templateRetriesTransientFailures() {
+		TransactionTemplate template = new TransactionTemplate(this.tm);
+		template.setRetryPolicy(new TransactionRetryPolicy(3, Duration.ZERO, Duration.ZERO, null));
+		AtomicInteger attempts = new AtomicInteger();
+
+		Object result = template.execute(status -> {
+			if (attempts.incrementAndGet() < 3) {
+				throw new CannotAcquireLockException("Lock wait timeout");
+			}
+			return "done";
+		});
+
+		assertEquals("done", result);
+		assertEquals(3, this.tm.begun);
+		assertEquals(2, this.tm.rollbacks);
+		assertEquals(1, this.tm.commits);
+	}
+
+	@Test
+	public void templateRetriesLimitedByBudget() {
+		TransactionTemplate template = new TransactionTemplate(this.tm);
+		template.setRetryPolicy(new TransactionRetryPolicy(5, Duration.ZERO, Duration.ZERO, new RetryBudget(0, 1)));
+		AtomicInteger attempts = new AtomicInteger();
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				template.execute(status -> {
+					attempts.incrementAndGet();
+					throw new CannotAcquireLockException("Lock wait timeout");
+				});
+				fail("Should have thrown CannotAcquireLockException");
+			}
+			catch (CannotAcquireLockException ex) {
+				// expected
+			}
+		}
+		// One retry for the first execution, none left for the second
+		assertEquals(3, attempts.get());
+	}
+
+}
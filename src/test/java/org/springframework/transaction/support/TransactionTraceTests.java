@@ -0,0 +1,114 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.transaction.support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import org.springframework.tests.transaction.CallCountingTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionMetricsRecorder.Outcome;
+import org.springframework.transaction.support.TransactionTrace.Phase;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link TransactionTracer} and {@link TransactionTrace},
+ * traced through {@link AbstractPlatformTransactionManager}.
+ */
+public class TransactionTraceTests {
+
+	private final List<TransactionTrace> traces = new ArrayList<>();
+
+
+	@Test
+	public void phasesOfCommit() {
+		CallCountingTransactionManager tm = new CallCountingTransactionManager();
+		tm.setTransactionTracer(new TransactionTracer(this.traces::add));
+		TransactionTemplate template = new TransactionTemplate(tm);
+		template.setName("traced");
+		template.execute(status -> {
+			assertNotNull(((DefaultTransactionStatus) status).getTransactionTrace());
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					assertTrue(traces.isEmpty());
+				}
+			});
+			return null;
+		});
+
+		assertEquals(1, this.traces.size());
+		TransactionTrace trace = this.traces.get(0);
+		assertEquals("traced", trace.getName());
+		assertEquals(TransactionDefinition.PROPAGATION_REQUIRED, trace.getPropagationBehavior());
+		assertTrue(trace.isNewTransaction());
+		assertEquals(Outcome.COMMITTED, trace.getOutcome());
+		assertEquals(Thread.currentThread().getName(), trace.getThreadName());
+		long sum = 0;
+		for (Phase phase : Phase.values()) {
+			long duration = trace.getDuration(phase, TimeUnit.NANOSECONDS);
+			assertTrue(duration >= 0);
+			sum += duration;
+		}
+		assertEquals(trace.getTotalDuration(TimeUnit.NANOSECONDS), sum);
+		assertTrue(trace.toString().contains("before_commit="));
+	}
+
+	@Test
+	public void rollbackWithRecycling() {
+		CallCountingTransactionManager tm = new CallCountingTransactionManager();
+		tm.setTransactionStatusRecycling(true);
+		tm.setTransactionTracer(new TransactionTracer(this.traces::add));
+		TransactionStatus status = tm.getTransaction(null);
+		tm.rollback(status);
+		assertNull(((DefaultTransactionStatus) status).getTransactionTrace());
+		assertSame(status, tm.getTransaction(null));
+		tm.commit(status);
+
+		assertEquals(2, this.traces.size());
+		assertEquals(Outcome.ROLLED_BACK, this.traces.get(0).getOutcome());
+		assertEquals(Outcome.COMMITTED, this.traces.get(1).getOutcome());
+		assertNotSame(this.traces.get(0), this.traces.get(1));
+	}
+
+	@Test
+	public void sampling() {
+		CallCountingTransactionManager tm = new CallCountingTransactionManager();
+		tm.setTransactionTracer(new TransactionTracer(this.traces::add, 0));
+		TransactionStatus status = tm.getTransaction(null);
+		assertNull(((DefaultTransactionStatus) status).getTransactionTrace());
+		tm.commit(status);
+		assertTrue(this.traces.isEmpty());
+		assertEquals(1, tm.commits);
+	}
+
+	@Test
+	public void failingSinkDoesNotAffectTransaction() {
+		CallCountingTransactionManager tm = new CallCountingTransactionManager();
+		tm.setTransactionTracer(new TransactionTracer(trace -> {
+			throw new IllegalStateException("sink failure");
+		}));
+		tm.commit(tm.getTransaction(null));
+		assertEquals(1, tm.commits);
+	}
+
+}